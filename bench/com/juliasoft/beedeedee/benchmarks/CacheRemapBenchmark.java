@@ -0,0 +1,149 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+import com.juliasoft.beedeedee.factories.CacheStatistics;
+import com.juliasoft.beedeedee.factories.Factory;
+
+/**
+ * Measures how fast the caches recover after a garbage collection, when
+ * they are cleared and when they are translated. Before each invocation,
+ * the conjunction of two operands is computed and kept alive, then a
+ * garbage collection frees some garbage. The invocation computes the
+ * conjunction of the three operands, whose first half was already known
+ * before the collection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CacheRemapBenchmark {
+
+	@Param({ "false", "true" })
+	private boolean remap;
+
+	@Param({ "30" })
+	private int vars;
+
+	@Param({ "50" })
+	private int clauses;
+
+	private Factory factory;
+	private BDD f;
+	private BDD g;
+	private BDD h;
+	private BDD partial;
+	private BDD result;
+
+	/**
+	 * The accesses to the cache of conjunctions during the invocations.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class AndCache {
+		public long hits;
+		public long misses;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		factory = Factory.mk(1000000, 100000);
+		// a resize after a collection would replace the caches with empty ones
+		factory.setMinFreeNodes(0.0);
+		Random random = new Random(42);
+		f = cnf(random);
+		g = cnf(random);
+		h = cnf(random);
+	}
+
+	/**
+	 * Builds a random formula with three literals per clause.
+	 */
+	private BDD cnf(Random random) {
+		BDD result = factory.makeOne();
+
+		for (int clause = 0; clause < clauses; clause++) {
+			BDD literals = factory.makeZero();
+			for (int literal = 0; literal < 3; literal++) {
+				int var = random.nextInt(vars);
+				literals.orWith(random.nextBoolean() ? factory.makeVar(var) : factory.makeNotVar(var));
+			}
+
+			result.andWith(literals);
+		}
+
+		return result;
+	}
+
+	@Setup(Level.Invocation)
+	public void collect() {
+		// starts from empty caches
+		factory.setRemapCachesOnGC(false);
+		factory.gc();
+
+		partial = f.and(g);
+		factory.setRemapCachesOnGC(remap);
+		f.or(h).free();
+		factory.gc();
+	}
+
+	@TearDown(Level.Invocation)
+	public void free() {
+		partial.free();
+		result.free();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		factory.done();
+	}
+
+	@Benchmark
+	public int conjunction(AndCache counters) {
+		CacheStatistics before = factory.getStatistics().getCache("and");
+		result = f.and(g).andWith(h.copy());
+		CacheStatistics after = factory.getStatistics().getCache("and");
+
+		counters.hits += after.getHits() - before.getHits();
+		counters.misses += after.getMisses() - before.getMisses();
+
+		return result.nodeCount();
+	}
+}
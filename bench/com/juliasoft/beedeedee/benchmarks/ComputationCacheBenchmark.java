@@ -0,0 +1,140 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+import com.juliasoft.beedeedee.factories.Factory;
+
+/**
+ * Measures conjunctions that mostly hit the cache of APPLY computations.
+ * Each thread builds the constraints of the n-queens problem and conjoins
+ * them, in the same factory, so that most subproblems of a thread have been
+ * already solved by another thread, or by the same thread for a previous
+ * constraint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ComputationCacheBenchmark {
+
+	@Param({ "1", "2", "4" })
+	private int threads;
+
+	@Param({ "7" })
+	private int n;
+
+	private ExecutorService executor;
+	private Factory factory;
+
+	@Setup(Level.Trial)
+	public void startThreads() {
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopThreads() {
+		executor.shutdown();
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		factory = Factory.mk(100000, 100000);
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		factory.done();
+	}
+
+	@Benchmark
+	public long queens() throws InterruptedException, ExecutionException {
+		List<Future<Long>> results = new ArrayList<>();
+
+		for (int t = 0; t < threads; t++)
+			results.add(executor.submit(new Callable<Long>() {
+
+				@Override
+				public Long call() {
+					BDD queens = constraints();
+					long solutions = queens.satCount(n * n - 1);
+					queens.free();
+
+					return solutions;
+				}
+			}));
+
+		long solutions = 0;
+		for (Future<Long> result: results)
+			solutions += result.get();
+
+		return solutions;
+	}
+
+	private BDD constraints() {
+		BDD result = factory.makeOne();
+
+		for (int i = 0; i < n; i++) {
+			BDD row = factory.makeZero();
+			for (int j = 0; j < n; j++)
+				row.orWith(factory.makeVar(var(i, j)));
+
+			result.andWith(row);
+		}
+
+		// no two queens attack each other
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				for (int k = 0; k < n; k++)
+					for (int l = 0; l < n; l++)
+						if ((i != k || j != l) && (i == k || j == l || i - j == k - l || i + j == k + l))
+							result.andWith(factory.makeVar(var(i, j)).nandWith(factory.makeVar(var(k, l))));
+
+		return result;
+	}
+
+	private int var(int i, int j) {
+		return i * n + j;
+	}
+}
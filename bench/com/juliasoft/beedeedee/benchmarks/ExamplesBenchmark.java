@@ -0,0 +1,117 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.juliasoft.beedeedee.examples.knightsTour.KnightSolver;
+import com.juliasoft.beedeedee.examples.queens.QueenSolver;
+import com.juliasoft.beedeedee.factories.Factory;
+
+/**
+ * Runs the examples as macro benchmarks. At each invocation, as many
+ * solvers as threads run at the same time over the same factory, as
+ * the examples do when they are given more than one problem size.
+ * The memory allocated by each kind of factory, including the tables
+ * of its resizes, is reported by running with {@code -prof gc}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExamplesBenchmark {
+
+	@Param({ "1", "2", "4" })
+	private int threads;
+
+	@Param({ "Factory", "ERFactory", "CompactFactory" })
+	private String kind;
+
+	@Param({ "7" })
+	private int queens;
+
+	@Param({ "5" })
+	private int knights;
+
+	private Factory factory;
+	private PrintStream out;
+
+	@Setup(Level.Trial)
+	public void silenceSolvers() {
+		out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@TearDown(Level.Trial)
+	public void restoreOutput() {
+		System.setOut(out);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		switch (kind) {
+		case "ERFactory": factory = Factory.mkER(100000, 100000); break;
+		case "CompactFactory": factory = Factory.mkCompact(100000, 100000); break;
+		default: factory = Factory.mk(100000, 100000);
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		factory.done();
+	}
+
+	@Benchmark
+	public void queens() throws InterruptedException {
+		Thread[] solvers = new Thread[threads];
+		for (int t = 0; t < threads; t++)
+			(solvers[t] = new QueenSolver(queens, false, factory)).start();
+
+		for (Thread solver: solvers)
+			solver.join();
+	}
+
+	@Benchmark
+	public void knightsTour() throws InterruptedException {
+		Thread[] solvers = new Thread[threads];
+		for (int t = 0; t < threads; t++)
+			(solvers[t] = new KnightSolver(knights, false, factory)).start();
+
+		for (Thread solver: solvers)
+			solver.join();
+	}
+}
@@ -0,0 +1,104 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+import com.juliasoft.beedeedee.factories.Factory;
+
+/**
+ * Measures the pause of a garbage collection, that stops all operations
+ * of the factory. Before each collection, a factory is filled with the
+ * equivalences between pairs of variables, in an order that makes them
+ * large. Only some of them are kept alive.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GarbageCollectionBenchmark {
+
+	@Param({ "10", "14" })
+	private int pairs;
+
+	/**
+	 * One bdd every {@code alive} is kept alive.
+	 */
+	@Param({ "2", "10" })
+	private int alive;
+
+	/**
+	 * True if the caches are translated instead of cleared.
+	 */
+	@Param({ "false", "true" })
+	private boolean remap;
+
+	private Factory factory;
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		factory = Factory.mk(1000000, 100000);
+		factory.setRemapCachesOnGC(remap);
+		// only the collection is measured, not a resize after it
+		factory.setMinFreeNodes(0.0);
+		List<BDD> kept = new ArrayList<>();
+
+		for (int round = 0; round < 20; round++) {
+			BDD bdd = factory.makeOne();
+			for (int i = 0; i < pairs; i++)
+				bdd.andWith(factory.makeVar((i + round) % pairs).biimpWith(factory.makeVar(pairs + i)));
+
+			if (round % alive == 0)
+				kept.add(bdd);
+			else
+				bdd.free();
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		factory.done();
+	}
+
+	@Benchmark
+	public int gc() {
+		factory.gc();
+
+		return factory.nodesCount();
+	}
+}
@@ -0,0 +1,158 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.benchmarks;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+import com.juliasoft.beedeedee.factories.Factory;
+
+/**
+ * Measures the single operations of a factory on random formulas in
+ * conjunctive normal form. The operands are built once per trial, while
+ * the result of each invocation is freed and collected before the next
+ * one, so that no result is ever found in the caches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OperationsBenchmark {
+
+	@Param({ "30" })
+	private int vars;
+
+	@Param({ "50" })
+	private int clauses;
+
+	private Factory factory;
+	private BDD f;
+	private BDD g;
+	private BDD h;
+	private BitSet evenVars;
+	private Map<Integer, Integer> shift;
+	private BDD result;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		factory = Factory.mk(100000, 100000);
+		Random random = new Random(42);
+		f = cnf(random);
+		g = cnf(random);
+		h = cnf(random);
+
+		evenVars = new BitSet();
+		shift = new HashMap<>();
+		for (int var = 0; var < vars; var++) {
+			if (var % 2 == 0)
+				evenVars.set(var);
+
+			// renames into fresh variables, in the same order
+			shift.put(var, var + vars);
+		}
+	}
+
+	/**
+	 * Builds a random formula with three literals per clause.
+	 */
+	private BDD cnf(Random random) {
+		BDD result = factory.makeOne();
+
+		for (int clause = 0; clause < clauses; clause++) {
+			BDD literals = factory.makeZero();
+			for (int literal = 0; literal < 3; literal++) {
+				int var = random.nextInt(vars);
+				literals.orWith(random.nextBoolean() ? factory.makeVar(var) : factory.makeNotVar(var));
+			}
+
+			result.andWith(literals);
+		}
+
+		return result;
+	}
+
+	@Setup(Level.Invocation)
+	public void clearCaches() {
+		// garbage collection clears the caches
+		factory.gc();
+	}
+
+	@TearDown(Level.Invocation)
+	public void freeResult() {
+		if (result != null) {
+			result.free();
+			result = null;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		factory.done();
+	}
+
+	@Benchmark
+	public int and() {
+		return (result = f.and(g)).nodeCount();
+	}
+
+	@Benchmark
+	public int or() {
+		return (result = f.or(g)).nodeCount();
+	}
+
+	@Benchmark
+	public int ite() {
+		return (result = f.ite(g, h)).nodeCount();
+	}
+
+	@Benchmark
+	public int exist() {
+		return (result = f.exist(evenVars)).nodeCount();
+	}
+
+	@Benchmark
+	public int replace() {
+		return (result = f.replace(shift)).nodeCount();
+	}
+
+	@Benchmark
+	public double satCount() {
+		return f.satCount(vars - 1);
+	}
+}
@@ -0,0 +1,128 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+import com.juliasoft.beedeedee.examples.queens.QueenSolver;
+import com.juliasoft.beedeedee.factories.Factory;
+
+/**
+ * Measures the speedup of the parallel apply, by solving the N-Queens
+ * problem with a single solver, whose conjunctions and disjunctions are
+ * computed by as many threads as the parallelism of the factory, and by
+ * a single conjunction of two large bdds.
+ * <p>
+ * So far, this has only run on a single core, where it measures the cost
+ * of forking: about 129, 142 and 137 ms/op for the queens with parallelism
+ * 1, 2 and 4. The speedup on multiple cores is still to be measured,
+ * hence the parallel apply is not enabled by default.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParallelApplyBenchmark {
+
+	@Param({ "1", "2", "4" })
+	private int parallelism;
+
+	@Param({ "8" })
+	private int queens;
+
+	private Factory factory;
+	private PrintStream out;
+
+	@Setup(Level.Trial)
+	public void silenceSolver() {
+		out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@TearDown(Level.Trial)
+	public void restoreOutput() {
+		System.setOut(out);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		factory = Factory.mk(100000, 100000);
+		factory.setParallelism(parallelism);
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		factory.setParallelism(1);
+		factory.done();
+	}
+
+	@Benchmark
+	public void queens() throws InterruptedException {
+		QueenSolver solver = new QueenSolver(queens, false, factory);
+		solver.start();
+		solver.join();
+	}
+
+	@Benchmark
+	public BDD conjunction(Conjuncts conjuncts) {
+		return conjuncts.left.and(conjuncts.right);
+	}
+
+	/**
+	 * Two bdds whose conjunction has about 760000 nodes.
+	 */
+	@State(Scope.Thread)
+	public static class Conjuncts {
+		private final static int VARS = 16;
+
+		private BDD left;
+		private BDD right;
+
+		@Setup(Level.Invocation)
+		public void setUp(ParallelApplyBenchmark benchmark) {
+			Factory factory = benchmark.factory;
+			left = factory.makeOne();
+			right = factory.makeZero();
+
+			for (int i = 0; i < VARS; i++) {
+				left.andWith(factory.makeVar(i).biimp(factory.makeVar(2 * VARS - 1 - i)).orWith(factory.makeVar(2 * VARS + i % 3)));
+				right.orWith(factory.makeVar(i).and(factory.makeVar(VARS + (i * 7) % VARS)).andWith(factory.makeVar(2 * VARS + 3 + i % 2)));
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+import com.juliasoft.beedeedee.factories.Factory;
+
+/**
+ * Compares the single-pass relational product against the conjunction
+ * followed by existential quantification, on a bounded forward reachability
+ * analysis of a transition system with interleaved current and next state
+ * variables. A fresh factory is used at each invocation, so that no result
+ * is ever found in the caches of a previous invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RelProdBenchmark {
+
+	@Param({ "16", "24" })
+	private int bits;
+
+	@Param({ "30" })
+	private int steps;
+
+	private Factory factory;
+	private BDD transition;
+	private BDD init;
+	private BDD currentVars;
+	private Map<Integer, Integer> nextToCurrent;
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		factory = Factory.mk(100000, 20000);
+		nextToCurrent = new HashMap<>();
+		currentVars = factory.makeOne();
+		init = factory.makeOne();
+
+		for (int i = 0; i < bits; i++) {
+			nextToCurrent.put(next(i), current(i));
+			currentVars.andWith(factory.makeVar(current(i)));
+			init.andWith(i == 0 ? factory.makeVar(current(i)) : factory.makeNotVar(current(i)));
+		}
+
+		// an asynchronous system: at each step, a single bit flips if its left
+		// neighbour is set and its right neighbour is not, while all others keep their value
+		transition = factory.makeZero();
+		for (int i = 0; i < bits; i++) {
+			BDD move = factory.makeVar(current((i + bits - 1) % bits)).andWith(factory.makeNotVar(current((i + 1) % bits)));
+			move.andWith(factory.makeVar(next(i)).biimpWith(factory.makeVar(current(i)).notWith()));
+
+			for (int j = 0; j < bits; j++)
+				if (j != i)
+					move.andWith(factory.makeVar(next(j)).biimpWith(factory.makeVar(current(j))));
+
+			transition.orWith(move);
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		factory.done();
+	}
+
+	private static int current(int i) {
+		return 2 * i;
+	}
+
+	private static int next(int i) {
+		return 2 * i + 1;
+	}
+
+	@Benchmark
+	public int relProd() {
+		BDD reached = init.copy();
+
+		for (int step = 0; step < steps; step++) {
+			BDD image = reached.relProd(transition, currentVars);
+			if (!advance(reached, image))
+				break;
+		}
+
+		return reached.nodeCount();
+	}
+
+	@Benchmark
+	public int andThenExist() {
+		BDD reached = init.copy();
+
+		for (int step = 0; step < steps; step++) {
+			BDD conjunction = reached.and(transition);
+			BDD image = conjunction.exist(currentVars);
+			conjunction.free();
+			if (!advance(reached, image))
+				break;
+		}
+
+		return reached.nodeCount();
+	}
+
+	/**
+	 * Adds the given image to the reached states.
+	 *
+	 * @return true if and only if new states have been reached
+	 */
+	private boolean advance(BDD reached, BDD image) {
+		image.replaceWith(nextToCurrent);
+		BDD old = reached.copy();
+		reached.orWith(image);
+		boolean changed = !reached.isEquivalentTo(old);
+		old.free();
+
+		return changed;
+	}
+}
@@ -0,0 +1,131 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+import com.juliasoft.beedeedee.factories.Factory;
+
+/**
+ * Measures the renaming of next state variables into current state variables,
+ * when they are interleaved, on the image of the states reachable in a few
+ * steps of a transition system. Renaming each next state variable into its
+ * current state variable preserves the order of the variables, while renaming
+ * it into that of its neighbour, swapping pairs, does not. A fresh factory is
+ * used at each invocation, so that no result is ever found in the caches of a
+ * previous invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReplaceBenchmark {
+
+	@Param({ "64", "128" })
+	private int bits;
+
+	@Param({ "24" })
+	private int steps;
+
+	private Factory factory;
+	private BDD image;
+	private Map<Integer, Integer> nextToCurrent;
+	private Map<Integer, Integer> nextToSwappedCurrent;
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		factory = Factory.mk(100000, 20000);
+		nextToCurrent = new HashMap<>();
+		nextToSwappedCurrent = new HashMap<>();
+		BDD currentVars = factory.makeOne();
+		BDD reached = factory.makeOne();
+
+		for (int i = 0; i < bits; i++) {
+			nextToCurrent.put(next(i), current(i));
+			nextToSwappedCurrent.put(next(i), current(i ^ 1));
+			currentVars.andWith(factory.makeVar(current(i)));
+			reached.andWith(i % 4 == 0 ? factory.makeVar(current(i)) : factory.makeNotVar(current(i)));
+		}
+
+		// the same asynchronous system of RelProdBenchmark
+		BDD transition = factory.makeZero();
+		for (int i = 0; i < bits; i++) {
+			BDD move = factory.makeVar(current((i + bits - 1) % bits)).andWith(factory.makeNotVar(current((i + 1) % bits)));
+			move.andWith(factory.makeVar(next(i)).biimpWith(factory.makeVar(current(i)).notWith()));
+
+			for (int j = 0; j < bits; j++)
+				if (j != i)
+					move.andWith(factory.makeVar(next(j)).biimpWith(factory.makeVar(current(j))));
+
+			transition.orWith(move);
+		}
+
+		for (int step = 0; step < steps; step++) {
+			BDD image = reached.relProd(transition, currentVars);
+			reached.orWith(image.replaceWith(nextToCurrent));
+		}
+
+		image = reached.relProd(transition, currentVars);
+		reached.free();
+		transition.free();
+		currentVars.free();
+	}
+
+	private static int current(int i) {
+		return 2 * i;
+	}
+
+	private static int next(int i) {
+		return 2 * i + 1;
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		factory.done();
+	}
+
+	@Benchmark
+	public int orderPreserving() {
+		return image.replace(nextToCurrent).nodeCount();
+	}
+
+	@Benchmark
+	public int swapped() {
+		return image.replace(nextToSwappedCurrent).nodeCount();
+	}
+}
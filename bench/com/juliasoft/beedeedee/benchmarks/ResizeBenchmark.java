@@ -0,0 +1,85 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+import com.juliasoft.beedeedee.factories.Factory;
+
+/**
+ * Measures the cost of resizing the unique table, by building the same bdd
+ * in a factory whose table is already large enough and in a factory whose
+ * table starts small and must be resized many times. The difference between
+ * the two is the time spent in resizes. Tables kept out of the heap
+ * grow without copying their nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResizeBenchmark {
+
+	@Param({ "1000", "4000000" })
+	private int initialSize;
+
+	@Param({ "16" })
+	private int pairs;
+
+	@Param({ "false", "true" })
+	private boolean offHeap;
+
+	private Factory factory;
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		factory = offHeap ? Factory.mkOffHeap(initialSize, 10000) : Factory.mk(initialSize, 10000);
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		factory.done();
+	}
+
+	@Benchmark
+	public int build() {
+		// this order of the variables makes the equivalences exponentially large
+		BDD bdd = factory.makeOne();
+		for (int i = 0; i < pairs; i++)
+			bdd.andWith(factory.makeVar(i).biimpWith(factory.makeVar(pairs + i)));
+
+		return factory.nodesCount();
+	}
+}
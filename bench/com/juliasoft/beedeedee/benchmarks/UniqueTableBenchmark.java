@@ -0,0 +1,125 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+import com.juliasoft.beedeedee.factories.Factory;
+
+/**
+ * Compares the unique table with striped locks against the lock-free one,
+ * when many threads create nodes at the same time. Each thread builds the
+ * conjunction of the same equivalences, in a different order, so that the
+ * threads often race to create the same nodes. The table starts small,
+ * so that insertions also race with resizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UniqueTableBenchmark {
+
+	@Param({ "striped", "lockFree" })
+	private String table;
+
+	@Param({ "1", "4" })
+	private int threads;
+
+	@Param({ "12" })
+	private int pairs;
+
+	private ExecutorService executor;
+	private Factory factory;
+
+	@Setup(Level.Trial)
+	public void startThreads() {
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopThreads() {
+		executor.shutdown();
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		factory = "lockFree".equals(table) ? Factory.mkLockFree(1000, 1000) : Factory.mk(1000, 1000);
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		factory.done();
+	}
+
+	@Benchmark
+	public int build() throws InterruptedException, ExecutionException {
+		List<Future<Integer>> results = new ArrayList<>();
+
+		for (int t = 0; t < threads; t++) {
+			final int rotation = t;
+
+			results.add(executor.submit(new Callable<Integer>() {
+
+				@Override
+				public Integer call() {
+					BDD result = factory.makeOne();
+					for (int i = 0; i < pairs; i++) {
+						int pair = (i + rotation) % pairs;
+						result.andWith(factory.makeVar(pair).biimpWith(factory.makeVar(2 * pairs - 1 - pair)));
+					}
+
+					int nodes = result.nodeCount();
+					result.free();
+
+					return nodes;
+				}
+			}));
+		}
+
+		int nodes = 0;
+		for (Future<Integer> result: results)
+			nodes += result.get();
+
+		return nodes;
+	}
+}
@@ -18,9 +18,12 @@
 */
 package com.juliasoft.beedeedee.bdd;
 
+import java.math.BigInteger;
 import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import com.juliasoft.beedeedee.factories.Factory;
 
@@ -214,6 +217,33 @@ public interface BDD {
 	
 	public List<Assignment> allSat();
 
+	/**
+	 * Passes to the given action, one at a time, the cubes of assignments
+	 * satisfying the formula represented by this bdd, in the same order as
+	 * {@link #allSat()}. A cube is indexed by variable and holds 1 or 0 for
+	 * the variables that it assigns and -1 for the others, whose value does
+	 * not matter. The same array is updated and passed again for each cube,
+	 * hence it must be copied if it is kept. This bdd must not be freed
+	 * during the enumeration.
+	 * 
+	 * @param action the action applied to each cube
+	 */
+	
+	public void forEachCube(Consumer<int[]> action);
+
+	/**
+	 * Yields a lazy stream of the cubes of assignments satisfying the formula
+	 * represented by this bdd, as {@link #forEachCube(Consumer)} does, but
+	 * each cube is a new array. The stream can be made parallel.
+	 * This bdd must not be freed while the stream is in use.
+	 * 
+	 * @return the stream of the cubes
+	 * @throws java.util.ConcurrentModificationException from the stream,
+	 *         if the variables are reordered while it is in use
+	 */
+	
+	public Stream<int[]> cubes();
+
 	/**
 	 * Counts the number of solutions (satisfying assignments) of this bdd,
 	 * considering as the last variable index the greatest encountered so far.
@@ -225,6 +255,10 @@ public interface BDD {
 
 	/**
 	 * Counts the number of solutions (satisfying assignments) of this bdd.
+	 * The variables of this bdd are counted among the {@code maxVar + 1}
+	 * considered ones, even if their index is greater than {@code maxVar}.
+	 * The result is meaningless if this bdd depends on more than
+	 * {@code maxVar + 1} variables.
 	 * 
 	 * @param maxVar the last variable index to consider
 	 * @return the number of solutions
@@ -232,6 +266,40 @@ public interface BDD {
 	
 	public long satCount(int maxVar);
 
+	/**
+	 * Counts exactly the number of solutions (satisfying assignments) of this bdd,
+	 * considering as the last variable index the greatest encountered so far.
+	 * It takes time linear in the number of nodes of this bdd.
+	 * 
+	 * @return the number of solutions
+	 */
+
+	public BigInteger exactSatCount();
+
+	/**
+	 * Counts exactly the number of solutions (satisfying assignments) of this bdd.
+	 * It takes time linear in the number of nodes of this bdd. The variables are
+	 * considered as by {@link #satCount(int)}.
+	 * 
+	 * @param maxVar the last variable index to consider
+	 * @return the number of solutions
+	 * @throws IllegalArgumentException if this bdd depends on more than {@code maxVar + 1} variables,
+	 *                                  whatever their index
+	 */
+
+	public BigInteger exactSatCount(int maxVar);
+
+	/**
+	 * Counts exactly the number of assignments to the given variables that
+	 * satisfy this bdd. It takes time linear in the number of nodes of this bdd.
+	 * 
+	 * @param vars the variables to consider
+	 * @return the number of solutions
+	 * @throws IllegalArgumentException if this bdd depends on a variable not in {@code vars}
+	 */
+
+	public BigInteger exactSatCount(BitSet vars);
+
 	/**
 	 * Restricts this bdd by constraining the given variable to a value.
 	 * 
@@ -395,6 +463,17 @@ public interface BDD {
 	 */
 	
 	public BDD compose(BDD other, int var);
+
+	/**
+	 * Simultaneous functional composition.
+	 * Computes this[other_1/var_1, ..., other_n/var_n], where all
+	 * substitutions take place at the same time.
+	 * 
+	 * @param substitution a map from each variable number to the BDD to substitute to it
+	 * @return the resulting BDD
+	 */
+	
+	public BDD compose(Map<Integer, BDD> substitution);
 	
 	public boolean isEquivalentTo(BDD other);
 	
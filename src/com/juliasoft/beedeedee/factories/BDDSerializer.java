@@ -0,0 +1,451 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+
+/**
+ * Writes and reads the binary format of {@link Factory#save(OutputStream, java.util.Collection)}.
+ * <p>
+ * The format starts with the magic bytes {@code BDDS} and a version. The
+ * nodes follow, children before parents, so that a node refers to nodes
+ * already read. Each node is stored once, as its variable and its two
+ * children, and the list ends with a 0. The number of roots and the roots
+ * come last. Nodes are numbered in order from 2, since 0 and 1 are the
+ * terminals. All numbers are varints, that is, little-endian groups of 7
+ * bits, where the highest bit of a byte means that more groups follow:
+ * <ul>
+ * <li>the variable of a node is stored as {@code zigzag(var - previousVar) + 1},
+ *     where {@code previousVar} is the variable of the previous node, or 0;
+ * <li>a child is stored as {@code (node - child) << 1 | negated}, where
+ *     {@code negated} is 1 if the child is the negation of that node;
+ * <li>a root is stored as {@code node << 1 | negated}.
+ * </ul>
+ * Nodes are referred to by their variables rather than by their levels,
+ * hence bdds can be loaded into a factory with another variable order.
+ * <p>
+ * The garbage collection lock is never held while the stream is written or
+ * read, since a slow stream would otherwise stall every garbage collection
+ * and, with it, every thread of the factory. Hence the nodes are written and
+ * read in batches, each encoded or built under the lock, and the nodes in
+ * use are held, as {@link HeldNodes}, across the garbage collections between
+ * the batches. Nothing is kept in memory but an integer per node and a batch.
+ */
+
+final class BDDSerializer {
+
+	private final static byte[] MAGIC = { 'B', 'D', 'D', 'S' };
+
+	private final static int VERSION = 1;
+
+	/**
+	 * The number of nodes written or read at a time under the lock.
+	 */
+
+	private final static int BATCH = 1 << 14;
+
+	private BDDSerializer() {}
+
+	/**
+	 * Writes the given bdds of the given factory.
+	 */
+
+	static void save(Factory factory, Collection<BDD> bdds, OutputStream out) throws IOException {
+		Writer writer = new Writer(factory, bdds);
+		ByteArrayOutputStream batch = new ByteArrayOutputStream();
+		batch.write(MAGIC);
+		writeVarLong(batch, VERSION);
+
+		factory.hold(writer);
+		try {
+			boolean finished;
+			do {
+				try (Factory.GCLock lock = factory.new GCLock()) {
+					finished = writer.encode(batch);
+				}
+
+				batch.writeTo(out);
+				batch.reset();
+			}
+			while (!finished);
+		}
+		finally {
+			factory.release(writer);
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * The state of a save, that writes the children of each node before the node.
+	 * The roots and the nodes on the stack are held, since garbage collection
+	 * might move them between two batches, together with the nodes already written.
+	 */
+
+	private static class Writer implements HeldNodes {
+		private final Factory factory;
+		private final ResizingAndGarbageCollectedUniqueTable ut;
+		private final Collection<BDD> bdds;
+
+		/**
+		 * The ids of the functions of the bdds, or null if they have not been
+		 * computed yet. They are held, since they might not belong to any bdd.
+		 */
+
+		private int[] roots;
+
+		/**
+		 * The index of the next root to write.
+		 */
+
+		private int root;
+
+		/**
+		 * The number of each node in the stream, or 0 if it has not been written yet.
+		 */
+
+		private int[] numbers = new int[0];
+
+		/**
+		 * The positions of the nodes whose children are being written.
+		 */
+
+		private int[] stack = new int[64];
+		private int sp;
+
+		private int next = 2, previousVar;
+
+		private Writer(Factory factory, Collection<BDD> bdds) {
+			this.factory = factory;
+			this.ut = factory.ut;
+			this.bdds = bdds;
+		}
+
+		/**
+		 * Encodes up to {@code BATCH} nodes, and the roots once all nodes have
+		 * been encoded. The caller must hold a garbage collection lock.
+		 *
+		 * @return true if and only if the roots have been encoded
+		 */
+
+		private boolean encode(OutputStream out) throws IOException {
+			if (roots == null) {
+				int[] roots = new int[bdds.size()];
+				int pos = 0;
+				for (BDD bdd: bdds)
+					roots[pos++] = ((Factory.BDDImpl) bdd).getFunctionId();
+
+				this.roots = roots;
+			}
+
+			// the table might have grown since the previous batch
+			if (numbers.length < ut.getSize())
+				numbers = Arrays.copyOf(numbers, ut.getSize());
+
+			for (int written = 0; written < BATCH; ) {
+				if (sp == 0) {
+					if (root == roots.length) {
+						writeVarLong(out, 0);
+						writeVarLong(out, roots.length);
+						for (int id: roots)
+							writeVarLong(out, ((long) number(id) << 1) | negated(factory, id));
+
+						return true;
+					}
+
+					int id = roots[root++];
+					if (id != factory.ZERO && id != factory.ONE)
+						stack[sp++] = ut.node(id);
+
+					continue;
+				}
+
+				int node = stack[sp - 1];
+				if (numbers[node] != 0) {
+					sp--;
+					continue;
+				}
+
+				int edge = ut.edge(node), low = ut.low(edge), high = ut.high(edge);
+
+				// the children are written first
+				if (stack.length < sp + 2)
+					stack = Arrays.copyOf(stack, stack.length * 2);
+
+				boolean ready = true;
+				if (!isWritten(high)) {
+					stack[sp++] = ut.node(high);
+					ready = false;
+				}
+
+				if (!isWritten(low)) {
+					stack[sp++] = ut.node(low);
+					ready = false;
+				}
+
+				if (ready) {
+					sp--;
+					int var = ut.varOfLevel(ut.var(edge));
+					writeVarLong(out, zigzag(var - previousVar) + 1);
+					writeVarLong(out, ((long) (next - number(low)) << 1) | negated(factory, low));
+					writeVarLong(out, ((long) (next - number(high)) << 1) | negated(factory, high));
+					previousVar = var;
+					numbers[node] = next++;
+					written++;
+				}
+			}
+
+			return false;
+		}
+
+		private boolean isWritten(int id) {
+			return id == factory.ZERO || id == factory.ONE || numbers[ut.node(id)] != 0;
+		}
+
+		private int number(int id) {
+			if (id == factory.ZERO)
+				return 0;
+			else if (id == factory.ONE)
+				return 1;
+			else
+				return numbers[ut.node(id)];
+		}
+
+		@Override
+		public void forEach(IntConsumer action) {
+			if (roots != null)
+				for (int id: roots)
+					action.accept(id);
+
+			for (int pos = 0; pos < sp; pos++)
+				action.accept(ut.edge(stack[pos]));
+		}
+
+		@Override
+		public void relocate(int[] newPositions) {
+			if (roots != null)
+				for (int pos = 0; pos < roots.length; pos++)
+					roots[pos] = ut.relocate(roots[pos], newPositions);
+
+			for (int pos = 0; pos < sp; pos++)
+				stack[pos] = newPositions[stack[pos]];
+
+			// nodes only move towards the beginning of the table, hence each
+			// number is moved into a position that has already been visited
+			int length = Math.min(numbers.length, newPositions.length);
+			for (int node = Factory.FIRST_NODE_NUM; node < length; node++) {
+				int number = numbers[node];
+				if (number != 0) {
+					numbers[node] = 0;
+					int newPosition = newPositions[node];
+					if (newPosition >= 0)
+						numbers[newPosition] = number;
+				}
+			}
+		}
+	}
+
+	private static int negated(Factory factory, int id) {
+		return id == factory.ZERO || id == factory.ONE ? 0 : factory.ut.complementBit(id);
+	}
+
+	/**
+	 * Reads bdds into the given factory.
+	 *
+	 * @return the bdds
+	 */
+
+	static List<BDD> load(Factory factory, InputStream in) throws IOException {
+		for (byte b: MAGIC)
+			if (read(in) != b)
+				throw new StreamCorruptedException("not a stream of bdds");
+
+		long version = readVarLong(in);
+		if (version != VERSION)
+			throw new StreamCorruptedException("unsupported version " + version);
+
+		Reader reader = new Reader(factory);
+		factory.hold(reader);
+		try {
+			return reader.read(in);
+		}
+		finally {
+			factory.release(reader);
+		}
+	}
+
+	/**
+	 * The state of a load. The nodes read so far are held, since later nodes
+	 * might refer to them and garbage collection might move them between
+	 * two batches.
+	 */
+
+	private static class Reader implements HeldNodes {
+		private final Factory factory;
+		private final ResizingAndGarbageCollectedUniqueTable ut;
+
+		/**
+		 * The id of each node in the stream.
+		 */
+
+		private int[] ids = new int[1024];
+		private int next = 2;
+
+		private Reader(Factory factory) {
+			this.factory = factory;
+			this.ut = factory.ut;
+			ids[0] = factory.ZERO;
+			ids[1] = factory.ONE;
+		}
+
+		private List<BDD> read(InputStream in) throws IOException {
+			long[] records = new long[3 * BATCH];
+			int previousVar = 0;
+			boolean last = false;
+
+			while (!last) {
+				// a batch of nodes, as variable, low and high, is read without the lock
+				int length = 0;
+				for (long tag; length < records.length; length += 3) {
+					if ((tag = readVarLong(in)) == 0) {
+						last = true;
+						break;
+					}
+
+					int var = previousVar + (int) unzigzag(tag - 1);
+					if (var < 0)
+						throw new StreamCorruptedException("illegal variable " + var);
+
+					records[length] = var;
+					records[length + 1] = readVarLong(in);
+					records[length + 2] = readVarLong(in);
+					previousVar = var;
+				}
+
+				try (Factory.GCLock lock = factory.new GCLock()) {
+					if (ids.length < next + length / 3)
+						ids = Arrays.copyOf(ids, Math.max(ids.length * 2, next + length / 3));
+
+					for (int pos = 0; pos < length; pos += 3) {
+						int var = (int) records[pos];
+						int low = child(records[pos + 1]), high = child(records[pos + 2]);
+						int varId = factory.innerMakeVar(var), level = ut.var(varId);
+
+						// if the variable order has changed, the node must be rebuilt in order
+						if (level < ut.var(low) && level < ut.var(high))
+							ids[next] = factory.MK(level, low, high);
+						else
+							ids[next] = factory.innerIte(varId, high, low);
+
+						next++;
+					}
+				}
+			}
+
+			long count = readVarLong(in);
+			if (count > Integer.MAX_VALUE)
+				throw new StreamCorruptedException("illegal number of roots " + count);
+
+			long[] refs = new long[(int) count];
+			for (int pos = 0; pos < refs.length; pos++)
+				refs[pos] = readVarLong(in);
+
+			try (Factory.GCLock lock = factory.new GCLock()) {
+				List<BDD> result = new ArrayList<>();
+				for (long ref: refs)
+					result.add(factory.mkFromFunction(resolve(ref >>> 1, (int) (ref & 1))));
+
+				return result;
+			}
+		}
+
+		private int child(long ref) throws StreamCorruptedException {
+			return resolve(next - (ref >>> 1), (int) (ref & 1));
+		}
+
+		private int resolve(long number, int negated) throws StreamCorruptedException {
+			if (number < 0 || number >= next)
+				throw new StreamCorruptedException("reference to unknown node " + number);
+
+			int id = ids[(int) number];
+			return negated == 0 ? id : factory.innerNot(id);
+		}
+
+		@Override
+		public void forEach(IntConsumer action) {
+			for (int pos = 2; pos < next; pos++)
+				action.accept(ids[pos]);
+		}
+
+		@Override
+		public void relocate(int[] newPositions) {
+			for (int pos = 2; pos < next; pos++)
+				ids[pos] = ut.relocate(ids[pos], newPositions);
+		}
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarLong(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.write((int) value);
+	}
+
+	private static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = read(in);
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+
+		throw new StreamCorruptedException("malformed varint");
+	}
+
+	private static int read(InputStream in) throws IOException {
+		int b = in.read();
+		if (b < 0)
+			throw new EOFException();
+
+		return b;
+	}
+}
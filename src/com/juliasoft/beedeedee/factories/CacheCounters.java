@@ -0,0 +1,96 @@
+/*
+  Copyright 2014 Julia s.r.l.
+
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+/**
+ * The counters of the accesses to a cache. They are shared by the caches
+ * that replace each other at each resize, so that they span the whole life
+ * of a factory. Each thread increments the counters of its own stripe,
+ * without synchronization, since that would cost as much as the access to
+ * the cache itself. Hence two threads that share a stripe might lose
+ * some increment.
+ */
+final class CacheCounters {
+	private final static int HITS = 0;
+	private final static int MISSES = 1;
+	private final static int COLLISIONS = 2;
+	private final static int OVERWRITES = 3;
+
+	/**
+	 * The distance between two stripes: a cache line, so that threads do not
+	 * contend on the same line.
+	 */
+	private final static int STRIPE_SIZE = 8;
+
+	private final static int STRIPES = Integer.highestOneBit(Math.min(64, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1;
+
+	private final long[] counters = new long[STRIPES * STRIPE_SIZE];
+
+	private static int stripe() {
+		return (System.identityHashCode(Thread.currentThread()) & (STRIPES - 1)) * STRIPE_SIZE;
+	}
+
+	/**
+	 * Records a lookup that found its entry.
+	 */
+	void hit() {
+		counters[stripe() + HITS]++;
+	}
+
+	/**
+	 * Records a lookup that did not find its entry.
+	 * 
+	 * @param collision true if the position of the entry was used by another entry
+	 */
+	void miss(boolean collision) {
+		int stripe = stripe();
+		counters[stripe + MISSES]++;
+		if (collision)
+			counters[stripe + COLLISIONS]++;
+	}
+
+	/**
+	 * Records an insertion into the cache.
+	 * 
+	 * @param overwrite true if the insertion replaced another entry
+	 */
+	void put(boolean overwrite) {
+		if (overwrite)
+			counters[stripe() + OVERWRITES]++;
+	}
+
+	private long sum(int counter) {
+		long sum = 0;
+		for (int stripe = 0; stripe < counters.length; stripe += STRIPE_SIZE)
+			sum += counters[stripe + counter];
+
+		return sum;
+	}
+
+	/**
+	 * Yields the current value of these counters.
+	 * 
+	 * @param name the name of the cache
+	 * @param size the current size of the cache
+	 * @return the statistics of the cache
+	 */
+	CacheStatistics snapshot(String name, int size) {
+		return new CacheStatistics(name, size, sum(HITS), sum(MISSES), sum(COLLISIONS), sum(OVERWRITES));
+	}
+}
@@ -0,0 +1,96 @@
+/*
+  Copyright 2014 Julia s.r.l.
+
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+/**
+ * The statistics of the accesses to a cache of a factory, since its creation.
+ */
+public final class CacheStatistics {
+	private final String name;
+	private final int size;
+	private final long hits;
+	private final long misses;
+	private final long collisions;
+	private final long overwrites;
+
+	CacheStatistics(String name, int size, long hits, long misses, long collisions, long overwrites) {
+		this.name = name;
+		this.size = size;
+		this.hits = hits;
+		this.misses = misses;
+		this.collisions = collisions;
+		this.overwrites = overwrites;
+	}
+
+	/**
+	 * @return the name of the cache
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the current number of entries of the cache
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of lookups that found their entry
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that did not find their entry
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of misses where the position of the entry was used by another entry
+	 */
+	public long getCollisions() {
+		return collisions;
+	}
+
+	/**
+	 * @return the number of insertions that replaced another entry
+	 */
+	public long getOverwrites() {
+		return overwrites;
+	}
+
+	/**
+	 * @return the fraction of lookups that found their entry, or 0 if there was no lookup
+	 */
+	public double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0.0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: size %d, hits %d, misses %d (collisions %d), overwrites %d, hit rate %.1f%%",
+			name, size, hits, misses, collisions, overwrites, 100 * getHitRate());
+	}
+}
@@ -0,0 +1,170 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The cache for compose operations. Each entry holds the operand, the
+ * identifier of the interned substitution and the result; the
+ * single-variable composition is just a substitution with one entry.
+ */
+class ComposeCache {
+	private final static int ENTRY_SIZE = 3;
+	private final int[] cache;
+	private final int size;
+	private final Object[] locks = new Object[100];
+	private final CacheCounters counters;
+
+	/**
+	 * Constructs a ComposeCache of the given size.
+	 * 
+	 * @param size the size of the cache
+	 */
+	ComposeCache(int size) {
+		this(size, new CacheCounters());
+	}
+
+	/**
+	 * Constructs a ComposeCache of the given size, that updates the given counters.
+	 * 
+	 * @param size the size of the cache
+	 * @param counters the counters of the accesses to the cache
+	 */
+	ComposeCache(int size, CacheCounters counters) {
+		this.counters = counters;
+		this.size = size;
+		int arraySize = size * ENTRY_SIZE;
+		this.cache = new int[arraySize];
+		for (int i = 0; i < arraySize; i += ENTRY_SIZE)
+			cache[i] = -1;
+		for (int pos = 0; pos < locks.length; pos++)
+			locks[pos] = new Object();
+	}
+
+	/**
+	 * @return the counters of the accesses to this cache
+	 */
+	CacheCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Returns the size of this cache.
+	 * 
+	 * @return the size
+	 */
+	int getSize() {
+		return size;
+	}
+
+	/**
+	 * Clears all the entries in this cache.
+	 */
+	void clear() {
+		int arraySize = size * ENTRY_SIZE;
+		for (int i = 0; i < arraySize; i += ENTRY_SIZE)
+			cache[i] = -1;
+	}
+
+	/**
+	 * Keeps the entries whose bdds all survived a garbage collection, at the
+	 * position for their new indexes, and discards the others. Substitutions
+	 * keep their identifier across garbage collections, hence it is unchanged.
+	 * 
+	 * @param relocation yields the new index of a bdd, or -1 if it has been collected
+	 */
+	void remap(IntUnaryOperator relocation) {
+		int[] old = cache.clone();
+		clear();
+
+		for (int pos = 0; pos < old.length; pos += ENTRY_SIZE)
+			if (old[pos] >= 0) {
+				int bdd = relocation.applyAsInt(old[pos]), result = relocation.applyAsInt(old[pos + 2]);
+
+				if (bdd >= 0 && result >= 0) {
+					int id = old[pos + 1], newPos = hash(bdd, id);
+					cache[newPos] = bdd;
+					cache[newPos + 1] = id;
+					cache[newPos + 2] = result;
+				}
+			}
+	}
+
+	/**
+	 * Copies into this cache the entries of a smaller cache, at their position
+	 * in this cache. The other cache might be in use by other threads, hence
+	 * each entry is read consistently and those being written are skipped.
+	 * 
+	 * @param other the other cache
+	 */
+	void copyFrom(ComposeCache other) {
+		int[] from = other.cache;
+
+		for (int pos = 0; pos < from.length; pos += ENTRY_SIZE)
+			synchronized (other.locks[pos % other.locks.length]) {
+				if (from[pos] >= 0)
+					System.arraycopy(from, pos, cache, hash(from[pos], from[pos + 1]), ENTRY_SIZE);
+			}
+	}
+
+	/**
+	 * Gets an entry from this cache.
+	 * 
+	 * @param bdd the operand bdd index
+	 * @param substitution the interned substitution of levels
+	 * @return the index of the result, or -1 if not found
+	 */
+	int get(int bdd, Substitution substitution) {
+		int id = substitution.id, pos = hash(bdd, id);
+
+		synchronized (locks[pos % locks.length]) {
+			if (cache[pos] == bdd && cache[pos + 1] == id) {
+				counters.hit();
+				return cache[pos + 2];
+			}
+
+			counters.miss(cache[pos] >= 0);
+			return -1;
+		}
+	}
+
+	private int hash(int bdd, int id) {
+		// identifiers are small and consecutive, hence they are spread first
+		return ENTRY_SIZE * (((bdd ^ id * 0x9E3779B9) & Integer.MAX_VALUE) % size);
+	}
+
+	/**
+	 * Puts an entry into this cache.
+	 * 
+	 * @param bdd the operand bdd index
+	 * @param substitution the interned substitution of levels
+	 * @param result the computation result
+	 */
+	void put(int bdd, Substitution substitution, int result) {
+		int id = substitution.id, pos = hash(bdd, id);
+
+		synchronized (locks[pos % locks.length]) {
+			counters.put(cache[pos] >= 0 && (cache[pos] != bdd || cache[pos + 1] != id));
+			cache[pos++] = bdd;
+			cache[pos++] = id;
+			cache[pos] = result;
+		}
+	}
+}
\ No newline at end of file
@@ -18,13 +18,46 @@
 */
 package com.juliasoft.beedeedee.factories;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.IntUnaryOperator;
+
 /**
- * The cache for APPLY computations.
+ * The cache for APPLY computations. It is accessed without locks: the first
+ * element of each entry holds the operator, a flag that is set while the
+ * entry is being written and a version that is increased at each write.
+ * A reader checks that the version did not change while it was reading the
+ * entry. A writer gives up if another thread is writing the same entry,
+ * hence some results might not be cached.
  */
 class ComputationCache {
 	private final static int ENTRY_SIZE = 4;
+
+	/**
+	 * The bits of the first element of an entry that hold the operator.
+	 */
+	private final static int OPERATOR_MASK = 7;
+
+	/**
+	 * The bit of the first element of an entry that is set while the entry is being written.
+	 */
+	private final static int WRITING = 8;
+
+	/**
+	 * The version that is added to the first element of an entry at each write.
+	 */
+	private final static int VERSION = 16;
+
+	/**
+	 * The first element of an empty entry. It matches no operator.
+	 */
+	private final static int EMPTY = OPERATOR_MASK;
+
+	private final static VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(int[].class);
+
 	private final int[] cache;
 	private final int size;
+	private final CacheCounters[] counters;
 
 	/**
 	 * Constructs a ComputationCache of the given size.
@@ -32,14 +65,37 @@ class ComputationCache {
 	 * @param size the size of the cache
 	 */
 	ComputationCache(int size) {
+		this(size, newCounters());
+	}
+
+	/**
+	 * Constructs a ComputationCache of the given size, that updates the given counters.
+	 * 
+	 * @param size the size of the cache
+	 * @param counters the counters of the accesses for each operator
+	 */
+	ComputationCache(int size, CacheCounters[] counters) {
 		this.size = size;
+		this.counters = counters;
 		int arraySize = size * ENTRY_SIZE;
 		this.cache = new int[arraySize];
 		for (int i = 0; i < arraySize; i += ENTRY_SIZE)
-			cache[i] = -1;
+			cache[i] = EMPTY;
+	}
+
+	private static CacheCounters[] newCounters() {
+		CacheCounters[] counters = new CacheCounters[Operator.values().length];
+		for (int i = 0; i < counters.length; i++)
+			counters[i] = new CacheCounters();
+
+		return counters;
+	}
 
-		for (int pos = 0; pos < locks.length; pos++)
-			locks[pos] = new Object();
+	/**
+	 * @return the counters of the accesses to this cache, for each operator
+	 */
+	CacheCounters[] getCounters() {
+		return counters;
 	}
 
 	/**
@@ -48,10 +104,63 @@ class ComputationCache {
 	void clear() {
 		int arraySize = size * ENTRY_SIZE;
 		for (int i = 0; i < arraySize; i += ENTRY_SIZE)
-			cache[i] = -1;
+			cache[i] = EMPTY;
 	}
 
-	private final Object[] locks = new Object[1000];
+	/**
+	 * Keeps the entries whose bdds all survived a garbage collection, at the
+	 * position for their new indexes, and discards the others.
+	 * 
+	 * @param relocation yields the new index of a bdd, or -1 if it has been collected
+	 */
+	void remap(IntUnaryOperator relocation) {
+		int[] old = cache.clone();
+		clear();
+
+		for (int pos = 0; pos < old.length; pos += ENTRY_SIZE) {
+			int ordinal = old[pos] & OPERATOR_MASK;
+			if (ordinal != EMPTY) {
+				// relocation keeps the order of the indexes, hence the operands stay in normal form
+				int bdd1 = relocation.applyAsInt(old[pos + 1]), bdd2 = relocation.applyAsInt(old[pos + 2]);
+				int result = relocation.applyAsInt(old[pos + 3]);
+
+				if (bdd1 >= 0 && bdd2 >= 0 && result >= 0) {
+					int newPos = hash(ordinal, bdd1, bdd2);
+					cache[newPos] = ((cache[newPos] & ~OPERATOR_MASK) + VERSION) | ordinal;
+					cache[newPos + 1] = bdd1;
+					cache[newPos + 2] = bdd2;
+					cache[newPos + 3] = result;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies into this cache the entries of a smaller cache, at their position
+	 * in this cache. The other cache might be in use by other threads, hence
+	 * each entry is read consistently and those being written are skipped.
+	 * 
+	 * @param other the other cache
+	 */
+	void copyFrom(ComputationCache other) {
+		int[] from = other.cache;
+
+		for (int pos = 0; pos < from.length; pos += ENTRY_SIZE) {
+			int stamp = (int) ELEMENTS.getAcquire(from, pos), ordinal = stamp & OPERATOR_MASK;
+			if (ordinal != EMPTY && (stamp & WRITING) == 0) {
+				int bdd1 = from[pos + 1], bdd2 = from[pos + 2], result = from[pos + 3];
+				VarHandle.loadLoadFence();
+
+				if (from[pos] == stamp) {
+					int newPos = hash(ordinal, bdd1, bdd2);
+					cache[newPos] = ((cache[newPos] & ~OPERATOR_MASK) + VERSION) | ordinal;
+					cache[newPos + 1] = bdd1;
+					cache[newPos + 2] = bdd2;
+					cache[newPos + 3] = result;
+				}
+			}
+		}
+	}
 
 	/**
 	 * Gets an entry from this cache.
@@ -71,14 +180,25 @@ class ComputationCache {
 			}
 
 		int ordinal = op.ordinal();
-		int pos = hash(ordinal, bdd1, bdd2), pos1 = pos + 1, pos2 = pos + 2;
+		int pos = hash(ordinal, bdd1, bdd2);
 		int[] cache = this.cache;
 
-		if (cache[pos1] == bdd1 && cache[pos2] == bdd2 && cache[pos] == ordinal)
-			synchronized (locks[pos % locks.length]) {
-				return (cache[pos1] == bdd1 && cache[pos2] == bdd2 && cache[pos] == ordinal) ? cache[pos + 3] : -1;
+		int stamp = (int) ELEMENTS.getAcquire(cache, pos);
+		// this fails also if the entry is being written
+		if ((stamp & (OPERATOR_MASK | WRITING)) == ordinal) {
+			int result = cache[pos + 3];
+			if (cache[pos + 1] == bdd1 && cache[pos + 2] == bdd2) {
+				// the entry has been read consistently only if no write started in the meanwhile
+				VarHandle.loadLoadFence();
+
+				if (cache[pos] == stamp) {
+					counters[ordinal].hit();
+					return result;
+				}
 			}
+		}
 
+		counters[ordinal].miss((stamp & OPERATOR_MASK) != EMPTY);
 		return -1;
 	}
 
@@ -100,16 +220,20 @@ class ComputationCache {
 			}
 
 		int ordinal = op.ordinal();
-		int pos = hash(ordinal, bdd1, bdd2), pos1 = pos + 1, pos2 = pos + 2;
+		int pos = hash(ordinal, bdd1, bdd2);
 		int[] cache = this.cache;
 
-		if (cache[pos1] != bdd1 || cache[pos2] != bdd2 || cache[pos] != ordinal)
-			synchronized (locks[pos % locks.length]) {
-				cache[pos] = ordinal;
-				cache[pos1] = bdd1;
-				cache[pos2] = bdd2;
-				cache[pos + 3] = result;
-			}
+		int stamp = cache[pos];
+		if ((stamp & WRITING) != 0 || ((stamp & OPERATOR_MASK) == ordinal && cache[pos + 1] == bdd1 && cache[pos + 2] == bdd2))
+			return;
+
+		if (ELEMENTS.compareAndSet(cache, pos, stamp, stamp | WRITING)) {
+			counters[ordinal].put((stamp & OPERATOR_MASK) != EMPTY);
+			cache[pos + 1] = bdd1;
+			cache[pos + 2] = bdd2;
+			cache[pos + 3] = result;
+			ELEMENTS.setRelease(cache, pos, ((stamp & ~(OPERATOR_MASK | WRITING)) + VERSION) | ordinal);
+		}
 	}
 
 	/**
@@ -0,0 +1,100 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.Arrays;
+
+/**
+ * A conjunction of literals over levels, interned by a factory so that the
+ * cache of the restrictions by a cube identifies it by a small integer.
+ * Identifiers are never reused, hence an identifier denotes the same cube
+ * for the whole life of the factory.
+ */
+
+final class Cube {
+
+	/**
+	 * The value of each level, that is 1 for a positive literal, 0 for a
+	 * negative literal and -1 for the levels that are not in the cube.
+	 * The last element, if any, is not -1, so that equal cubes have
+	 * equal arrays.
+	 */
+
+	private final int[] values;
+
+	final int id;
+
+	/**
+	 * Builds a cube that is not interned yet, hence has no identifier.
+	 *
+	 * @param values the value of each level, as described above
+	 */
+
+	Cube(int[] values) {
+		this.values = values;
+		this.id = -1;
+	}
+
+	private Cube(Cube other, int id) {
+		this.values = other.values;
+		this.id = id;
+	}
+
+	/**
+	 * Yields this same cube, with the given identifier.
+	 */
+
+	Cube withId(int id) {
+		return new Cube(this, id);
+	}
+
+	/**
+	 * @return the deepest level in this cube, or -1 if this cube is empty
+	 */
+
+	int lastLevel() {
+		return values.length - 1;
+	}
+
+	/**
+	 * Yields the value of the given level in this cube.
+	 *
+	 * @return 1 for a positive literal, 0 for a negative literal,
+	 *         -1 if the level is not in this cube
+	 */
+
+	int valueOf(int level) {
+		return level < values.length ? values[level] : -1;
+	}
+
+	/**
+	 * Two cubes are equal if they have the same literals, whatever their
+	 * identifiers are. This is only used for interning them.
+	 */
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Cube && Arrays.equals(values, ((Cube) other).values);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(values);
+	}
+}
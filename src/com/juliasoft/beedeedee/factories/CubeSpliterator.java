@@ -0,0 +1,280 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import com.juliasoft.beedeedee.factories.Factory.BDDImpl;
+import com.juliasoft.beedeedee.factories.Factory.GCLock;
+
+/**
+ * Enumerates the satisfying cubes of a bdd, one at a time, along an explicit
+ * path from its root down to the terminal one. A cube is an array indexed by
+ * variable, that holds 1 or 0 for the variables tested along the path and -1
+ * for the others, that are don't-care.
+ * <p>
+ * The path is kept as the sequence of its choices, so that it can be walked
+ * again from the root if a garbage collection moves its nodes. A reordering
+ * changes the paths themselves, hence it makes the enumeration fail.
+ * A split hands the cubes below the low branch of the topmost open choice
+ * of the path to a new enumerator and keeps those below its high branch.
+ */
+
+final class CubeSpliterator implements Spliterator<int[]> {
+
+	private final Factory factory;
+	private final ResizingAndGarbageCollectedUniqueTable ut;
+	private final BDDImpl bdd;
+
+	/**
+	 * True if each cube is a fresh array, false if the same array is
+	 * updated and passed again for each cube.
+	 */
+
+	private final boolean copy;
+
+	private final int[] cube;
+
+	/**
+	 * The edges along the path: {@code edges[depth]} is the terminal one.
+	 */
+
+	private final int[] edges;
+
+	/**
+	 * The variable tested at each depth of the path and its value.
+	 */
+
+	private final int[] vars;
+	private final boolean[] high;
+	private int depth;
+
+	/**
+	 * The choices above this depth are fixed, since the cubes that
+	 * they exclude are enumerated by another enumerator.
+	 */
+
+	private int floor;
+
+	private boolean started;
+
+	/**
+	 * True if the path leads to a cube that has not been passed yet.
+	 */
+
+	private boolean pending;
+
+	private boolean done;
+	private int numOfGCs;
+	private final int numOfReorders;
+	private long estimatedSize = Long.MAX_VALUE;
+
+	CubeSpliterator(Factory factory, BDDImpl bdd, boolean copy) {
+		this.factory = factory;
+		this.ut = factory.ut;
+		this.bdd = bdd;
+		this.copy = copy;
+		int numberOfVars = factory.getMaxVar() + 1;
+		this.cube = new int[numberOfVars];
+		Arrays.fill(cube, -1);
+		this.edges = new int[numberOfVars + 1];
+		this.vars = new int[numberOfVars];
+		this.high = new boolean[numberOfVars];
+		this.numOfGCs = ut.getNumOfGCs();
+		this.numOfReorders = ut.getNumOfReorders();
+	}
+
+	/**
+	 * Builds an enumerator in the same state as the given one.
+	 */
+
+	private CubeSpliterator(CubeSpliterator other) {
+		this.factory = other.factory;
+		this.ut = other.ut;
+		this.bdd = other.bdd;
+		this.copy = other.copy;
+		this.cube = other.cube.clone();
+		this.edges = other.edges.clone();
+		this.vars = other.vars.clone();
+		this.high = other.high.clone();
+		this.depth = other.depth;
+		this.floor = other.floor;
+		this.started = other.started;
+		this.pending = other.pending;
+		this.done = other.done;
+		this.numOfGCs = other.numOfGCs;
+		this.numOfReorders = other.numOfReorders;
+		this.estimatedSize = other.estimatedSize;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super int[]> action) {
+		int[] next;
+
+		try (GCLock lock = factory.new GCLock()) {
+			if (!moveToNextCube())
+				return false;
+
+			pending = false;
+			next = copy ? cube.clone() : cube;
+		}
+
+		// the lock is not held by the action, that might use the factory
+		action.accept(next);
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super int[]> action) {
+		while (tryAdvance(action));
+	}
+
+	@Override
+	public Spliterator<int[]> trySplit() {
+		try (GCLock lock = factory.new GCLock()) {
+			if (!moveToNextCube())
+				return null;
+
+			for (int pos = floor; pos < depth; pos++)
+				if (!high[pos] && ut.high(edges[pos]) != factory.ZERO) {
+					// the choices above pos have no alternatives left; the cubes
+					// below its low branch come first, hence they are split off
+					estimatedSize >>>= 1;
+					CubeSpliterator prefix = new CubeSpliterator(this);
+					prefix.floor = pos + 1;
+
+					high[pos] = true;
+					floor = pos + 1;
+					started = pending = false;
+					Arrays.fill(cube, -1);
+
+					return prefix;
+				}
+
+			return null;
+		}
+	}
+
+	@Override
+	public long estimateSize() {
+		return done ? 0L : estimatedSize;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | DISTINCT | NONNULL;
+	}
+
+	/**
+	 * Moves the path to the next cube, unless it already leads to a cube
+	 * that has not been passed yet.
+	 *
+	 * @return false if there are no more cubes
+	 */
+
+	private boolean moveToNextCube() {
+		if (done)
+			return false;
+
+		if (ut.getNumOfReorders() != numOfReorders)
+			throw new ConcurrentModificationException("the variables have been reordered during the enumeration");
+
+		int numOfGCs = ut.getNumOfGCs();
+		if (numOfGCs != this.numOfGCs) {
+			this.numOfGCs = numOfGCs;
+			if (started)
+				walk(depth);
+		}
+
+		if (!started) {
+			started = true;
+			walk(floor);
+			pending = edges[floor] != factory.ZERO;
+			if (pending)
+				descend(floor);
+		}
+		else if (!pending)
+			pending = backtrack();
+
+		done = !pending;
+		return pending;
+	}
+
+	/**
+	 * Walks the given number of choices of the path from the root,
+	 * setting their edges, variables and values.
+	 */
+
+	private void walk(int length) {
+		int edge = edges[0] = bdd.id;
+		for (int pos = 0; pos < length; pos++) {
+			int var = vars[pos] = ut.varOfLevel(ut.var(edge));
+			cube[var] = high[pos] ? 1 : 0;
+			edge = edges[pos + 1] = high[pos] ? ut.high(edge) : ut.low(edge);
+		}
+	}
+
+	/**
+	 * Completes the path from the given depth with its first cube, taking
+	 * the low branches whenever they are satisfiable.
+	 */
+
+	private void descend(int depth) {
+		int ZERO = factory.ZERO, ONE = factory.ONE;
+
+		for (int edge = edges[depth]; edge != ONE; depth++) {
+			int var = vars[depth] = ut.varOfLevel(ut.var(edge));
+			int low = ut.low(edge);
+			// a non-terminal node cannot be unsatisfiable
+			boolean takeHigh = high[depth] = low == ZERO;
+			cube[var] = takeHigh ? 1 : 0;
+			edge = edges[depth + 1] = takeHigh ? ut.high(edge) : low;
+		}
+
+		this.depth = depth;
+	}
+
+	/**
+	 * Moves the path to the high branch of its deepest open choice.
+	 *
+	 * @return false if no choice below the floor is open
+	 */
+
+	private boolean backtrack() {
+		for (int pos = depth - 1; pos >= floor; pos--) {
+			cube[vars[pos]] = -1;
+
+			if (!high[pos]) {
+				int highEdge = ut.high(edges[pos]);
+				if (highEdge != factory.ZERO) {
+					high[pos] = true;
+					cube[vars[pos]] = 1;
+					edges[pos + 1] = highEdge;
+					descend(pos + 1);
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+}
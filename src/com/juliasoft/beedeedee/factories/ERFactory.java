@@ -7,6 +7,8 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import com.juliasoft.beedeedee.bdd.Assignment;
 import com.juliasoft.beedeedee.bdd.BDD;
@@ -23,6 +25,11 @@ public class ERFactory extends Factory {
 		super(utSize, cacheSize);
 	}
 
+	@Override
+	protected BDD mkFromFunction(int id) {
+		return new BDDER(id);
+	}
+
 	@Override
 	public BDD makeZero() {
 		try (GCLock lock = new GCLock()) {
@@ -56,6 +63,43 @@ public class ERFactory extends Factory {
 		throw new RuntimeException("Not yet implemented"); //TODO
 	}
 
+	/**
+	 * Unsupported operation: the ER representation assumes that variables
+	 * are ordered by their number.
+	 */
+
+	@Override
+	public void reorder() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Unsupported operation.
+	 */
+
+	@Override
+	public boolean setAutoReorder(boolean autoReorder) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Unsupported operation.
+	 */
+
+	@Override
+	public void swapVars(int var1, int var2) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Unsupported operation.
+	 */
+
+	@Override
+	public void setVarOrder(int[] order) {
+		throw new UnsupportedOperationException();
+	}
+
 	private class UsefulLeaders implements Filter {
 		private final int bdd;
 		private UsefulLeaders(int bdd) {
@@ -757,6 +801,16 @@ public class ERFactory extends Factory {
 			throw new UnsupportedOperationException();
 		}
 
+		@Override
+		public void forEachCube(Consumer<int[]> action) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Stream<int[]> cubes() {
+			throw new UnsupportedOperationException();
+		}
+
 		@Override
 		public long satCount() {
 			return satCount_();
@@ -821,7 +875,7 @@ public class ERFactory extends Factory {
 			if (l.containsVar(var)) {
 				Map<Integer, Integer> renaming = new HashMap<>();
 				renaming.put(var, l.nextLeader(var));
-				int exist = innerReplace(id, renaming, renaming.hashCode()); // requires normalized representation
+				int exist = innerReplace(id, renamingOf(renaming)); // requires normalized representation
 				return new BDDER(exist, l.removeVar(var), true);
 			}
 			else
@@ -849,22 +903,28 @@ public class ERFactory extends Factory {
 			int exist;
 
 			if (!renaming.isEmpty()) {
-				exist = innerReplace(id, renaming, renaming.hashCode());  // requires normalized representation
+				exist = innerReplace(id, renamingOf(renaming));  // requires normalized representation
 
 				if (quantifiedVars.isEmpty())
 					// no need to normalize in this case
 					return new BDDER(exist, lNew, false);
 				else
-					exist = innerQuantify(exist, quantifiedVars, true, quantifiedVars.hashCode());
+					exist = innerQuantify(exist, varSetOf(quantifiedVars), true);
 			}
 			else if (quantifiedVars.isEmpty())
 				return new BDDER(id, l, false);
 			else
-				exist = innerQuantify(id, quantifiedVars, true, quantifiedVars.hashCode());
+				exist = innerQuantify(id, varSetOf(quantifiedVars), true);
 
 			return new BDDER(exist, lNew, true);
 		}
 
+		@Override
+		VarSet varSet() {
+			// not cached, since the equivalence relation might change after the id
+			return varSetOf(ut.levelsOf(vars()));
+		}
+
 		@Override
 		public BDD forAll(int var) {
 			throw new UnsupportedOperationException();
@@ -893,7 +953,7 @@ public class ERFactory extends Factory {
 					throw new ReplacementWithExistingVarException(v);
 
 			try (GCLock lock = new GCLock()) {
-				int nNew = innerReplace(id, renaming, renaming.hashCode());
+				int nNew = innerReplace(id, renamingOf(renaming));
 
 				// perform "simultaneous" substitution
 				renaming = new HashMap<>(renaming);
@@ -905,6 +965,11 @@ public class ERFactory extends Factory {
 			}
 		}
 
+		@Override
+		BDD replace(Pairing pairing) {
+			return replace(pairing.asMap());
+		}
+
 		@Override
 		public BDD replaceWith(Map<Integer, Integer> renaming) {
 			BitSet nVars = super.vars();
@@ -919,7 +984,7 @@ public class ERFactory extends Factory {
 			eNew = eNew.replace(renaming);
 
 			try (GCLock lock = new GCLock()) {
-				int nNew = innerReplace(id, renaming, renaming.hashCode());
+				int nNew = innerReplace(id, renamingOf(renaming));
 
 				setId(renameWithLeader(nNew, eNew));
 				l = eNew;
@@ -929,6 +994,11 @@ public class ERFactory extends Factory {
 			return this;
 		}
 
+		@Override
+		BDD replaceWith(Pairing pairing) {
+			return replaceWith(pairing.asMap());
+		}
+
 		/**
 		 * Separates renamings affecting variables on the right side of some renaming.
 		 * The original renaming map is modified.
@@ -981,6 +1051,11 @@ public class ERFactory extends Factory {
 			throw new UnsupportedOperationException();
 		}
 
+		@Override
+		public BDD compose(Map<Integer, BDD> substitution) {
+			throw new UnsupportedOperationException();
+		}
+
 		@Override
 		public boolean isEquivalentTo(BDD other) {
 			if (other instanceof BDDER) {
@@ -993,6 +1068,11 @@ public class ERFactory extends Factory {
 				}
 		}
 
+		@Override
+		protected int getFunctionId() {
+			return getFullBDD();
+		}
+
 		/**
 		 * @return the full BDD, containing also equivalence constraints in l.
 		 */
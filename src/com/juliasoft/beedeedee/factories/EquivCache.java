@@ -3,13 +3,20 @@ package com.juliasoft.beedeedee.factories;
 import java.util.Arrays;
 
 import com.juliasoft.beedeedee.factories.ERFactory.EquivResult;
+import java.util.function.IntUnaryOperator;
 
 public class EquivCache {
 	private final int[] bdds;
 	private final EquivResult[] results;
 	private final Object[] locks = new Object[100];
+	private final CacheCounters counters;
 
 	EquivCache(int size) {
+		this(size, new CacheCounters());
+	}
+
+	EquivCache(int size, CacheCounters counters) {
+		this.counters = counters;
 		this.bdds = new int[size];
 		this.results = new EquivResult[size];
 		clear();
@@ -17,15 +24,70 @@ public class EquivCache {
 			locks[i] = new Object();
 	}
 
+	int getSize() {
+		return bdds.length;
+	}
+
+	CacheCounters getCounters() {
+		return counters;
+	}
+
 	void clear() {
 		Arrays.fill(bdds, -1);
 	}
 
+	/**
+	 * Keeps the entries whose bdds all survived a garbage collection, at the
+	 * position for their new indexes, and discards the others.
+	 * 
+	 * @param relocation yields the new index of a bdd, or -1 if it has been collected
+	 */
+	void remap(IntUnaryOperator relocation) {
+		int[] oldBdds = bdds.clone();
+		EquivResult[] oldResults = results.clone();
+		clear();
+
+		for (int pos = 0; pos < oldBdds.length; pos++)
+			if (oldBdds[pos] != -1) {
+				int bdd = relocation.applyAsInt(oldBdds[pos]);
+
+				if (bdd >= 0) {
+					int newPos = hash(bdd);
+					bdds[newPos] = bdd;
+					results[newPos] = oldResults[pos];
+				}
+			}
+	}
+
+	/**
+	 * Copies into this cache the entries of a smaller cache, at their position
+	 * in this cache. The other cache might be in use by other threads, hence
+	 * each entry is read consistently and those being written are skipped.
+	 * 
+	 * @param other the other cache
+	 */
+	void copyFrom(EquivCache other) {
+		for (int pos = 0; pos < other.bdds.length; pos++)
+			synchronized (other.locks[pos % other.locks.length]) {
+				if (other.bdds[pos] != -1) {
+					int newPos = hash(other.bdds[pos]);
+					bdds[newPos] = other.bdds[pos];
+					results[newPos] = other.results[pos];
+				}
+			}
+	}
+
 	public EquivResult get(int bdd) {
 		int pos = hash(bdd);
 
 		synchronized (locks[pos % locks.length]) {
-			return bdds[pos] == bdd ? results[pos] : null;
+			if (bdds[pos] == bdd) {
+				counters.hit();
+				return results[pos];
+			}
+
+			counters.miss(bdds[pos] != -1);
+			return null;
 		}
 	}
 
@@ -33,6 +95,7 @@ public class EquivCache {
 		int pos = hash(bdd);
 
 		synchronized (locks[pos % locks.length]) {
+			counters.put(bdds[pos] != -1 && bdds[pos] != bdd);
 			bdds[pos] = bdd;
 			results[pos] = result;
 		}
@@ -18,18 +18,34 @@
  */
 package com.juliasoft.beedeedee.factories;
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.juliasoft.beedeedee.bdd.Assignment;
 import com.juliasoft.beedeedee.bdd.BDD;
@@ -44,6 +60,89 @@ public class Factory {
 
 	private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
+	/**
+	 * The pool that computes conjunctions, disjunctions and exclusive
+	 * disjunctions in parallel, or null if they are computed sequentially.
+	 */
+
+	private volatile ForkJoinPool applyPool;
+
+	/**
+	 * The pools that computed in parallel before the last change of parallelism.
+	 * They are still running the computations started before that change, and
+	 * are shut down by {@link #done()}.
+	 */
+
+	private final List<ForkJoinPool> retiredApplyPools = new ArrayList<>();
+
+	/**
+	 * The depth of the recursion of a parallel apply below which the
+	 * recursive calls are computed sequentially. Forking up to this depth
+	 * costs nothing measurable on a large conjunction, while deeper forking
+	 * slows it down; it still yields up to 256 tasks to balance the workers.
+	 */
+
+	private final static int MAX_PARALLEL_DEPTH = 8;
+
+	/**
+	 * True if the operations are computed by the engines of the threads
+	 * rather than by recursion.
+	 */
+
+	private volatile boolean iterative;
+
+	private final ThreadLocal<IterativeEngine> engine = ThreadLocal.withInitial(IterativeEngine::new);
+
+	private final ThreadLocal<NodeTraversal> traversal = ThreadLocal.withInitial(NodeTraversal::new);
+
+	/**
+	 * The sets of levels interned so far, up to {@code MAX_VAR_SETS}.
+	 */
+
+	private final ConcurrentHashMap<BitSet, VarSet> varSets = new ConcurrentHashMap<>();
+
+	private final AtomicInteger nextVarSetId = new AtomicInteger();
+
+	private final static int MAX_VAR_SETS = 10000;
+
+	/**
+	 * The renamings of levels interned so far, up to {@code MAX_RENAMINGS}.
+	 */
+
+	private final ConcurrentHashMap<Renaming, Renaming> renamings = new ConcurrentHashMap<>();
+
+	private final AtomicInteger nextRenamingId = new AtomicInteger();
+
+	private final static int MAX_RENAMINGS = 10000;
+
+	/**
+	 * The renaming interned last, since the same renaming is typically
+	 * used many times in a row.
+	 */
+
+	private volatile Renaming lastRenaming;
+
+	/**
+	 * The substitutions interned so far, up to {@code MAX_SUBSTITUTIONS}.
+	 * They are relocated at each garbage collection.
+	 */
+
+	private final ConcurrentHashMap<Substitution, Substitution> substitutions = new ConcurrentHashMap<>();
+
+	private final AtomicInteger nextSubstitutionId = new AtomicInteger();
+
+	private final static int MAX_SUBSTITUTIONS = 10000;
+
+	/**
+	 * The cubes interned so far, up to {@code MAX_CUBES}.
+	 */
+
+	private final ConcurrentHashMap<Cube, Cube> cubes = new ConcurrentHashMap<>();
+
+	private final AtomicInteger nextCubeId = new AtomicInteger();
+
+	private final static int MAX_CUBES = 10000;
+
 	/**
 	 * Constructs a factory with automatic resizing and garbage collection.
 	 * 
@@ -67,6 +166,122 @@ public class Factory {
 		return new Factory(utSize, cacheSize, numberOfPreallocatedVars);
 	}
 
+	/**
+	 * Constructs a factory with automatic resizing and garbage collection, whose
+	 * edges can be complemented. A function and its negation share the same nodes,
+	 * hence negation takes constant time.
+	 * 
+	 * @param utSize the initial size of the node table
+	 * @param cacheSize the size of the caches
+	 * @return an instance of the factory
+	 */
+	public static Factory mkWithComplementEdges(int utSize, int cacheSize) {
+		return new Factory(utSize, cacheSize, DEFAULT_NUMBER_OF_PREALLOCATED_VARS, true, false);
+	}
+
+	/**
+	 * Constructs a factory with automatic resizing and garbage collection, whose
+	 * edges can be complemented. A function and its negation share the same nodes,
+	 * hence negation takes constant time.
+	 * 
+	 * @param utSize the initial size of the node table
+	 * @param cacheSize the size of the caches
+	 * @param numberOfPreallocatedVars the number of single variable BDDs to preallocate
+	 * @return an instance of the factory
+	 */
+	public static Factory mkWithComplementEdges(int utSize, int cacheSize, int numberOfPreallocatedVars) {
+		return new Factory(utSize, cacheSize, numberOfPreallocatedVars, true, false);
+	}
+
+	/**
+	 * Constructs a factory with automatic resizing and garbage collection, whose
+	 * table of nodes is modified without locks: threads allocate nodes from
+	 * their own chunk of the table and publish them by compare-and-swap. This
+	 * scales better than the default table when many threads build nodes at once.
+	 * 
+	 * @param utSize the initial size of the node table
+	 * @param cacheSize the size of the caches
+	 * @return an instance of the factory
+	 */
+	public static Factory mkLockFree(int utSize, int cacheSize) {
+		return new Factory(utSize, cacheSize, DEFAULT_NUMBER_OF_PREALLOCATED_VARS, false, true);
+	}
+
+	/**
+	 * Constructs a factory with automatic resizing and garbage collection, whose
+	 * table of nodes is modified without locks: threads allocate nodes from
+	 * their own chunk of the table and publish them by compare-and-swap. This
+	 * scales better than the default table when many threads build nodes at once.
+	 * 
+	 * @param utSize the initial size of the node table
+	 * @param cacheSize the size of the caches
+	 * @param numberOfPreallocatedVars the number of single variable BDDs to preallocate
+	 * @return an instance of the factory
+	 */
+	public static Factory mkLockFree(int utSize, int cacheSize, int numberOfPreallocatedVars) {
+		return new Factory(utSize, cacheSize, numberOfPreallocatedVars, false, true);
+	}
+
+	/**
+	 * Constructs a factory with automatic resizing and garbage collection, whose
+	 * table of nodes is kept out of the Java heap, in chunks of direct memory.
+	 * Resizes never copy the nodes, and there can be more nodes than fit into
+	 * a single Java array. The hash table and the arrays used by garbage
+	 * collection stay on the heap, with an element per node.
+	 * 
+	 * @param utSize the initial size of the node table
+	 * @param cacheSize the size of the caches
+	 * @return an instance of the factory
+	 */
+	public static Factory mkOffHeap(int utSize, int cacheSize) {
+		return new Factory(utSize, cacheSize, DEFAULT_NUMBER_OF_PREALLOCATED_VARS, false, false, true, false);
+	}
+
+	/**
+	 * Constructs a factory with automatic resizing and garbage collection, whose
+	 * table of nodes is kept out of the Java heap, in chunks of direct memory.
+	 * Resizes never copy the nodes, and there can be more nodes than fit into
+	 * a single Java array. The hash table and the arrays used by garbage
+	 * collection stay on the heap, with an element per node.
+	 * 
+	 * @param utSize the initial size of the node table
+	 * @param cacheSize the size of the caches
+	 * @param numberOfPreallocatedVars the number of single variable BDDs to preallocate
+	 * @return an instance of the factory
+	 */
+	public static Factory mkOffHeap(int utSize, int cacheSize, int numberOfPreallocatedVars) {
+		return new Factory(utSize, cacheSize, numberOfPreallocatedVars, false, false, true, false);
+	}
+
+	/**
+	 * Constructs a factory with automatic resizing and garbage collection, whose
+	 * nodes are compact: they take four integers rather than five, since they
+	 * do not keep a unique identifier for {@link BDD#hashCodeAux()}. That hash
+	 * code is then derived from the function of the bdd, when first required.
+	 * 
+	 * @param utSize the initial size of the node table
+	 * @param cacheSize the size of the caches
+	 * @return an instance of the factory
+	 */
+	public static Factory mkCompact(int utSize, int cacheSize) {
+		return new Factory(utSize, cacheSize, DEFAULT_NUMBER_OF_PREALLOCATED_VARS, false, false, false, true);
+	}
+
+	/**
+	 * Constructs a factory with automatic resizing and garbage collection, whose
+	 * nodes are compact: they take four integers rather than five, since they
+	 * do not keep a unique identifier for {@link BDD#hashCodeAux()}. That hash
+	 * code is then derived from the function of the bdd, when first required.
+	 * 
+	 * @param utSize the initial size of the node table
+	 * @param cacheSize the size of the caches
+	 * @param numberOfPreallocatedVars the number of single variable BDDs to preallocate
+	 * @return an instance of the factory
+	 */
+	public static Factory mkCompact(int utSize, int cacheSize, int numberOfPreallocatedVars) {
+		return new Factory(utSize, cacheSize, numberOfPreallocatedVars, false, false, false, true);
+	}
+
 	/**
 	 * Constructs a factory with automatic resizing and garbage collection, and
 	 * using the ER representation, that separates information on equivalent
@@ -106,6 +321,23 @@ public class Factory {
 		 */
 
 		public void onStop(int num, int size, int free, long time, long totalTime);
+
+		/**
+		 * Called when a garbage collection operation has been performed, together
+		 * with the distribution of the pauses of all garbage collections so far.
+		 * By default, it calls {@link #onStop(int, int, int, long, long)}.
+		 * 
+		 * @param num the progressive number of the garbage collection operation
+		 * @param size the number of nodes in the garbage collected table
+		 * @param free the number of free nodes after the operation
+		 * @param time the time required for the garbage collection
+		 * @param totalTime the cumulative garbage collection time up to now
+		 * @param pauses the distribution of the pauses, including this one
+		 */
+
+		public default void onStop(int num, int size, int free, long time, long totalTime, PauseDistribution pauses) {
+			onStop(num, size, free, time, totalTime);
+		}
 	}
 
 	public static interface ResizeListener {
@@ -134,18 +366,75 @@ public class Factory {
 		public void onStop(int num, int oldSize, int newSize, long time, long totalTime);
 	}
 
+	public static interface ReorderListener {
+
+		/**
+		 * Called when a reordering of the variables is about to start.
+		 * 
+		 * @param num the progressive number of the reorder operation
+		 * @param nodes the number of nodes in the table
+		 * @param totalTime the cumulative reorder time up to now
+		 */
+
+		public void onStart(int num, int nodes, long totalTime);
+
+		/**
+		 * Called when a reordering of the variables has been performed.
+		 * 
+		 * @param num the progressive number of the reorder operation
+		 * @param nodesBefore the number of nodes in the table before the reordering
+		 * @param nodesAfter the number of nodes in the table after the reordering
+		 * @param time the time required for the reordering
+		 * @param totalTime the cumulative reorder time up to now
+		 */
+
+		public void onStop(int num, int nodesBefore, int nodesAfter, long time, long totalTime);
+	}
+
 	protected final static int FIRST_NODE_NUM = 2;
 	protected final int NUMBER_OF_PREALLOCATED_VARS;
 	protected final static int DEFAULT_NUMBER_OF_PREALLOCATED_VARS = 1000;
 	protected final int NUMBER_OF_PREALLOCATED_NODES;
 	protected ResizingAndGarbageCollectedUniqueTable ut;
 	private final ArrayList<BDDImpl> allBDDsCreatedSoFar = new ArrayList<BDDImpl>();
+
+	/**
+	 * The nodes held, without a bdd, by the computations in progress.
+	 */
+
+	private final Set<HeldNodes> heldNodes = ConcurrentHashMap.newKeySet();
 	protected int ZERO;
 	protected int ONE;
 	protected final int[] vars;
 	protected final int[] notVars;
 	private int maxVar;
 
+	/**
+	 * True if the ids of the nodes carry a complement bit. In that case,
+	 * {@code ONE} is the complement of {@code ZERO} and the negation of a
+	 * bdd is its id with the lowest bit flipped.
+	 */
+
+	private final boolean complementEdges;
+
+	/**
+	 * The prime modulo which the fingerprints of the bdds are computed.
+	 */
+
+	private final static long FINGERPRINT_PRIME = Integer.MAX_VALUE;
+
+	/**
+	 * Yields the point where a variable is evaluated by the fingerprints.
+	 */
+
+	private static long fingerprintPoint(int var) {
+		// a mix of the bits of the variable, as in SplitMix64
+		long z = (var + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return ((z ^ (z >>> 31)) >>> 1) % FINGERPRINT_PRIME;
+	}
+
 	protected class GCLock implements Closeable {
 		private final ReentrantLock lock;
 	
@@ -165,34 +454,73 @@ public class Factory {
 	}
 
 	Factory(int utSize, int cacheSize, int numberOfPreallocatedVars) {
+		this(utSize, cacheSize, numberOfPreallocatedVars, false, false);
+	}
+
+	Factory(int utSize, int cacheSize, int numberOfPreallocatedVars, boolean complementEdges, boolean lockFree) {
+		this(utSize, cacheSize, numberOfPreallocatedVars, complementEdges, lockFree, false, false);
+	}
+
+	Factory(int utSize, int cacheSize, int numberOfPreallocatedVars, boolean complementEdges, boolean lockFree, boolean offHeap, boolean compactNodes) {
+		this.complementEdges = complementEdges;
 		NUMBER_OF_PREALLOCATED_VARS = numberOfPreallocatedVars;
-		NUMBER_OF_PREALLOCATED_NODES = FIRST_NODE_NUM + 2 * NUMBER_OF_PREALLOCATED_VARS;
+		// with complement edges, variables share their node with their negation
+		NUMBER_OF_PREALLOCATED_NODES = FIRST_NODE_NUM + (complementEdges ? 1 : 2) * NUMBER_OF_PREALLOCATED_VARS;
 		vars = new int[NUMBER_OF_PREALLOCATED_VARS];
 		notVars = new int[NUMBER_OF_PREALLOCATED_VARS];
 
 		utSize = Math.max(utSize, NUMBER_OF_PREALLOCATED_NODES);
-		setUT(new ResizingAndGarbageCollectedUniqueTable(utSize, cacheSize, this));
+		if (offHeap)
+			setUT(new OffHeapUniqueTable(utSize, cacheSize, complementEdges, compactNodes, this));
+		else if (lockFree)
+			setUT(new LockFreeUniqueTable(utSize, cacheSize, complementEdges, compactNodes, this));
+		else
+			setUT(new ResizingAndGarbageCollectedUniqueTable(utSize, cacheSize, complementEdges, compactNodes, this));
 	}
 
 	protected void setUT(ResizingAndGarbageCollectedUniqueTable uniqueTable) {
 		ut = uniqueTable;
 		// insert 0 and 1
-		ZERO = ut.get(Integer.MAX_VALUE - 1, -1, -1);
-		ONE = ut.get(Integer.MAX_VALUE, -1, -1);
+		if (ut.complementEdges) {
+			// one is the complement of zero; its slot is only reserved,
+			// so that the other nodes start at the usual position
+			ZERO = ut.edge(ut.getNode(Integer.MAX_VALUE - 1, -1, -1));
+			ut.getNode(Integer.MAX_VALUE, -1, -1);
+			ONE = ZERO | 1;
+		}
+		else {
+			ZERO = ut.get(Integer.MAX_VALUE - 1, -1, -1);
+			ONE = ut.get(Integer.MAX_VALUE, -1, -1);
+		}
 
 		// insert lower variables
 		for (int var = 0; var < NUMBER_OF_PREALLOCATED_VARS; var++)
 			vars[var] = ut.get(var, ZERO, ONE);
 
-		// and their negation
+		// and their negation, that with complement edges needs no new node
 		for (int var = 0; var < NUMBER_OF_PREALLOCATED_VARS; var++)
 			notVars[var] = ut.get(var, ONE, ZERO);
 	}
 
 	/**
 	 * Call this method when the factory is no longer needed.
+	 * It stops the threads of the parallel apply, if any.
 	 */
-	public void done() {}
+	public void done() {
+		List<ForkJoinPool> pools;
+
+		synchronized (this) {
+			pools = new ArrayList<>(retiredApplyPools);
+			retiredApplyPools.clear();
+			if (applyPool != null)
+				pools.add(applyPool);
+
+			applyPool = null;
+		}
+
+		for (ForkJoinPool pool: pools)
+			pool.shutdown();
+	}
 
 	protected final int MK(int var, int low, int high) {
 		return low == high ? low : ut.get(var, low, high);
@@ -218,7 +546,7 @@ public class Factory {
 		int varHigh = ut.var(high);
 
 		if (var == varLow || var == varHigh)
-			throw new ReplacementWithExistingVarException(var);
+			throw new ReplacementWithExistingVarException(ut.varOfLevel(var));
 
 		if (var < varLow && var < varHigh)
 			return MK(var, low, high);
@@ -249,6 +577,28 @@ public class Factory {
 		}
 	}
 
+	/**
+	 * Yields the statistics of this factory, that is, the hits and misses of
+	 * its caches, since its creation.
+	 * 
+	 * @return a snapshot of the statistics
+	 */
+	public Statistics getStatistics() {
+		try (GCLock lock = new GCLock()) {
+			return ut.getStatistics();
+		}
+	}
+
+	/**
+	 * Yields the distribution of the pauses due to the garbage collections
+	 * of this factory, since its creation.
+	 * 
+	 * @return a snapshot of the distribution
+	 */
+	public PauseDistribution getGCPauses() {
+		return ut.getGCPauses();
+	}
+
 	/**
 	 * @return a BDD object representing the constant zero
 	 */
@@ -295,7 +645,7 @@ public class Factory {
 		updateMaxVar(v);
 
 		if (v >= NUMBER_OF_PREALLOCATED_VARS)
-			return MK(v, ZERO, ONE);
+			return MK(ut.levelOfVar(v), ZERO, ONE);
 		else
 			return vars[v];
 	}
@@ -304,7 +654,7 @@ public class Factory {
 		updateMaxVar(v);
 	
 		if (v >= NUMBER_OF_PREALLOCATED_VARS)
-			return MK(v, ONE, ZERO);
+			return MK(ut.levelOfVar(v), ONE, ZERO);
 		else
 			return notVars[v];
 	}
@@ -314,8 +664,14 @@ public class Factory {
 	 */
 	
 	protected final int innerAnd(int bdd1, int bdd2) {
+		if (iterative)
+			return engine.get().apply(this, Operator.AND, bdd1, bdd2);
+
 		if (bdd1 == bdd2)
 			return bdd1;
+
+		if (complementEdges && (bdd1 ^ bdd2) == 1) // a bdd and its negation
+			return ZERO;
 	
 		if (bdd1 == ZERO || bdd2 == ZERO)
 			return ZERO;
@@ -343,6 +699,13 @@ public class Factory {
 	}
 
 	protected final int innerOr(int bdd1, int bdd2) {
+		if (iterative)
+			return engine.get().apply(this, Operator.OR, bdd1, bdd2);
+
+		// with complement edges, De Morgan lets disjunction share the cache of conjunction
+		if (complementEdges)
+			return innerAnd(bdd1 ^ 1, bdd2 ^ 1) ^ 1;
+
 		if (bdd1 == bdd2)
 			return bdd1;
 	
@@ -372,6 +735,12 @@ public class Factory {
 	}
 
 	protected final int innerBiimp(int bdd1, int bdd2) {
+		if (iterative)
+			return engine.get().apply(this, Operator.BIIMP, bdd1, bdd2);
+
+		if (complementEdges)
+			return innerXor(bdd1, bdd2) ^ 1;
+
 		if (bdd1 == bdd2)
 			return ONE;
 	
@@ -408,6 +777,12 @@ public class Factory {
 	 */
 	
 	protected final int innerImp(int bdd1, int bdd2) {
+		if (iterative)
+			return engine.get().apply(this, Operator.IMP, bdd1, bdd2);
+
+		if (complementEdges)
+			return innerAnd(bdd1, bdd2 ^ 1) ^ 1;
+
 		if (bdd1 == bdd2 || bdd1 == ZERO)
 			return ONE;
 		else if (bdd1 == ONE)
@@ -430,6 +805,14 @@ public class Factory {
 	}
 
 	protected final int innerXor(int bdd1, int bdd2) {
+		if (iterative)
+			return engine.get().apply(this, Operator.XOR, bdd1, bdd2);
+
+		// negating an operand negates the result: with complement edges,
+		// only regular edges reach the cache and the recursion below
+		if (complementEdges && ((bdd1 | bdd2) & 1) != 0)
+			return innerXor(bdd1 & ~1, bdd2 & ~1) ^ ((bdd1 ^ bdd2) & 1);
+
 		if (bdd1 == bdd2 || (bdd1 == ONE && bdd2 == ONE) || (bdd1 == ZERO && bdd2 == ZERO))
 			return ZERO;
 	
@@ -458,8 +841,89 @@ public class Factory {
 		return result;
 	}
 
+	/**
+	 * Computes a conjunction, disjunction or exclusive disjunction, in parallel
+	 * if a parallelism has been set for this factory. The caller must hold a
+	 * garbage collection lock, that also keeps the nodes created by the workers
+	 * alive, since no garbage collection can start before the result is computed.
+	 */
+
+	protected final int apply(Operator op, int bdd1, int bdd2) {
+		ForkJoinPool applyPool = this.applyPool;
+		if (applyPool != null)
+			try {
+				return applyPool.invoke(new ParallelApply(op, bdd1, bdd2, 0));
+			}
+			catch (RejectedExecutionException e) {
+				// the pool has been shut down by done() in the meantime
+			}
+
+		return sequentialApply(op, bdd1, bdd2);
+	}
+
+	private int sequentialApply(Operator op, int bdd1, int bdd2) {
+		switch (op) {
+		case AND: return innerAnd(bdd1, bdd2);
+		case OR: return innerOr(bdd1, bdd2);
+		case XOR: return innerXor(bdd1, bdd2);
+		default: throw new IllegalArgumentException("unexpected operator " + op);
+		}
+	}
+
+	/**
+	 * An apply whose recursive calls are forked down to a maximal depth.
+	 */
+
+	@SuppressWarnings("serial")
+	private class ParallelApply extends RecursiveTask<Integer> {
+		private final Operator op;
+		private final int bdd1;
+		private final int bdd2;
+		private final int depth;
+
+		private ParallelApply(Operator op, int bdd1, int bdd2, int depth) {
+			this.op = op;
+			this.bdd1 = bdd1;
+			this.bdd2 = bdd2;
+			this.depth = depth;
+		}
+
+		@Override
+		protected Integer compute() {
+			return parallelApply(op, bdd1, bdd2, depth);
+		}
+	}
+
+	private int parallelApply(Operator op, int bdd1, int bdd2, int depth) {
+		// the same normal forms of the sequential code, so that they share the cache
+		if (complementEdges)
+			if (op == Operator.OR)
+				return parallelApply(Operator.AND, bdd1 ^ 1, bdd2 ^ 1, depth) ^ 1;
+			else if (op == Operator.XOR && ((bdd1 | bdd2) & 1) != 0)
+				return parallelApply(Operator.XOR, bdd1 & ~1, bdd2 & ~1, depth) ^ ((bdd1 ^ bdd2) & 1);
+
+		// the sequential code also deals with the terminal cases
+		if (depth >= MAX_PARALLEL_DEPTH || bdd1 == ZERO || bdd1 == ONE || bdd2 == ZERO || bdd2 == ONE
+				|| ut.node(bdd1) == ut.node(bdd2))
+			return sequentialApply(op, bdd1, bdd2);
+
+		int result;
+		if ((result = ut.getFromCache(op, bdd1, bdd2)) < 0) {
+			int v1 = ut.var(bdd1), v2 = ut.var(bdd2), var = Math.min(v1, v2);
+			int low1 = v1 == var ? ut.low(bdd1) : bdd1, high1 = v1 == var ? ut.high(bdd1) : bdd1;
+			int low2 = v2 == var ? ut.low(bdd2) : bdd2, high2 = v2 == var ? ut.high(bdd2) : bdd2;
+
+			ParallelApply high = new ParallelApply(op, high1, high2, depth + 1);
+			high.fork();
+			int low = parallelApply(op, low1, low2, depth + 1);
+			ut.putIntoCache(op, bdd1, bdd2, result = MK(var, low, high.join()));
+		}
+
+		return result;
+	}
+
 	protected final int innerNot(int id) {
-		return innerImp(id, ZERO);
+		return complementEdges ? id ^ 1 : innerImp(id, ZERO);
 	}
 
 	protected final int innerRestrict(int id, int var, boolean value) {
@@ -482,51 +946,276 @@ public class Factory {
 			return innerRestrict(ut.low(id), var, value);
 	}
 
+	/**
+	 * Restricts the given bdd by all the literals of a cube at once.
+	 */
+
+	protected final int innerRestrict(int id, Cube cube) {
+		if (id < FIRST_NODE_NUM) // terminal node
+			return id;
+
+		int var = ut.var(id);
+		if (var > cube.lastLevel()) // no literal below
+			return id;
+
+		int result = ut.getCubeRestrictCache().get(id, cube);
+		if (result >= 0)
+			return result;
+
+		int value = cube.valueOf(var);
+		if (value == 1)
+			result = innerRestrict(ut.high(id), cube);
+		else if (value == 0)
+			result = innerRestrict(ut.low(id), cube);
+		else
+			result = MK(var, innerRestrict(ut.low(id), cube), innerRestrict(ut.high(id), cube));
+
+		ut.getCubeRestrictCache().put(id, cube, result);
+
+		return result;
+	}
+
+	/**
+	 * Yields the interned cube of the literals of the given bdd, that is
+	 * interned if needed. The nodes that are not a literal, since both
+	 * their children are not false, do not constrain their variable.
+	 * The caller must hold a garbage collection lock.
+	 */
+
+	final Cube cubeOf(int id) {
+		int[] values = new int[0];
+		int length = 0;
+
+		while (id >= FIRST_NODE_NUM) {
+			int level = ut.var(id), low = ut.low(id), high = ut.high(id);
+
+			if (low != ZERO && high != ZERO)
+				id = high;
+			else {
+				if (level >= values.length) {
+					int oldLength = values.length;
+					values = Arrays.copyOf(values, Math.max(level + 1, 2 * oldLength));
+					Arrays.fill(values, oldLength, values.length, -1);
+				}
+
+				// levels grow along the path, hence the last literal is the deepest
+				values[level] = low == ZERO ? 1 : 0;
+				length = level + 1;
+				id = low == ZERO ? high : low;
+			}
+		}
+
+		Cube key = new Cube(Arrays.copyOf(values, length)), cube = cubes.get(key);
+		if (cube != null)
+			return cube;
+
+		// identifiers are never reused, hence the cubes forgotten here can only miss in the cache
+		if (cubes.size() >= MAX_CUBES)
+			cubes.clear();
+
+		return cubes.computeIfAbsent(key, __ -> key.withId(nextCubeId.getAndIncrement()));
+	}
+
 	protected final int innerExist(int id, int var) {
 		return innerOr(innerRestrict(id, var, false), innerRestrict(id, var, true));
 	}
 
-	protected final int innerReplace(int bdd, Map<Integer, Integer> renaming, int hashOfRenaming) {
+	protected final int innerReplace(int bdd, Renaming renaming) {
+		if (bdd < FIRST_NODE_NUM) // terminal node
+			return bdd;
+
+		int result = ut.getReplaceCache().get(bdd, renaming);
+		if (result >= 0)
+			return result;
+
+		if ((result = replaceInOrder(bdd, renaming)) < 0)
+			if (iterative)
+				return engine.get().replace(this, bdd, renaming);
+			else
+				return replaceOutOfOrder(bdd, renaming);
+
+		ut.getReplaceCache().put(bdd, renaming, result);
+
+		return result;
+	}
+
+	/**
+	 * Renames the given bdd if the renaming preserves the order of its variables,
+	 * as it is typical between the current and next state variables when they are
+	 * interleaved. In that case each node is renamed into a single node, hence the
+	 * nodes are rebuilt with {@code MK} from the deepest, each of them once,
+	 * whatever the size of the replace cache.
+	 *
+	 * @return the renamed bdd, or -1 if the renaming does not preserve the order
+	 *         of the levels it renames or of the variables of the bdd
+	 */
+
+	private int replaceInOrder(int bdd, Renaming renaming) {
+		// a renaming that swaps two renamed levels is not worth a traversal of the bdd
+		if (!renaming.monotone)
+			return -1;
+
+		NodeTraversal traversal = startTraversal();
+		int count = traversal.bottomUp(ut, bdd);
+		int[] nodes = traversal.sorted();
+
+		// the levels, from the deepest, must be renamed into strictly decreasing levels
+		int lastLevel = Integer.MAX_VALUE, lastNewLevel = Integer.MAX_VALUE;
+		for (int pos = 0; pos < count; pos++) {
+			int node = nodes[pos], level = ut.varAt(node);
+			if (level != lastLevel) {
+				int newLevel = renaming.newLevel(level);
+				if (newLevel >= lastNewLevel)
+					return -1;
+
+				lastLevel = level;
+				lastNewLevel = newLevel;
+			}
+		}
+
+		int[] renamed = traversal.values();
+		for (int pos = 0; pos < count; pos++) {
+			int node = nodes[pos], var = ut.varAt(node), oldLow = ut.lowAt(node), oldHigh = ut.highAt(node);
+			int low = renamedEdge(oldLow, traversal, renamed), high = renamedEdge(oldHigh, traversal, renamed), newVar = renaming.newLevel(var);
+
+			if (var == newVar && low == oldLow && high == oldHigh)
+				renamed[pos] = ut.edge(node);
+			else
+				renamed[pos] = MK(newVar, low, high);
+		}
+
+		return renamedEdge(bdd, traversal, renamed);
+	}
+
+	private int renamedEdge(int id, NodeTraversal traversal, int[] renamed) {
+		int node = ut.node(id);
+		return node < FIRST_NODE_NUM ? id : renamed[traversal.indexOf(node)] ^ ut.complementBit(id);
+	}
+
+	/**
+	 * Renames the given bdd, putting its nodes in order again.
+	 */
+
+	private int replaceOutOfOrder(int bdd, Renaming renaming) {
 		if (bdd < FIRST_NODE_NUM) // terminal node
 			return bdd;
 	
-		int result = ut.getReplaceCache().get(bdd, renaming, hashOfRenaming);
+		int result = ut.getReplaceCache().get(bdd, renaming);
 		if (result >= 0)
 			return result;
 	
 		int oldLow = ut.low(bdd), oldHigh = ut.high(bdd);
-		int lowRenamed = innerReplace(oldLow, renaming, hashOfRenaming);
-		int highRenamed = innerReplace(oldHigh, renaming, hashOfRenaming);
+		int lowRenamed = replaceOutOfOrder(oldLow, renaming);
+		int highRenamed = replaceOutOfOrder(oldHigh, renaming);
 		int var = ut.var(bdd);
-		Integer newVar = renaming.get(var);
-		if (newVar == null)
-			newVar = var;
+		int newVar = renaming.newLevel(var);
 	
 		if (var == newVar && lowRenamed == oldLow && highRenamed == oldHigh)
 			result = bdd;
 		else
 			result = MKInOrder(newVar, lowRenamed, highRenamed);
 	
-		ut.getReplaceCache().put(bdd, renaming, result, hashOfRenaming);
+		ut.getReplaceCache().put(bdd, renaming, result);
 	
 		return result;
 	}
 
-	protected final int innerQuantify(int id, BitSet vars, boolean exist, int hashCodeOfVars) {
+	/**
+	 * Yields the interned renaming equal to the given renaming of levels,
+	 * that is interned if needed.
+	 */
+
+	final Renaming renamingOf(Map<Integer, Integer> levels) {
+		Renaming renaming = lastRenaming;
+		if (renaming != null && renaming.matches(levels))
+			return renaming;
+
+		Renaming key = new Renaming(levels);
+		renaming = renamings.get(key);
+		if (renaming == null) {
+			// identifiers are never reused, hence the renamings forgotten here can only miss in the cache
+			if (renamings.size() >= MAX_RENAMINGS)
+				renamings.clear();
+
+			renaming = renamings.computeIfAbsent(key, __ -> key.withId(nextRenamingId.getAndIncrement()));
+		}
+
+		return lastRenaming = renaming;
+	}
+
+	/**
+	 * Yields the interned substitution equal to the given substitution of
+	 * levels by bdds, that is interned if needed.
+	 */
+
+	final Substitution substitutionOf(Map<Integer, Integer> replacements) {
+		Substitution key = new Substitution(replacements);
+		Substitution substitution = substitutions.get(key);
+		if (substitution != null)
+			return substitution;
+
+		// identifiers are never reused, hence the substitutions forgotten here can only miss in the cache
+		if (substitutions.size() >= MAX_SUBSTITUTIONS)
+			substitutions.clear();
+
+		return substitutions.computeIfAbsent(key, __ -> key.withId(nextSubstitutionId.getAndIncrement()));
+	}
+
+	/**
+	 * Relocates the interned substitutions after a garbage collection and
+	 * forgets those that refer to collected bdds.
+	 */
+
+	private void relocateSubstitutions(int[] newPositions) {
+		if (substitutions.isEmpty())
+			return;
+
+		List<Substitution> old = new ArrayList<>(substitutions.values());
+		substitutions.clear();
+
+		for (Substitution substitution: old) {
+			Substitution relocated = substitution.relocate(ut, newPositions);
+			if (relocated != null)
+				substitutions.put(relocated, relocated);
+		}
+	}
+
+	/**
+	 * Yields the interned set equal to the given set of levels, that is
+	 * interned if needed.
+	 */
+
+	final VarSet varSetOf(BitSet levels) {
+		VarSet varSet = varSets.get(levels);
+		if (varSet != null)
+			return varSet;
+
+		// identifiers are never reused, hence the sets forgotten here can only miss in the caches
+		if (varSets.size() >= MAX_VAR_SETS)
+			varSets.clear();
+
+		BitSet copy = (BitSet) levels.clone();
+		return varSets.computeIfAbsent(copy, __ -> new VarSet(copy, nextVarSetId.getAndIncrement()));
+	}
+
+	protected final int innerQuantify(int id, VarSet vars, boolean exist) {
+		if (iterative)
+			return engine.get().quantify(this, id, vars, exist);
+
 		if (id < FIRST_NODE_NUM) // terminal node
 			return id;
 	
-		int result = ut.getQuantCache().get(exist, id, vars, hashCodeOfVars);
+		int result = ut.getQuantCache().get(exist, id, vars);
 		if (result >= 0)
 			return result;
 	
 		int oldA = ut.low(id), oldB = ut.high(id);
-		int a = innerQuantify(oldA, vars, exist, hashCodeOfVars);
-		int b = innerQuantify(oldB, vars, exist, hashCodeOfVars);
+		int a = innerQuantify(oldA, vars, exist);
+		int b = innerQuantify(oldB, vars, exist);
 	
 		int var = ut.var(id);
 	
-		if (vars.get(var))
+		if (vars.levels.get(var))
 			if (exist)
 				result = innerOr(a, b);
 			else
@@ -537,11 +1226,174 @@ public class Factory {
 			else
 				result = MK(var, a, b);
 	
-		ut.getQuantCache().put(exist, id, vars, hashCodeOfVars, result);
+		ut.getQuantCache().put(exist, id, vars, result);
 	
 		return result;
 	}
 
+	/**
+	 * Computes the relational product, that is, the conjunction of the two
+	 * bdds followed by the existential quantification of the given variables.
+	 * Quantification is performed on the fly, so that the conjunction is never
+	 * built in full.
+	 */
+	protected final int innerRelProd(int bdd1, int bdd2, VarSet vars) {
+		if (bdd1 == ZERO || bdd2 == ZERO)
+			return ZERO;
+
+		if (bdd1 == bdd2 || bdd2 == ONE)
+			return innerQuantify(bdd1, vars, true);
+
+		if (bdd1 == ONE)
+			return innerQuantify(bdd2, vars, true);
+
+		int result;
+		if ((result = ut.getRelProdCache().get(bdd1, bdd2, vars)) < 0) {
+			int v1 = ut.var(bdd1), v2 = ut.var(bdd2), var, low1, high1, low2, high2;
+
+			if (v1 <= v2) {
+				var = v1;
+				low1 = ut.low(bdd1);
+				high1 = ut.high(bdd1);
+			}
+			else {
+				var = v2;
+				low1 = high1 = bdd1;
+			}
+
+			if (v2 <= v1) {
+				low2 = ut.low(bdd2);
+				high2 = ut.high(bdd2);
+			}
+			else
+				low2 = high2 = bdd2;
+
+			int low = innerRelProd(low1, low2, vars);
+
+			if (vars.levels.get(var))
+				// the high branch is useless if the low one is already true
+				result = low == ONE ? ONE : innerOr(low, innerRelProd(high1, high2, vars));
+			else
+				result = MK(var, low, innerRelProd(high1, high2, vars));
+
+			ut.getRelProdCache().put(bdd1, bdd2, vars, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Computes if-then-else. The triple is first put in standard form, so that
+	 * equivalent calls share the same cache entry, and the cases that are just
+	 * binary operations are delegated to the computation cache.
+	 */
+	protected final int innerIte(int f, int g, int h) {
+		if (f == ONE)
+			return g;
+		if (f == ZERO)
+			return h;
+
+		// ite(not f, g, h) = ite(f, h, g)
+		if (complementEdges && (f & 1) != 0) {
+			f ^= 1;
+			int temp = g;
+			g = h;
+			h = temp;
+		}
+
+		// ite(f, f, h) = ite(f, 1, h) and ite(f, g, f) = ite(f, g, 0)
+		if (g == f)
+			g = ONE;
+		else if (complementEdges && g == (f ^ 1))
+			g = ZERO;
+
+		if (h == f)
+			h = ZERO;
+		else if (complementEdges && h == (f ^ 1))
+			h = ONE;
+
+		if (g == h)
+			return g;
+		if (g == ONE)
+			return h == ZERO ? f : innerOr(f, h);
+		if (h == ZERO)
+			return innerAnd(f, g);
+		if (h == ONE)
+			return g == ZERO ? innerNot(f) : innerImp(f, g);
+
+		// ite(f, not g, not h) = not ite(f, g, h)
+		if (complementEdges && (g & 1) != 0)
+			return innerIte(f, g ^ 1, h ^ 1) ^ 1;
+
+		int result;
+		IteCache cache = ut.getIteCache();
+		if ((result = cache.get(f, g, h)) < 0) {
+			int vf = ut.var(f), vg = ut.var(g), vh = ut.var(h);
+			int var = Math.min(vf, Math.min(vg, vh));
+			int fLow, fHigh, gLow, gHigh, hLow, hHigh;
+
+			if (vf == var) {
+				fLow = ut.low(f);
+				fHigh = ut.high(f);
+			}
+			else
+				fLow = fHigh = f;
+
+			if (vg == var) {
+				gLow = ut.low(g);
+				gHigh = ut.high(g);
+			}
+			else
+				gLow = gHigh = g;
+
+			if (vh == var) {
+				hLow = ut.low(h);
+				hHigh = ut.high(h);
+			}
+			else
+				hLow = hHigh = h;
+
+			result = MK(var, innerIte(fLow, gLow, hLow), innerIte(fHigh, gHigh, hHigh));
+			cache.put(f, g, h, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Computes the simultaneous functional composition of a bdd, in a single
+	 * traversal. The substitution replaces levels by the indexes of bdds:
+	 * nodes below its deepest level are left untouched.
+	 */
+	protected final int innerCompose(int bdd, Substitution substitution) {
+		int var = ut.var(bdd);
+		if (var > substitution.maxLevel()) // includes terminal nodes
+			return bdd;
+
+		int result = ut.getComposeCache().get(bdd, substitution);
+		if (result >= 0)
+			return result;
+
+		int oldLow = ut.low(bdd), oldHigh = ut.high(bdd);
+		int low = innerCompose(oldLow, substitution);
+		int high = innerCompose(oldHigh, substitution);
+		int replacement = substitution.replacement(var);
+
+		if (replacement >= 0)
+			result = innerIte(replacement, high, low);
+		else if (low == oldLow && high == oldHigh)
+			result = bdd;
+		else if (var < ut.var(low) && var < ut.var(high))
+			result = MK(var, low, high);
+		else
+			// the substituted bdds brought variables above var
+			result = innerIte(MK(var, ZERO, ONE), high, low);
+
+		ut.getComposeCache().put(bdd, substitution, result);
+
+		return result;
+	}
+
 	private int freedBDDsCounter;
 
 	public class BDDImpl implements BDD {
@@ -553,7 +1405,9 @@ public class Factory {
 		protected int id;
 
 		/**
-		 * A unique identifier of the node where this BDD starts.
+		 * A unique identifier of the node where this BDD starts. With compact
+		 * nodes, a fingerprint of the function of this BDD instead, or -1 if
+		 * it has not been computed yet.
 		 */
 
 		private int hashCode;
@@ -564,6 +1418,18 @@ public class Factory {
 
 		private int nodeCount;
 
+		/**
+		 * A cache for the varSet() method, or null if it is not valid.
+		 */
+
+		private VarSet varSet;
+
+		/**
+		 * A cache for the cube() method, or null if it is not valid.
+		 */
+
+		private Cube cube;
+
 		protected BDDImpl(int id) {
 			setId(id);
 
@@ -574,17 +1440,26 @@ public class Factory {
 
 		protected final void setId(int id) {
 			this.id = id;
-			this.hashCode = ut.hashCodeAux(id);
+			this.hashCode = ut.compactNodes ? -1 : ut.hashCodeAuxOfEdge(id);
 			this.nodeCount = -1;
+			this.varSet = null;
+			this.cube = null;
 		}
 
 		public final int getId() {
 			return id;
 		}
 
+		/**
+		 * @return the id of the whole function represented by this BDD
+		 */
+		protected int getFunctionId() {
+			return id;
+		}
+
 		@Override
 		public void free() {
-			if (id >= NUMBER_OF_PREALLOCATED_NODES) {
+			if (ut.node(id) >= NUMBER_OF_PREALLOCATED_NODES) {
 				id = -1;
 				ut.scheduleGC();
 				ut.gcIfAlmostFull();
@@ -630,7 +1505,7 @@ public class Factory {
 
 			boolean terminal = false;
 
-			int var = ut.var(currentId);
+			int var = ut.varOfLevel(ut.var(currentId));
 			if (currentId < 2) {
 				var = currentId == 0 ? 0 : 1;
 
@@ -659,14 +1534,14 @@ public class Factory {
 			ut.gcIfAlmostFull();
 
 			try (GCLock lock = new GCLock()) {
-				return new BDDImpl(innerOr(id, ((BDDImpl) other).id));
+				return new BDDImpl(apply(Operator.OR, id, ((BDDImpl) other).id));
 			}
 		}
 
 		@Override
 		public BDD orWith(BDD other) {
 			try (GCLock lock = new GCLock()) {
-				setId(innerOr(id, ((BDDImpl) other).id));
+				setId(apply(Operator.OR, id, ((BDDImpl) other).id));
 			}
 
 			other.free();
@@ -679,14 +1554,14 @@ public class Factory {
 			ut.gcIfAlmostFull();
 
 			try (GCLock lock = new GCLock()) {
-				return new BDDImpl(innerAnd(id, ((BDDImpl) other).id));
+				return new BDDImpl(apply(Operator.AND, id, ((BDDImpl) other).id));
 			}
 		}
 
 		@Override
 		public BDD andWith(BDD other) {
 			try (GCLock lock = new GCLock()) {
-				setId(innerAnd(id, ((BDDImpl) other).id));
+				setId(apply(Operator.AND, id, ((BDDImpl) other).id));
 			}
 
 			other.free();
@@ -699,14 +1574,14 @@ public class Factory {
 			ut.gcIfAlmostFull();
 
 			try (GCLock lock = new GCLock()) {
-				return new BDDImpl(innerXor(id, ((BDDImpl) other).id));
+				return new BDDImpl(apply(Operator.XOR, id, ((BDDImpl) other).id));
 			}
 		}
 
 		@Override
 		public BDD xorWith(BDD other) {
 			try (GCLock lock = new GCLock()) {
-				setId(innerXor(id, ((BDDImpl) other).id));
+				setId(apply(Operator.XOR, id, ((BDDImpl) other).id));
 			}
 
 			other.free();
@@ -719,14 +1594,14 @@ public class Factory {
 			ut.gcIfAlmostFull();
 
 			try (GCLock lock = new GCLock()) {
-				return new BDDImpl(innerImp(innerAnd(id, ((BDDImpl) other).id), ZERO));
+				return new BDDImpl(innerNot(innerAnd(id, ((BDDImpl) other).id)));
 			}
 		}
 
 		@Override
 		public BDD nandWith(BDD other) {
 			try (GCLock lock = new GCLock()) {
-				setId(innerImp(innerAnd(id, ((BDDImpl) other).id), ZERO));
+				setId(innerNot(innerAnd(id, ((BDDImpl) other).id)));
 			}
 
 			other.free();
@@ -817,11 +1692,11 @@ public class Factory {
 				throw new UnsatException();
 			else if (bdd != ONE) {
 				if (ut.low(bdd) == ZERO) {
-					assignment.put(ut.var(bdd), true);
+					assignment.put(ut.varOfLevel(ut.var(bdd)), true);
 					anySat(ut.high(bdd), assignment);
 				}
 				else {
-					assignment.put(ut.var(bdd), false);
+					assignment.put(ut.varOfLevel(ut.var(bdd)), false);
 					anySat(ut.low(bdd), assignment);
 				}
 			}
@@ -829,59 +1704,125 @@ public class Factory {
 
 		@Override
 		public List<Assignment> allSat() {
-			try (GCLock lock = new GCLock()) {
-				return allSat(id);
-			}
-		}
-
-		private List<Assignment> allSat(int bdd) {
 			List<Assignment> list = new ArrayList<Assignment>();
 
-			if (bdd != ZERO)
-				if (bdd == ONE)
-					list.add(new AssignmentImpl());
-				else {
-					int var = ut.var(bdd);
+			forEachCube(cube -> {
+				AssignmentImpl assignment = new AssignmentImpl();
+				for (int var = 0; var < cube.length; var++)
+					if (cube[var] >= 0)
+						assignment.put(var, cube[var] == 1);
 
-					List<Assignment> lowList = allSat(ut.low(bdd));
-					for (Assignment assignment: lowList)
-						((AssignmentImpl) assignment).put(var, false);
+				list.add(assignment);
+			});
 
-					List<Assignment> highList = allSat(ut.high(bdd));
-					for (Assignment assignment: highList)
-						((AssignmentImpl) assignment).put(var, true);
+			return list;
+		}
 
-					// join lists
-					list.addAll(lowList);
-					list.addAll(highList);
-				}
+		@Override
+		public void forEachCube(Consumer<int[]> action) {
+			new CubeSpliterator(Factory.this, this, false).forEachRemaining(action);
+		}
 
-			return list;
+		@Override
+		public Stream<int[]> cubes() {
+			return StreamSupport.stream(new CubeSpliterator(Factory.this, this, true), false);
 		}
 
-		//TODO this should probably return a BigInteger
 		@Override
 		public long satCount() {
 			return satCount(maxVar);
 		}
 
-		//TODO this should probably return a BigInteger
 		@Override
 		public long satCount(int maxVar) {
+			BigInteger count;
 			try (GCLock lock = new GCLock()) {
-				return (long) (Math.pow(2, ut.var(id)) * count(id, maxVar));
+				count = count(id, maxVar + 1, null, false);
 			}
+
+			return count.bitLength() < Long.SIZE ? count.longValue() : Long.MAX_VALUE;
+		}
+
+		@Override
+		public BigInteger exactSatCount() {
+			return exactSatCount(maxVar);
+		}
+
+		@Override
+		public BigInteger exactSatCount(int maxVar) {
+			try (GCLock lock = new GCLock()) {
+				return count(getFunctionId(), maxVar + 1, null, true);
+			}
+		}
+
+		@Override
+		public BigInteger exactSatCount(BitSet vars) {
+			try (GCLock lock = new GCLock()) {
+				return count(getFunctionId(), vars.cardinality(), vars, true);
+			}
+		}
+
+		/**
+		 * Counts the solutions of the given bdd over the given number of variables,
+		 * as the sum, over the paths to one, of 2 to the number of variables not
+		 * tested along the path. The variables tested by the bdd are counted among
+		 * the given number, whatever their index. The nodes are counted from the
+		 * deepest, once each, hence the height of a node is that of its longest
+		 * path and its paths are counted over as many variables.
+		 * 
+		 * @param vars the variables that the bdd can test, or null if it can test any
+		 * @param exact true if the bdd must not test more than the given number of
+		 *              variables; otherwise the count is meaningless in that case
+		 */
+		private BigInteger count(int bdd, int numberOfVars, BitSet vars, boolean exact) {
+			NodeTraversal traversal = startTraversal();
+			int count = traversal.bottomUp(ut, bdd);
+			int[] nodes = traversal.sorted(), heights = new int[count];
+			BigInteger[] paths = new BigInteger[count];
+			int support = 0, lastLevel = -1;
+
+			for (int pos = 0; pos < count; pos++) {
+				int node = nodes[pos], level = ut.varAt(node);
+				if (level != lastLevel) {
+					int var = ut.varOfLevel(level);
+					if (vars != null && !vars.get(var))
+						throw new IllegalArgumentException("the bdd depends on variable " + var + ", that is not counted");
+
+					support++;
+					lastLevel = level;
+				}
+
+				int low = ut.lowAt(node), high = ut.highAt(node);
+				int lowHeight = heightOf(low, heights, traversal), highHeight = heightOf(high, heights, traversal);
+				int height = Math.max(lowHeight, highHeight) + 1;
+				paths[pos] = pathsOf(low, heights, paths, traversal).shiftLeft(height - 1 - lowHeight)
+					.add(pathsOf(high, heights, paths, traversal).shiftLeft(height - 1 - highHeight));
+				heights[pos] = height;
+			}
+
+			if (exact && support > numberOfVars)
+				throw new IllegalArgumentException("the bdd depends on " + support + " variables, more than the " + numberOfVars + " counted");
+
+			int shift = numberOfVars - heightOf(bdd, heights, traversal);
+			BigInteger result = pathsOf(bdd, heights, paths, traversal);
+
+			return shift >= 0 ? result.shiftLeft(shift) : result.shiftRight(-shift);
+		}
+
+		private int heightOf(int id, int[] heights, NodeTraversal traversal) {
+			return id == ZERO || id == ONE ? 0 : heights[traversal.indexOf(ut.node(id))];
 		}
 
-		private double count(int bdd, int maxVar) {
-			if (bdd < FIRST_NODE_NUM) // terminal node
-				return bdd;
+		private BigInteger pathsOf(int id, int[] heights, BigInteger[] paths, NodeTraversal traversal) {
+			if (id == ZERO)
+				return BigInteger.ZERO;
+			else if (id == ONE)
+				return BigInteger.ONE;
+
+			int pos = traversal.indexOf(ut.node(id));
 
-			int low = ut.low(bdd);
-			int high = ut.high(bdd);
-			int varLow = low < FIRST_NODE_NUM ? maxVar + 1 : ut.var(low);
-			int varHigh = high < FIRST_NODE_NUM ? maxVar + 1 : ut.var(high);
-			return Math.pow(2, varLow - ut.var(bdd) - 1) * count(low, maxVar) + Math.pow(2, varHigh - ut.var(bdd) - 1) * count(high, maxVar);
+			// the negation has the solutions that the node has not
+			return ut.complementBit(id) == 0 ? paths[pos] : BigInteger.ONE.shiftLeft(heights[pos]).subtract(paths[pos]);
 		}
 
 		@Override
@@ -901,63 +1842,58 @@ public class Factory {
 		@Override
 		public BDD restrict(BDD var) {
 			try (GCLock lock = new GCLock()) {
-				int res = id;
-				for (int varId = ((BDDImpl) var).id; varId >= FIRST_NODE_NUM; varId = ut.high(varId))
-					if (ut.low(varId) == ZERO)
-						res = innerRestrict(res, ut.var(varId), true);
-					else if (ut.low(varId) == ONE)
-						res = innerRestrict(res, ut.var(varId), false);
-
-				return new BDDImpl(res);
+				return new BDDImpl(innerRestrict(id, ((BDDImpl) var).cube()));
 			}
 		}
 
 		@Override
 		public BDD restrictWith(BDD var) {
 			try (GCLock lock = new GCLock()) {
-				int res = id;
-				for (int varId = ((BDDImpl) var).id; varId >= FIRST_NODE_NUM; varId = ut.high(varId))
-					if (ut.low(varId) == ZERO)
-						res = innerRestrict(res, ut.var(varId), true);
-					else if (ut.low(varId) == ONE)
-						res = innerRestrict(res, ut.var(varId), false);
-
-				setId(res);
+				setId(innerRestrict(id, ((BDDImpl) var).cube()));
 			}
 
 			return this;
 		}
 
+		/**
+		 * Yields the interned cube of the literals of this bdd, when it is
+		 * used for a restriction. The caller must hold a garbage collection
+		 * lock, so that the levels cannot change meanwhile.
+		 */
+
+		Cube cube() {
+			Cube cube = this.cube;
+			if (cube == null)
+				this.cube = cube = cubeOf(id);
+
+			return cube;
+		}
+
 		@Override
 		public BDD restrict(int var, boolean value) {
 			try (GCLock lock = new GCLock()) {
-				return new BDDImpl(innerRestrict(id, var, value));
+				return new BDDImpl(innerRestrict(id, ut.levelOfVar(var), value));
 			}
 		}
 
 		@Override
 		public BDD exist(int var) {
 			try (GCLock lock = new GCLock()) {
-				return new BDDImpl(innerExist(id, var));
+				return new BDDImpl(innerExist(id, ut.levelOfVar(var)));
 			}
 		}
 
 		@Override
 		public BDD exist(BDD vars) {
-			BitSet varsAsBitSet = vars.vars();
-			int hashCode = varsAsBitSet.hashCode();
-			
 			try (GCLock lock = new GCLock()) {
-				return quantify(varsAsBitSet, true, hashCode);
+				return new BDDImpl(innerQuantify(id, ((BDDImpl) vars).varSet(), true));
 			}
 		}
 
 		@Override
 		public BDD exist(BitSet vars) {
-			int hashCodeVars = vars.hashCode();
-
 			try (GCLock lock = new GCLock()) {
-				return quantify(vars, true, hashCodeVars);
+				return new BDDImpl(innerQuantify(id, varSetOf(ut.levelsOf(vars)), true));
 			}
 		}
 
@@ -971,16 +1907,24 @@ public class Factory {
 
 		@Override
 		public BDD forAll(BDD var) {
-			BitSet varsAsBitSet = var.vars();
-			int hashCodeVars = varsAsBitSet.hashCode();
-
 			try (GCLock lock = new GCLock()) {
-				return quantify(varsAsBitSet, false, hashCodeVars);
+				return new BDDImpl(innerQuantify(id, ((BDDImpl) var).varSet(), false));
 			}
 		}
 
-		private BDD quantify(BitSet vars, boolean exist, int hashCodeVars) {
-			return new BDDImpl(innerQuantify(id, vars, exist, hashCodeVars));
+		/**
+		 * Yields the interned set of the levels of the variables of this bdd,
+		 * when it is used as the set of variables of a quantification.
+		 * The caller must hold a garbage collection lock, so that the
+		 * levels cannot change meanwhile.
+		 */
+
+		VarSet varSet() {
+			VarSet varSet = this.varSet;
+			if (varSet == null)
+				this.varSet = varSet = varSetOf(ut.levelsOf(vars()));
+
+			return varSet;
 		}
 
 		@Override
@@ -1038,45 +1982,25 @@ public class Factory {
 			int[] varp = new int[maxVar + 1];
 
 			try (GCLock lock = new GCLock()) {
-				varProfile(id, varp, new HashSet<Integer>());
+				startTraversal().visit(ut, id, node -> varp[ut.varOfLevel(ut.varAt(node))]++);
 			}
 
 			return varp;
 		}
 
-		private void varProfile(int bdd, int[] varp, Set<Integer> seen) {
-			// terminal node or already seen
-			if (bdd < FIRST_NODE_NUM || !seen.add(bdd))
-				return;
-
-			varp[ut.var(bdd)]++;
-			varProfile(ut.low(bdd), varp, seen);
-			varProfile(ut.high(bdd), varp, seen);
-		}
-
 		@Override
 		public int nodeCount() {
 			// we check in the cache first
 			if (nodeCount >= 0)
 				return nodeCount;
 
+			// a node is counted once even if it is reached
+			// through both a regular and a complemented edge
 			try (GCLock lock = new GCLock()) {
-				return nodeCount = nodeCount(id, new HashSet<Integer>());
+				return nodeCount = countNodes(startTraversal(), id);
 			}
 		}
 
-		private int nodeCount(int bdd, Set<Integer> seen) {
-			// terminal node or already seen
-			if (bdd < FIRST_NODE_NUM || !seen.add(bdd))
-				return 0;
-
-			// variables or their negation
-			if (bdd < NUMBER_OF_PREALLOCATED_NODES)
-				return 1;
-
-			return 1 + nodeCount(ut.low(bdd), seen) + nodeCount(ut.high(bdd), seen);
-		}
-
 		@Override
 		public BDD replace(Map<Integer, Integer> renaming) {
 			if (id == ZERO)
@@ -1084,10 +2008,24 @@ public class Factory {
 			else if (id == ONE)
 				return makeOne();
 
-			int hash = renaming.hashCode();
+			try (GCLock lock = new GCLock()) {
+				return new BDDImpl(innerReplace(id, renamingOf(ut.levelsOf(renaming))));
+			}
+		}
+
+		/**
+		 * Renames the variables of this bdd as {@link #replace(Map)} does,
+		 * with a pairing that is translated into levels only once per order.
+		 */
+
+		BDD replace(Pairing pairing) {
+			if (id == ZERO)
+				return makeZero();
+			else if (id == ONE)
+				return makeOne();
 
 			try (GCLock lock = new GCLock()) {
-				return new BDDImpl(innerReplace(id, renaming, hash));
+				return new BDDImpl(innerReplace(id, pairing.compile(Factory.this)));
 			}
 		}
 
@@ -1096,10 +2034,24 @@ public class Factory {
 			if (id < FIRST_NODE_NUM) // terminal node
 				return this;
 
-			int hashCodeOfRenaming = renaming.hashCode();
+			try (GCLock lock = new GCLock()) {
+				setId(innerReplace(id, renamingOf(ut.levelsOf(renaming))));
+			}
+
+			return this;
+		}
+
+		/**
+		 * Renames the variables of this bdd as {@link #replaceWith(Map)} does,
+		 * with a pairing that is translated into levels only once per order.
+		 */
+
+		BDD replaceWith(Pairing pairing) {
+			if (id < FIRST_NODE_NUM) // terminal node
+				return this;
 
 			try (GCLock lock = new GCLock()) {
-				setId(innerReplace(id, renaming, hashCodeOfRenaming));
+				setId(innerReplace(id, pairing.compile(Factory.this)));
 			}
 
 			return this;
@@ -1107,79 +2059,44 @@ public class Factory {
 
 		@Override
 		public BDD ite(BDD thenBDD, BDD elseBDD) {
+			ut.gcIfAlmostFull();
+
 			try (GCLock lock = new GCLock()) {
-				return new BDDImpl(ite(id, ((BDDImpl) thenBDD).id, ((BDDImpl) elseBDD).id));
-			}
-		}
-
-		private int ite(int f, int g, int h) {
-			if (f == ONE)
-				return g;
-			if (f == ZERO)
-				return h;
-			if (g == h)
-				return g;
-			if (g == ONE && h == ZERO)
-				return f;
-			if (g == ZERO && h == ONE)
-				return innerImp(f, ZERO);
-
-			int vf = ut.var(f);
-			int vg = ut.var(g);
-			int vh = ut.var(h);
-
-			if (vf == vg)
-				if (vf == vh)
-					return MK(vf, ite(ut.low(f), ut.low(g), ut.low(h)), ite(ut.high(f), ut.high(g), ut.high(h)));
-				else if (vf < vh)
-					return MK(vf, ite(ut.low(f), ut.low(g), h), ite(ut.high(f), ut.high(g), h));
-				else
-					return MK(vh, ite(f, g, ut.low(h)), ite(f, g, ut.high(h)));
-			else if (vf < vg)
-				if (vf == vh)
-					return MK(vf, ite(ut.low(f), g, ut.low(h)), ite(ut.high(f), g, ut.high(h)));
-				else if (vf < vh)
-					return MK(vf, ite(ut.low(f), g, h), ite(ut.high(f), g, h));
-				else
-					return MK(vh, ite(f, g, ut.low(h)), ite(f, g, ut.high(h)));
-			else
-				if (vg == vh)
-					return MK(vg, ite(f, ut.low(g), ut.low(h)), ite(f, ut.high(g), ut.high(h)));
-				else if (vg < vh)
-					return MK(vg, ite(f, ut.low(g), h), ite(f, ut.high(g), h));
-				else
-					return MK(vh, ite(f, g, ut.low(h)), ite(f, g, ut.high(h)));
+				return new BDDImpl(innerIte(id, ((BDDImpl) thenBDD).id, ((BDDImpl) elseBDD).id));
+			}
 		}
 
 		@Override
 		public BDD relProd(BDD other, BDD var) {
-			// TODO this implementation is correct, but inefficient
-			return and(other).exist(var);
+			ut.gcIfAlmostFull();
+
+			try (GCLock lock = new GCLock()) {
+				return new BDDImpl(innerRelProd(id, ((BDDImpl) other).id, ((BDDImpl) var).varSet()));
+			}
 		}
 
 		@Override
 		public BDD compose(BDD other, int var) {
+			ut.gcIfAlmostFull();
+
 			try (GCLock lock = new GCLock()) {
-				return new BDDImpl(compose(id, ((BDDImpl) other).id, var));
+				int level = ut.levelOfVar(var);
+				Substitution substitution = substitutionOf(Collections.singletonMap(level, ((BDDImpl) other).id));
+				return new BDDImpl(innerCompose(id, substitution));
 			}
 		}
 
-		private int compose(int id1, int id2, int var) {
-			int v1 = ut.var(id1);
-			int v2 = ut.var(id2);
+		@Override
+		public BDD compose(Map<Integer, BDD> substitution) {
+			ut.gcIfAlmostFull();
 
-			if (v1 > var)
-				return id1;
+			try (GCLock lock = new GCLock()) {
+				Map<Integer, Integer> ids = new HashMap<>();
+				for (Map.Entry<Integer, BDD> entry: substitution.entrySet())
+					ids.put(ut.levelOfVar(entry.getKey()), ((BDDImpl) entry.getValue()).id);
 
-			if (v1 < var)
-				if (v1 == v2)
-					return MK(v1, compose(ut.low(id1), ut.low(id2), var), compose(ut.high(id1), ut.high(id2), var));
-				else if (v1 < v2)
-					return MK(v1, compose(ut.low(id1), id2, var), compose(ut.high(id1), id2, var));
-				else
-					return MK(v2, compose(id1, ut.low(id2), var), compose(id1, ut.high(id2), var));
-			else
-				return ite(id2, ut.high(id1), ut.low(id1));
+				return new BDDImpl(innerCompose(id, substitutionOf(ids)));
+			}
 		}
 
 		@Override
@@ -1196,13 +2113,55 @@ public class Factory {
 
 		@Override
 		public int hashCodeAux() {
+			if (ut.compactNodes && hashCode < 0)
+				try (GCLock lock = new GCLock()) {
+					hashCode = fingerprint(id);
+				}
+
 			return hashCode;
 		}
 
+		/**
+		 * Evaluates the multilinear extension of the function of the given bdd,
+		 * modulo a prime, at a pseudo-random point that depends on the variables
+		 * only. Hence it does not change when nodes are moved or the variables
+		 * are reordered, and two bdds for the same function have the same
+		 * fingerprint. Different functions have the same fingerprint with
+		 * probability at most their number of variables over the prime.
+		 * The nodes are evaluated from the deepest, once each.
+		 */
+
+		private int fingerprint(int bdd) {
+			NodeTraversal traversal = startTraversal();
+			int count = traversal.bottomUp(ut, bdd);
+			int[] nodes = traversal.sorted(), fingerprints = traversal.values();
+
+			for (int pos = 0; pos < count; pos++) {
+				int node = nodes[pos];
+				long point = fingerprintPoint(ut.varOfLevel(ut.varAt(node)));
+				long low = fingerprintOf(ut.lowAt(node), traversal, fingerprints), high = fingerprintOf(ut.highAt(node), traversal, fingerprints);
+				fingerprints[pos] = (int) (((FINGERPRINT_PRIME + 1 - point) * low + point * high) % FINGERPRINT_PRIME);
+			}
+
+			return fingerprintOf(bdd, traversal, fingerprints);
+		}
+
+		private int fingerprintOf(int id, NodeTraversal traversal, int[] fingerprints) {
+			if (id == ZERO)
+				return 0;
+			else if (id == ONE)
+				return 1;
+
+			int result = fingerprints[traversal.indexOf(ut.node(id))];
+
+			// the negation of a function f evaluates to 1 - f
+			return ut.complementBit(id) == 0 ? result : (int) ((FINGERPRINT_PRIME + 1 - result) % FINGERPRINT_PRIME);
+		}
+
 		@Override
 		public int var() {
 			try (GCLock lock = new GCLock()) {
-				return ut.var(id);
+				return ut.varOfLevel(ut.var(id));
 			}
 		}
 
@@ -1230,39 +2189,21 @@ public class Factory {
 			BitSet vars = new BitSet();
 
 			try (GCLock lock = new GCLock()) {
-				updateVars(id, vars, new HashSet<Integer>());
+				startTraversal().visit(ut, id, node -> vars.set(ut.varOfLevel(ut.varAt(node))));
 			}
 
 			return vars;
 		}
 
-		private void updateVars(int id, BitSet vars, Set<Integer> seen) {
-			if (!seen.add(id))
-				return;
-
-			if (id >= FIRST_NODE_NUM) {
-				vars.set(ut.var(id));
-				updateVars(ut.low(id), vars, seen);
-				updateVars(ut.high(id), vars, seen);
-			}
-		}
-
 		@Override
 		public int maxVar() {
+			int[] maxVar = { -1 };
+
 			try (GCLock lock = new GCLock()) {
-				return maxVar(id);
+				startTraversal().visit(ut, id, node -> maxVar[0] = Math.max(maxVar[0], ut.varOfLevel(ut.varAt(node))));
 			}
-		}
-
-		private int maxVar(int bdd) {
-			if (bdd < FIRST_NODE_NUM)
-				return -1;
 
-			int low = ut.low(bdd);
-			int maxVar = Math.max(ut.var(bdd), maxVar(low));
-			int high = ut.high(bdd);
-			maxVar = Math.max(maxVar, maxVar(high));
-			return maxVar;
+			return maxVar[0];
 		}
 	}
 
@@ -1389,17 +2330,234 @@ public class Factory {
 		ut.setResizeListener(listener);
 	}
 
+	/**
+	 * Sets the listener of reorder operations.
+	 *
+	 * @param listener the listener
+	 */
+	public void setReorderListener(ReorderListener listener) {
+		ut.setReorderListener(listener);
+	}
+
+	/**
+	 * Reorders the variables by sifting, in order to reduce the number of nodes.
+	 * The BDDs created so far keep representing the same functions.
+	 */
+	public void reorder() {
+		ut.reorder();
+	}
+
+	/**
+	 * Enables or disables automatic reordering. If enabled, the variables get
+	 * reordered by sifting when the number of nodes has doubled since the last
+	 * reordering.
+	 *
+	 * @param autoReorder true if and only if reordering must be automatic
+	 * @return the previous setting
+	 */
+	public boolean setAutoReorder(boolean autoReorder) {
+		return ut.setAutoReorder(autoReorder);
+	}
+
+	/**
+	 * Enables or disables the translation of the caches at garbage collection.
+	 * If enabled, garbage collection keeps the cached results whose operands
+	 * and result survived, at the price of a longer pause. Otherwise, it clears
+	 * all caches.
+	 *
+	 * @param remapCachesOnGC true if and only if the caches must be translated
+	 * @return the previous setting
+	 */
+	public boolean setRemapCachesOnGC(boolean remapCachesOnGC) {
+		return ut.setRemapCachesOnGC(remapCachesOnGC);
+	}
+
+	/**
+	 * Sets the number of threads that compute conjunctions, disjunctions and
+	 * exclusive disjunctions. With more than one thread, the recursive calls
+	 * near the roots of the operands are computed in parallel, and the deeper
+	 * ones sequentially.
+	 *
+	 * Parallelism is disabled by default. Its speedup on multi-core machines
+	 * has not been measured yet, hence it is worth enabling only after
+	 * measuring it on the problem at hand.
+	 *
+	 * The previous threads are not stopped, since other threads might still be
+	 * computing with them, but they terminate by themselves once idle.
+	 * {@link #done()} stops them, together with the current ones.
+	 *
+	 * @param parallelism the number of threads; 1 means that these operations
+	 *                    are computed sequentially by the calling thread
+	 * @return the previous setting
+	 */
+	public int setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("illegal parallelism " + parallelism);
+
+		synchronized (this) {
+			ForkJoinPool old = applyPool;
+			applyPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+			if (old != null)
+				retiredApplyPools.add(old);
+
+			return old == null ? 1 : old.getParallelism();
+		}
+	}
+
+	/**
+	 * Chooses whether conjunction, disjunction, implication, equivalence,
+	 * exclusive disjunction, quantification, replacement and the marking of
+	 * the live nodes at garbage collection are computed over an explicit stack
+	 * rather than by recursion. The explicit stack grows on the heap, hence
+	 * the bdds can be as deep as the variables are many, with no risk of a
+	 * {@link StackOverflowError}. The results are the same in both cases.
+	 *
+	 * @param iterative true to use an explicit stack, false to use recursion
+	 * @return the previous setting
+	 */
+	public boolean setIterative(boolean iterative) {
+		boolean old = this.iterative;
+		this.iterative = iterative;
+		return old;
+	}
+
+	/**
+	 * Exchanges the positions of two variables in the variable order.
+	 *
+	 * @param var1 the first variable
+	 * @param var2 the second variable
+	 */
+	public void swapVars(int var1, int var2) {
+		ut.swapVars(var1, var2);
+	}
+
+	/**
+	 * Sets the variable order.
+	 *
+	 * @param order the variable that must be put at each level, from the topmost.
+	 *              It must be a permutation of {@code 0...order.length-1}
+	 */
+	public void setVarOrder(int[] order) {
+		ut.setVarOrder(order);
+	}
+
+	/**
+	 * Yields the current variable order.
+	 *
+	 * @param numberOfVars the number of levels to report
+	 * @return the variable at each level, from the topmost
+	 */
+	public int[] getVarOrder(int numberOfVars) {
+		return ut.getVarOrder(numberOfVars);
+	}
+
+	/**
+	 * @param var a variable
+	 * @return the level of the variable in the current variable order
+	 */
+	public int levelOfVar(int var) {
+		try (GCLock lock = new GCLock()) {
+			return ut.levelOfVar(var);
+		}
+	}
+
+	/**
+	 * @param level a level in the current variable order
+	 * @return the variable at that level
+	 */
+	public int varOfLevel(int level) {
+		try (GCLock lock = new GCLock()) {
+			return ut.varOfLevel(level);
+		}
+	}
+
+	/**
+	 * Declares a block of variables that are moved together, without changing
+	 * their relative order, when reordering by sifting. Blocks cannot overlap.
+	 *
+	 * @param vars the variables of the block. They must be at adjacent levels
+	 */
+	public void addVarBlock(BitSet vars) {
+		ut.addVarBlock(vars);
+	}
+
+	/**
+	 * Removes all blocks of variables.
+	 */
+	public void clearVarBlocks() {
+		ut.clearVarBlocks();
+	}
+
 	/**
 	 * Replaces the index of each BDD created so far into the new id provided
-	 * by the given map.
+	 * by the given map. With complement edges, the complement bit is kept.
 	 *
-	 * @param newPositions a map from old to new index
+	 * @param newPositions a map from old to new position in the table
 	 */
 
 	protected void updateIndicesOfAllBDDsCreatedSoFar(int[] newPositions) {
 		for (BDDImpl bdd: allBDDsCreatedSoFar)
-			if (bdd.id >= NUMBER_OF_PREALLOCATED_NODES)
-				bdd.id = newPositions[bdd.id];
+			if (ut.node(bdd.id) >= NUMBER_OF_PREALLOCATED_NODES)
+				bdd.id = ut.relocate(bdd.id, newPositions);
+
+		for (HeldNodes held: heldNodes)
+			held.relocate(newPositions);
+
+		relocateSubstitutions(newPositions);
+	}
+
+	/**
+	 * Keeps the given nodes alive and relocates them at each garbage
+	 * collection, until they are released.
+	 */
+
+	void hold(HeldNodes held) {
+		heldNodes.add(held);
+	}
+
+	/**
+	 * Stops keeping alive the given nodes, held by {@link #hold(HeldNodes)}.
+	 */
+
+	void release(HeldNodes held) {
+		heldNodes.remove(held);
+	}
+
+	/**
+	 * Adds one reference to each node that must be kept alive independently
+	 * from the other nodes: terminals, preallocated variables and the nodes
+	 * of the BDDs that have not been freed.
+	 *
+	 * @param refs the reference count of each node, that gets modified
+	 */
+
+	protected void countExternalReferences(int[] refs) {
+		for (int pos = 0; pos < NUMBER_OF_PREALLOCATED_NODES; pos++)
+			refs[pos]++;
+
+		synchronized (allBDDsCreatedSoFar) {
+			for (BDDImpl bdd: allBDDsCreatedSoFar)
+				if (bdd.id >= 0)
+					refs[ut.node(bdd.id)]++;
+		}
+
+		for (HeldNodes held: heldNodes)
+			held.forEach(id -> refs[ut.node(id)]++);
+	}
+
+	/**
+	 * Invalidates the cached node counts, sets of levels and cubes of the
+	 * BDDs created so far, since they depend on the variable order.
+	 */
+
+	protected void invalidateOrderDependentCaches() {
+		synchronized (allBDDsCreatedSoFar) {
+			for (BDDImpl bdd: allBDDsCreatedSoFar) {
+				bdd.nodeCount = -1;
+				bdd.varSet = null;
+				bdd.cube = null;
+			}
+		}
 	}
 
 	/**
@@ -1425,10 +2583,11 @@ public class Factory {
 			if (bdd.id >= 0) {
 				allBDDsCreatedSoFar.add(bdd);
 
-				if (bdd.id >= NUMBER_OF_PREALLOCATED_NODES)
+				if (ut.node(bdd.id) >= NUMBER_OF_PREALLOCATED_NODES)
 					markAsAlive(bdd.id, aliveNodes);
 			}
 
+		markHeldNodes(aliveNodes);
 		freedBDDsCounter = 0;
 	}
 
@@ -1447,7 +2606,7 @@ public class Factory {
 						synchronized (allBDDsCreatedSoFar) {
 							allBDDsCreatedSoFar.add(bdd);
 						}
-						if (bdd.id >= NUMBER_OF_PREALLOCATED_NODES)
+						if (ut.node(bdd.id) >= NUMBER_OF_PREALLOCATED_NODES)
 							markAsAlive(bdd.id, aliveNodes);
 					})).get();
 		}
@@ -1455,17 +2614,56 @@ public class Factory {
 			throw new RuntimeException(e);
 		}
 
+		markHeldNodes(aliveNodes);
 		freedBDDsCounter = 0;
 	}
 
-	private void markAsAlive(int node, boolean[] aliveNodes) {
+	private void markHeldNodes(boolean[] aliveNodes) {
+		for (HeldNodes held: heldNodes)
+			held.forEach(id -> markAsAlive(id, aliveNodes));
+	}
+
+	private void markAsAlive(int bdd, boolean[] aliveNodes) {
+		if (iterative) {
+			engine.get().markAsAlive(this, bdd, aliveNodes);
+			return;
+		}
+
+		int node = ut.node(bdd);
+
 		if (node >= NUMBER_OF_PREALLOCATED_NODES && !aliveNodes[node]) {
 			aliveNodes[node] = true;
-			markAsAlive(ut.low(node), aliveNodes);
-			markAsAlive(ut.high(node), aliveNodes);
+			markAsAlive(ut.low(bdd), aliveNodes);
+			markAsAlive(ut.high(bdd), aliveNodes);
 		}
 	}
 
+	/**
+	 * Computes the conjunction of a collection of BDDs, that are not modified.
+	 * The two smallest operands are always conjoined first, independent
+	 * conjunctions are computed in parallel if a parallelism has been set
+	 * by {@link #setParallelism(int)}, and the intermediate results are
+	 * freed as soon as they are not needed anymore. This is usually much
+	 * faster than a chain of {@link BDD#andWith(BDD)}.
+	 * 
+	 * @param bdds the collection of BDDs
+	 * @return the conjunction, that is one for an empty collection
+	 */
+	public BDD andAll(Collection<BDD> bdds) {
+		return NaryApply.apply(this, Operator.AND, bdds, applyPool);
+	}
+
+	/**
+	 * Computes the disjunction of a collection of BDDs, that are not modified,
+	 * as {@link #andAll(Collection)} does for their conjunction.
+	 * 
+	 * @param bdds the collection of BDDs
+	 * @return the disjunction, that is zero for an empty collection
+	 */
+	public BDD orAll(Collection<BDD> bdds) {
+		return NaryApply.apply(this, Operator.OR, bdds, applyPool);
+	}
+
 	/**
 	 * Counts the nodes in a collection of BDDs.
 	 * Shared nodes are counted only once.
@@ -1475,19 +2673,108 @@ public class Factory {
 	 */
 	public int nodeCount(Collection<BDD> bdds) {
 		int count = 0;
-		Set<Integer> seen = new HashSet<>();
 
-		for (BDD bdd: bdds) {
-			BDDImpl bddi = (BDDImpl) bdd;
-			if (bddi != null)
-				try (GCLock lock = new GCLock()) {
-					count += bddi.nodeCount(bddi.id, seen);
-				}
+		// a single lock, since the nodes must not move between the bdds
+		try (GCLock lock = new GCLock()) {
+			NodeTraversal traversal = startTraversal();
+			for (BDD bdd: bdds)
+				if (bdd != null)
+					count += countNodes(traversal, ((BDDImpl) bdd).id);
 		}
 
 		return count;
 	}
 
+	/**
+	 * Starts a traversal of the nodes of this factory by the current thread.
+	 * The caller must hold a garbage collection lock.
+	 */
+
+	private NodeTraversal startTraversal() {
+		return traversal.get().start(ut.getSize());
+	}
+
+	/**
+	 * Counts the nodes reachable from the given edge that have not been visited
+	 * yet by the given traversal, in parallel if a parallelism has been set
+	 * for this factory. The caller must hold a garbage collection lock.
+	 */
+
+	private int countNodes(NodeTraversal traversal, int root) {
+		ForkJoinPool applyPool = this.applyPool;
+		if (applyPool != null)
+			try {
+				return traversal.parallelVisit(applyPool, ut, root, MAX_PARALLEL_DEPTH);
+			}
+			catch (RejectedExecutionException e) {
+				// the pool has been shut down by done() before the visit started
+			}
+
+		return traversal.visit(ut, root, null);
+	}
+
+	/**
+	 * Writes a collection of BDDs in a compact binary format. Shared nodes are
+	 * written only once. The nodes are encoded in batches, and each batch is written
+	 * after releasing the lock of garbage collection, that can run between the batches.
+	 * The BDDs can be read back by {@link #load(InputStream)}, also in another
+	 * factory and with another variable order. The stream is flushed but not closed.
+	 * 
+	 * @param out the stream
+	 * @param bdds the BDDs
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void save(OutputStream out, Collection<BDD> bdds) throws IOException {
+		BDDSerializer.save(this, bdds, out);
+	}
+
+	/**
+	 * Writes a collection of BDDs into a file, as {@link #save(OutputStream, Collection)}.
+	 * 
+	 * @param path the file
+	 * @param bdds the BDDs
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(Path path, Collection<BDD> bdds) throws IOException {
+		try (OutputStream out = Files.newOutputStream(path)) {
+			save(out, bdds);
+		}
+	}
+
+	/**
+	 * Reads the BDDs written by {@link #save(OutputStream, Collection)}. The nodes
+	 * are built in batches while the stream is read, and garbage collection can
+	 * run between the batches. The stream is read byte by byte, hence it should
+	 * be buffered.
+	 * 
+	 * @param in the stream
+	 * @return the BDDs, in the order they were saved
+	 * @throws IOException if the stream cannot be read or is not a stream of BDDs
+	 */
+	public List<BDD> load(InputStream in) throws IOException {
+		return BDDSerializer.load(this, in);
+	}
+
+	/**
+	 * Reads the BDDs written into a file by {@link #save(Path, Collection)}.
+	 * 
+	 * @param path the file
+	 * @return the BDDs, in the order they were saved
+	 * @throws IOException if the file cannot be read or does not contain BDDs
+	 */
+	public List<BDD> load(Path path) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+			return load(in);
+		}
+	}
+
+	/**
+	 * @return a BDD object for the given function
+	 */
+	protected BDD mkFromFunction(int id) {
+		return new BDDImpl(id);
+	}
+
 	@SuppressWarnings("unchecked")
 	List<BDDImpl> getAllBDDsCreatedSoFarCopy() {
 		return (ArrayList<BDDImpl>) allBDDsCreatedSoFar.clone();
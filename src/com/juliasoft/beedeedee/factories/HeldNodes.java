@@ -0,0 +1,45 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.function.IntConsumer;
+
+/**
+ * The nodes held by a computation that releases the garbage collection lock
+ * midway, without a bdd for each of them. While it is registered by
+ * {@link Factory#hold(HeldNodes)}, garbage collection keeps its nodes alive
+ * and relocates them, as it does for the bdds.
+ */
+
+interface HeldNodes {
+
+	/**
+	 * Applies the given action to the edge to each node held.
+	 */
+
+	void forEach(IntConsumer action);
+
+	/**
+	 * Moves the nodes held to their new position, after a garbage collection.
+	 *
+	 * @param newPositions the new position of each node, or -1 for the dead nodes
+	 */
+
+	void relocate(int[] newPositions);
+}
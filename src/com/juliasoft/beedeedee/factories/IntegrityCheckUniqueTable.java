@@ -44,21 +44,21 @@ public class IntegrityCheckUniqueTable extends ResizingAndGarbageCollectedUnique
 	 */
 
 	@Override
-	public int var(int id) {
+	protected int varAt(int id) {
 		checkNodeIntegrity(id);
-		return super.var(id);
+		return super.varAt(id);
 	}
 
 	@Override
-	public int low(int id) {
+	protected int lowAt(int id) {
 		checkNodeIntegrity(id);
-		return super.low(id);
+		return super.lowAt(id);
 	}
 
 	@Override
-	public int high(int id) {
+	protected int highAt(int id) {
 		checkNodeIntegrity(id);
-		return super.high(id);
+		return super.highAt(id);
 	}
 
 	@Override
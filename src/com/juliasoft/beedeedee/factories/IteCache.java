@@ -0,0 +1,179 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The cache for if-then-else computations. Entries are keyed on the three
+ * operands, that the caller is expected to have put in standard form.
+ */
+class IteCache {
+	private final static int ENTRY_SIZE = 4;
+	private final int[] cache;
+	private final int size;
+	private final Object[] locks = new Object[1000];
+	private final CacheCounters counters;
+
+	/**
+	 * Constructs an IteCache of the given size.
+	 * 
+	 * @param size the size of the cache
+	 */
+	IteCache(int size) {
+		this(size, new CacheCounters());
+	}
+
+	/**
+	 * Constructs an IteCache of the given size, that updates the given counters.
+	 * 
+	 * @param size the size of the cache
+	 * @param counters the counters of the accesses to the cache
+	 */
+	IteCache(int size, CacheCounters counters) {
+		this.counters = counters;
+		this.size = size;
+		int arraySize = size * ENTRY_SIZE;
+		this.cache = new int[arraySize];
+		for (int i = 0; i < arraySize; i += ENTRY_SIZE)
+			cache[i] = -1;
+
+		for (int pos = 0; pos < locks.length; pos++)
+			locks[pos] = new Object();
+	}
+
+	/**
+	 * @return the counters of the accesses to this cache
+	 */
+	CacheCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Clears all the entries in this cache.
+	 */
+	void clear() {
+		int arraySize = size * ENTRY_SIZE;
+		for (int i = 0; i < arraySize; i += ENTRY_SIZE)
+			cache[i] = -1;
+	}
+
+	/**
+	 * Keeps the entries whose bdds all survived a garbage collection, at the
+	 * position for their new indexes, and discards the others.
+	 * 
+	 * @param relocation yields the new index of a bdd, or -1 if it has been collected
+	 */
+	void remap(IntUnaryOperator relocation) {
+		int[] old = cache.clone();
+		clear();
+
+		for (int pos = 0; pos < old.length; pos += ENTRY_SIZE)
+			if (old[pos] >= 0) {
+				int f = relocation.applyAsInt(old[pos]), g = relocation.applyAsInt(old[pos + 1]);
+				int h = relocation.applyAsInt(old[pos + 2]), result = relocation.applyAsInt(old[pos + 3]);
+
+				if (f >= 0 && g >= 0 && h >= 0 && result >= 0) {
+					int newPos = hash(f, g, h);
+					cache[newPos] = f;
+					cache[newPos + 1] = g;
+					cache[newPos + 2] = h;
+					cache[newPos + 3] = result;
+				}
+			}
+	}
+
+	/**
+	 * Copies into this cache the entries of a smaller cache, at their position
+	 * in this cache. The other cache might be in use by other threads, hence
+	 * each entry is read consistently and those being written are skipped.
+	 * 
+	 * @param other the other cache
+	 */
+	void copyFrom(IteCache other) {
+		int[] from = other.cache;
+
+		for (int pos = 0; pos < from.length; pos += ENTRY_SIZE)
+			synchronized (other.locks[pos % other.locks.length]) {
+				if (from[pos] >= 0) {
+					int newPos = hash(from[pos], from[pos + 1], from[pos + 2]);
+					System.arraycopy(from, pos, cache, newPos, ENTRY_SIZE);
+				}
+			}
+	}
+
+	/**
+	 * Gets an entry from this cache.
+	 * 
+	 * @param f the condition bdd index
+	 * @param g the then bdd index
+	 * @param h the else bdd index
+	 * @return the index of the result, or -1 if not found
+	 */
+	int get(int f, int g, int h) {
+		int pos = hash(f, g, h);
+		int[] cache = this.cache;
+
+		if (cache[pos] == f && cache[pos + 1] == g && cache[pos + 2] == h)
+			synchronized (locks[pos % locks.length]) {
+				if (cache[pos] == f && cache[pos + 1] == g && cache[pos + 2] == h) {
+					counters.hit();
+					return cache[pos + 3];
+				}
+			}
+
+		counters.miss(cache[pos] >= 0);
+		return -1;
+	}
+
+	/**
+	 * Puts an entry into this cache.
+	 * 
+	 * @param f the condition bdd index
+	 * @param g the then bdd index
+	 * @param h the else bdd index
+	 * @param result the computation result
+	 */
+	void put(int f, int g, int h, int result) {
+		int pos = hash(f, g, h);
+		int[] cache = this.cache;
+
+		if (cache[pos] != f || cache[pos + 1] != g || cache[pos + 2] != h)
+			synchronized (locks[pos % locks.length]) {
+				counters.put(cache[pos] >= 0);
+				cache[pos] = f;
+				cache[pos + 1] = g;
+				cache[pos + 2] = h;
+				cache[pos + 3] = result;
+			}
+	}
+
+	/**
+	 * Returns the size of this cache.
+	 * 
+	 * @return the size
+	 */
+	int getSize() {
+		return size;
+	}
+
+	private int hash(int f, int g, int h) {
+		return ENTRY_SIZE * (Math.abs(f ^ (g << 7) ^ (h << 14) ^ (h >>> 18)) % size);
+	}
+}
@@ -0,0 +1,438 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.Arrays;
+
+import com.juliasoft.beedeedee.bdd.ReplacementWithExistingVarException;
+
+/**
+ * Computes the operations of a factory over an explicit stack of frames
+ * rather than by recursion, so that their depth is not bounded by the stack
+ * of the thread. Each thread uses its own engine, whose stacks grow as needed
+ * and are then reused by the following operations, that allocate nothing.
+ * The nodes are created and the caches are used exactly as by the recursive
+ * code, that this engine replaces step by step.
+ * <p>
+ * A frame is a kind followed by its arguments, pushed in reverse order.
+ * The result of each frame is pushed on a separate stack of results.
+ */
+
+final class IterativeEngine {
+
+	/**
+	 * The kinds of frame.
+	 */
+
+	private final static int APPLY = 0, APPLY_MK = 1, QUANTIFY = 2, QUANTIFY_MK = 3, REPLACE = 4, REPLACE_MK = 5,
+			PUT = 6, MK_IN_ORDER = 7, MK_IN_ORDER_MK = 8;
+
+	private final static Operator[] OPERATORS = Operator.values();
+	private final static int AND = Operator.AND.ordinal(), OR = Operator.OR.ordinal(), IMP = Operator.IMP.ordinal(),
+			BIIMP = Operator.BIIMP.ordinal(), XOR = Operator.XOR.ordinal();
+
+	private int[] frames = new int[1024];
+	private int framesTop;
+	private int[] results = new int[256];
+	private int resultsTop;
+
+	/**
+	 * The factory whose operation is being computed, or null. It is not kept
+	 * between operations, since engines are reachable from their threads.
+	 */
+
+	private Factory factory;
+	private ResizingAndGarbageCollectedUniqueTable ut;
+	private boolean complementEdges;
+	private int ZERO, ONE;
+
+	/**
+	 * The quantification being computed.
+	 */
+
+	private VarSet quantifiedVars;
+	private boolean exist;
+
+	/**
+	 * The renaming being computed.
+	 */
+
+	private Renaming renaming;
+
+	int apply(Factory factory, Operator op, int bdd1, int bdd2) {
+		start(factory);
+		push(op.ordinal(), bdd1, bdd2, 0, APPLY);
+		return run();
+	}
+
+	int quantify(Factory factory, int id, VarSet vars, boolean exist) {
+		start(factory);
+		this.quantifiedVars = vars;
+		this.exist = exist;
+		push(id, QUANTIFY);
+		return run();
+	}
+
+	int replace(Factory factory, int bdd, Renaming renaming) {
+		start(factory);
+		this.renaming = renaming;
+		push(bdd, REPLACE);
+		return run();
+	}
+
+	/**
+	 * Marks as alive the nodes reachable from the given bdd, as
+	 * {@link Factory#markAliveNodes(boolean[])} does.
+	 */
+
+	void markAsAlive(Factory factory, int bdd, boolean[] aliveNodes) {
+		ResizingAndGarbageCollectedUniqueTable ut = factory.ut;
+		int preallocated = factory.NUMBER_OF_PREALLOCATED_NODES;
+		framesTop = 0;
+		push(bdd);
+
+		while (framesTop > 0) {
+			int id = frames[--framesTop], node = ut.node(id);
+			if (node >= preallocated && !aliveNodes[node]) {
+				aliveNodes[node] = true;
+				push(ut.high(id), ut.low(id));
+			}
+		}
+	}
+
+	private void start(Factory factory) {
+		this.factory = factory;
+		this.ut = factory.ut;
+		this.complementEdges = ut.complementEdges;
+		this.ZERO = factory.ZERO;
+		this.ONE = factory.ONE;
+
+		// an exception might have left some frames behind
+		framesTop = resultsTop = 0;
+	}
+
+	private int run() {
+		try {
+			while (framesTop > 0)
+				switch (frames[--framesTop]) {
+				case APPLY: apply(); break;
+				case APPLY_MK: applyMK(); break;
+				case QUANTIFY: quantify(); break;
+				case QUANTIFY_MK: quantifyMK(); break;
+				case REPLACE: replace(); break;
+				case REPLACE_MK: replaceMK(); break;
+				case PUT: put(); break;
+				case MK_IN_ORDER: mkInOrder(); break;
+				case MK_IN_ORDER_MK: mkInOrderMK(); break;
+				default: throw new IllegalStateException("unexpected frame " + frames[framesTop]);
+				}
+
+			return results[--resultsTop];
+		}
+		finally {
+			factory = null;
+			ut = null;
+			quantifiedVars = null;
+			renaming = null;
+		}
+	}
+
+	/**
+	 * The first step of {@link Factory#innerAnd(int, int)} and of the other
+	 * recursive applies, including their normalizations for complement edges.
+	 * The result of each frame is xored with its {@code flip} argument.
+	 */
+
+	private void apply() {
+		int flip = frames[--framesTop], bdd2 = frames[--framesTop], bdd1 = frames[--framesTop], op = frames[--framesTop];
+
+		if (complementEdges) {
+			if (op == OR) {
+				op = AND;
+				bdd1 ^= 1;
+				bdd2 ^= 1;
+				flip ^= 1;
+			}
+			else if (op == IMP) {
+				op = AND;
+				bdd2 ^= 1;
+				flip ^= 1;
+			}
+			else if (op == BIIMP) {
+				op = XOR;
+				flip ^= 1;
+			}
+
+			if (op == XOR) {
+				flip ^= (bdd1 ^ bdd2) & 1;
+				bdd1 &= ~1;
+				bdd2 &= ~1;
+			}
+		}
+
+		int result = terminal(op, bdd1, bdd2);
+		if (result < 0 && (result = ut.getFromCache(OPERATORS[op], bdd1, bdd2)) < 0) {
+			int v1 = ut.var(bdd1), v2 = ut.var(bdd2), var = Math.min(v1, v2);
+			int low1 = v1 == var ? ut.low(bdd1) : bdd1, high1 = v1 == var ? ut.high(bdd1) : bdd1;
+			int low2 = v2 == var ? ut.low(bdd2) : bdd2, high2 = v2 == var ? ut.high(bdd2) : bdd2;
+
+			push(op, bdd1, bdd2, var, flip, APPLY_MK);
+			push(op, high1, high2, 0, APPLY);
+			push(op, low1, low2, 0, APPLY);
+		}
+		else
+			pushResult(result ^ flip);
+	}
+
+	private void applyMK() {
+		int flip = frames[--framesTop], var = frames[--framesTop], bdd2 = frames[--framesTop], bdd1 = frames[--framesTop], op = frames[--framesTop];
+		int high = results[--resultsTop], low = results[--resultsTop], result = factory.MK(var, low, high);
+		ut.putIntoCache(OPERATORS[op], bdd1, bdd2, result);
+		pushResult(result ^ flip);
+	}
+
+	/**
+	 * @return the result of the given operation, if it is a terminal case, and -1 otherwise
+	 */
+
+	private int terminal(int op, int bdd1, int bdd2) {
+		if (op == AND) {
+			if (bdd1 == bdd2)
+				return bdd1;
+			else if (complementEdges && (bdd1 ^ bdd2) == 1)
+				return ZERO;
+			else if (bdd1 == ZERO || bdd2 == ZERO)
+				return ZERO;
+			else if (bdd1 == ONE)
+				return bdd2;
+			else if (bdd2 == ONE)
+				return bdd1;
+		}
+		else if (op == OR) {
+			if (bdd1 == bdd2)
+				return bdd1;
+			else if (bdd1 == ONE || bdd2 == ONE)
+				return ONE;
+			else if (bdd1 == ZERO)
+				return bdd2;
+			else if (bdd2 == ZERO)
+				return bdd1;
+		}
+		else if (op == IMP) {
+			if (bdd1 == bdd2 || bdd1 == ZERO)
+				return ONE;
+			else if (bdd1 == ONE)
+				return bdd2;
+		}
+		else if (op == BIIMP) {
+			if (bdd1 == bdd2)
+				return ONE;
+			else if ((bdd1 == ZERO && bdd2 == ONE) || (bdd1 == ONE && bdd2 == ZERO))
+				return ZERO;
+			else if (bdd1 == ONE)
+				return bdd2;
+			else if (bdd2 == ONE)
+				return bdd1;
+		}
+		else {
+			if (bdd1 == bdd2)
+				return ZERO;
+			else if ((bdd1 == ONE && bdd2 == ZERO) || (bdd1 == ZERO && bdd2 == ONE))
+				return ONE;
+			else if (bdd1 == ZERO)
+				return bdd2;
+			else if (bdd2 == ZERO)
+				return bdd1;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * The first step of {@link Factory#innerQuantify(int, VarSet, boolean)}.
+	 */
+
+	private void quantify() {
+		int id = frames[--framesTop], result;
+
+		if (id < Factory.FIRST_NODE_NUM)
+			pushResult(id);
+		else if ((result = ut.getQuantCache().get(exist, id, quantifiedVars)) >= 0)
+			pushResult(result);
+		else {
+			push(id, QUANTIFY_MK);
+			push(ut.high(id), QUANTIFY);
+			push(ut.low(id), QUANTIFY);
+		}
+	}
+
+	private void quantifyMK() {
+		int id = frames[--framesTop], b = results[--resultsTop], a = results[--resultsTop], var = ut.var(id);
+
+		if (quantifiedVars.levels.get(var)) {
+			// the result is cached once the apply has been computed
+			push(QUANTIFY, id, PUT);
+			push(exist ? OR : AND, a, b, 0, APPLY);
+		}
+		else {
+			int result = a == ut.low(id) && b == ut.high(id) ? id : factory.MK(var, a, b);
+			ut.getQuantCache().put(exist, id, quantifiedVars, result);
+			pushResult(result);
+		}
+	}
+
+	/**
+	 * The first step of {@code Factory.replaceOutOfOrder(int, Renaming)}.
+	 */
+
+	private void replace() {
+		int bdd = frames[--framesTop], result;
+
+		if (bdd < Factory.FIRST_NODE_NUM)
+			pushResult(bdd);
+		else if ((result = ut.getReplaceCache().get(bdd, renaming)) >= 0)
+			pushResult(result);
+		else {
+			push(bdd, REPLACE_MK);
+			push(ut.high(bdd), REPLACE);
+			push(ut.low(bdd), REPLACE);
+		}
+	}
+
+	private void replaceMK() {
+		int bdd = frames[--framesTop], high = results[--resultsTop], low = results[--resultsTop], var = ut.var(bdd);
+		int newVar = renaming.newLevel(var);
+
+		if (var == newVar && low == ut.low(bdd) && high == ut.high(bdd)) {
+			ut.getReplaceCache().put(bdd, renaming, bdd);
+			pushResult(bdd);
+		}
+		else {
+			// the result is cached once it has been put in order
+			push(REPLACE, bdd, PUT);
+			push(newVar, low, high, MK_IN_ORDER);
+		}
+	}
+
+	/**
+	 * Caches the result on top of the stack, for the quantification or
+	 * replacement of the given bdd.
+	 */
+
+	private void put() {
+		int bdd = frames[--framesTop], kind = frames[--framesTop], result = results[resultsTop - 1];
+
+		if (kind == QUANTIFY)
+			ut.getQuantCache().put(exist, bdd, quantifiedVars, result);
+		else
+			ut.getReplaceCache().put(bdd, renaming, result);
+	}
+
+	/**
+	 * The first step of {@code Factory.MKInOrder(int, int, int)}.
+	 */
+
+	private void mkInOrder() {
+		int high = frames[--framesTop], low = frames[--framesTop], var = frames[--framesTop];
+		int varLow = ut.var(low), varHigh = ut.var(high);
+
+		if (var == varLow || var == varHigh)
+			throw new ReplacementWithExistingVarException(ut.varOfLevel(var));
+
+		if (var < varLow && var < varHigh)
+			pushResult(factory.MK(var, low, high));
+		else if (varLow == varHigh) {
+			push(varLow, MK_IN_ORDER_MK);
+			push(var, ut.high(low), ut.high(high), MK_IN_ORDER);
+			push(var, ut.low(low), ut.low(high), MK_IN_ORDER);
+		}
+		else if (varLow < varHigh) {
+			push(varLow, MK_IN_ORDER_MK);
+			push(var, ut.high(low), high, MK_IN_ORDER);
+			push(var, ut.low(low), high, MK_IN_ORDER);
+		}
+		else {
+			push(varHigh, MK_IN_ORDER_MK);
+			push(var, low, ut.high(high), MK_IN_ORDER);
+			push(var, low, ut.low(high), MK_IN_ORDER);
+		}
+	}
+
+	private void mkInOrderMK() {
+		int var = frames[--framesTop], high = results[--resultsTop], low = results[--resultsTop];
+		pushResult(factory.MK(var, low, high));
+	}
+
+	private void push(int a) {
+		ensureCapacity(1);
+		frames[framesTop++] = a;
+	}
+
+	private void push(int a, int b) {
+		ensureCapacity(2);
+		frames[framesTop++] = a;
+		frames[framesTop++] = b;
+	}
+
+	private void push(int a, int b, int c) {
+		ensureCapacity(3);
+		frames[framesTop++] = a;
+		frames[framesTop++] = b;
+		frames[framesTop++] = c;
+	}
+
+	private void push(int a, int b, int c, int d) {
+		ensureCapacity(4);
+		frames[framesTop++] = a;
+		frames[framesTop++] = b;
+		frames[framesTop++] = c;
+		frames[framesTop++] = d;
+	}
+
+	private void push(int a, int b, int c, int d, int e) {
+		ensureCapacity(5);
+		frames[framesTop++] = a;
+		frames[framesTop++] = b;
+		frames[framesTop++] = c;
+		frames[framesTop++] = d;
+		frames[framesTop++] = e;
+	}
+
+	private void push(int a, int b, int c, int d, int e, int f) {
+		ensureCapacity(6);
+		frames[framesTop++] = a;
+		frames[framesTop++] = b;
+		frames[framesTop++] = c;
+		frames[framesTop++] = d;
+		frames[framesTop++] = e;
+		frames[framesTop++] = f;
+	}
+
+	private void ensureCapacity(int more) {
+		if (framesTop + more > frames.length)
+			frames = Arrays.copyOf(frames, Math.max(frames.length * 2, framesTop + more));
+	}
+
+	private void pushResult(int result) {
+		if (resultsTop == results.length)
+			results = Arrays.copyOf(results, results.length * 2);
+
+		results[resultsTop++] = result;
+	}
+}
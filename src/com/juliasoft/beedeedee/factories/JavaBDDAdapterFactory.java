@@ -22,6 +22,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -37,6 +38,7 @@ import net.sf.javabdd.BDDPairing;
 import com.juliasoft.beedeedee.bdd.Assignment;
 import com.juliasoft.beedeedee.bdd.ReplacementWithExistingVarException;
 import com.juliasoft.beedeedee.factories.Factory.GarbageCollectionListener;
+import com.juliasoft.beedeedee.factories.Factory.ReorderListener;
 import com.juliasoft.beedeedee.factories.Factory.ResizeListener;
 
 /**
@@ -46,6 +48,10 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 	// this is non-null since it is definitely initialized by the static pseudo-constructor
 	private Factory factory;
 	private int bddVarNum;
+	private ReorderMethod reorderMethod = REORDER_NONE;
+	private int reorderTimes = Integer.MAX_VALUE;
+	private boolean reorderDisabled;
+	private int reorderVerbose;
 
 	private JavaBDDAdapterFactory() {}
 	
@@ -79,6 +85,10 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 			m = JavaBDDAdapterFactory.class.getDeclaredMethod
 				("defaultGCCallback", new Class[] { int.class, BDDFactory.GCStats.class });
 			registerGCCallback(this, m);
+
+			m = JavaBDDAdapterFactory.class.getDeclaredMethod
+				("defaultReorderCallback", new Class[] { boolean.class, BDDFactory.ReorderStats.class });
+			registerReorderCallback(this, m);
 		}
 		catch (SecurityException | NoSuchMethodException e) {
 			throw new RuntimeException("Unexpected exception " + e);
@@ -267,7 +277,7 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 
 	@Override
 	public void registerReorderCallback(Object o, Method m) {
-		// unused
+		setReorderListener(o, m);
 	}
 
 	/**
@@ -279,7 +289,60 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 
 	@Override
 	public void unregisterReorderCallback(Object o, Method m) {
-		// unused
+		setReorderListener(null, null);
+	}
+
+	/**
+	 * Sets the reorder listener of the factory. Besides calling back the given
+	 * method, if any, the listener counts the automatic reorderings that are
+	 * still allowed.
+	 * 
+	 * @param o the object whose method is called
+	 * @param m the method that gets called, if any
+	 */
+
+	private void setReorderListener(final Object o, final Method m) {
+		factory.setReorderListener(new ReorderListener() {
+
+			@Override
+			public void onStart(int num, int nodes, long totalTime) {
+				if (m != null)
+					try {
+						m.invoke(o, true, new ReorderStats(nodes, nodes, 0L));
+					}
+					catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+						throw new RuntimeException("Unexpected exception " + e);
+					}
+			}
+
+			@Override
+			public void onStop(int num, int nodesBefore, int nodesAfter, long time, long totalTime) {
+				if (reorderTimes != Integer.MAX_VALUE && --reorderTimes <= 0)
+					factory.setAutoReorder(false);
+
+				if (m != null)
+					try {
+						m.invoke(o, false, new ReorderStats(nodesBefore, nodesAfter, time));
+					}
+					catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+						throw new RuntimeException("Unexpected exception " + e);
+					}
+			}
+		});
+	}
+
+	/**
+	 * This is the default method that is called every time the variables get reordered.
+	 * 
+	 * @param prestate
+	 *            true if the reordering starts, false if it completes
+	 * @param stats
+	 *            statistics about the effect of the reordering
+	 */
+
+	void defaultReorderCallback(boolean prestate, BDDFactory.ReorderStats stats) {
+		if (!prestate && reorderVerbose > 0)
+			System.out.println(stats);
 	}
 
 	private static class GCStats extends BDDFactory.GCStats {
@@ -294,6 +357,16 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 		}
 	}
 
+	private static class ReorderStats extends BDDFactory.ReorderStats {
+		private ReorderStats(int nodesBefore, int nodesAfter, long time) {
+			super();
+
+			this.usednum_before = nodesBefore;
+			this.usednum_after = nodesAfter;
+			this.time = time;
+		}
+	}
+
 	/**
 	 * Unsupported operation.
 	 */
@@ -366,102 +439,92 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 		throw new UnsupportedOperationException();
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public int level2Var(int level) {
-		throw new UnsupportedOperationException();
+		return factory.varOfLevel(level);
 	}
 
 	@Override
 	public int var2Level(int var) {
-		// TODO this should differ from var only after reordering - and calling duplicateVar
-		return var;
+		return factory.levelOfVar(var);
 	}
 
 	/**
-	 * Unsupported operation.
+	 * Only sifting is supported.
 	 */
 	
 	@Override
 	public void reorder(ReorderMethod m) {
-		throw new UnsupportedOperationException();
+		if (m == REORDER_SIFT || m == REORDER_SIFTITE)
+			factory.reorder();
+		else if (m != REORDER_NONE)
+			throw new UnsupportedOperationException();
 	}
 
 	/**
-	 * Unsupported operation.
+	 * Only sifting is supported.
 	 */
 	
 	@Override
 	public void autoReorder(ReorderMethod method) {
-		throw new UnsupportedOperationException();
+		if (method != REORDER_NONE && method != REORDER_SIFT && method != REORDER_SIFTITE)
+			throw new UnsupportedOperationException();
+
+		reorderMethod = method;
+		reorderTimes = Integer.MAX_VALUE;
+		factory.setAutoReorder(method != REORDER_NONE && !reorderDisabled);
 	}
 
 	/**
-	 * Unsupported operation.
+	 * Only sifting is supported.
 	 */
 	
 	@Override
 	public void autoReorder(ReorderMethod method, int max) {
-		throw new UnsupportedOperationException();
+		autoReorder(method);
+		reorderTimes = max;
+		if (max <= 0)
+			factory.setAutoReorder(false);
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public ReorderMethod getReorderMethod() {
-		throw new UnsupportedOperationException();
+		return reorderMethod;
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public int getReorderTimes() {
-		throw new UnsupportedOperationException();
+		return reorderTimes;
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public void disableReorder() {
-		throw new UnsupportedOperationException();
-
+		reorderDisabled = true;
+		factory.setAutoReorder(false);
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public void enableReorder() {
-		throw new UnsupportedOperationException();
-
+		reorderDisabled = false;
+		factory.setAutoReorder(reorderMethod != REORDER_NONE && reorderTimes > 0);
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public int reorderVerbose(int v) {
-		throw new UnsupportedOperationException();
+		int old = reorderVerbose;
+		reorderVerbose = v;
+
+		return old;
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public void setVarOrder(int[] neworder) {
-		throw new UnsupportedOperationException();
+		try {
+			factory.setVarOrder(neworder);
+		}
+		catch (IllegalArgumentException e) {
+			throw new BDDException(e.getMessage());
+		}
 	}
 
 	@Override
@@ -469,13 +532,14 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 		return new JavaBDDAdapterBDDPairing();
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public void swapVar(int v1, int v2) {
-		throw new UnsupportedOperationException();
+		if (v1 < 0 || v1 >= bddVarNum)
+			throw new BDDException("Unknown variable " + v1 + " max allowed is " + (bddVarNum - 1));
+		if (v2 < 0 || v2 >= bddVarNum)
+			throw new BDDException("Unknown variable " + v2 + " max allowed is " + (bddVarNum - 1));
+
+		factory.swapVars(v1, v2);
 	}
 
 	/**
@@ -488,48 +552,53 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 	}
 
 	/**
-	 * Unsupported operation.
+	 * The variables inside a block always keep their relative order,
+	 * hence {@code fixed} is ignored. Nested blocks are not supported.
 	 */
 	
 	@Override
 	public void addVarBlock(BDD var, boolean fixed) {
-		throw new UnsupportedOperationException();
+		addVarBlock(((JavaBDDAdapterBDD) var).bdd.vars());
 	}
 
 	/**
-	 * Unsupported operation.
+	 * The variables inside a block always keep their relative order,
+	 * hence {@code fixed} is ignored. Nested blocks are not supported.
 	 */
 	
 	@Override
 	public void addVarBlock(int first, int last, boolean fixed) {
-		throw new UnsupportedOperationException();
+		BitSet vars = new BitSet();
+		vars.set(first, last + 1);
+		addVarBlock(vars);
+	}
+
+	private void addVarBlock(BitSet vars) {
+		try {
+			factory.addVarBlock(vars);
+		}
+		catch (IllegalArgumentException e) {
+			throw new BDDException(e.getMessage());
+		}
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public void varBlockAll() {
-		throw new UnsupportedOperationException();
+		// a block for each single variable does not constrain sifting at all
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public void clearVarBlocks() {
-		throw new UnsupportedOperationException();
+		factory.clearVarBlocks();
 	}
 
-	/**
-	 * Unsupported operation.
-	 */
-	
 	@Override
 	public void printOrder() {
-		throw new UnsupportedOperationException();
+		System.out.print("Order:");
+		for (int var: factory.getVarOrder(bddVarNum))
+			System.out.print(" " + var);
+
+		System.out.println();
 	}
 
 	/**
@@ -668,13 +737,20 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 			return new JavaBDDAdapterBDD(bdd.compose(((JavaBDDAdapterBDD)g).bdd, var));
 		}
 
-		/**
-		 * Unsupported operation.
-		 */
-		
 		@Override
 		public BDD veccompose(BDDPairing pair) {
-			throw new UnsupportedOperationException();
+			JavaBDDAdapterBDDPairing pairing = (JavaBDDAdapterBDDPairing) pair;
+			Map<Integer, com.juliasoft.beedeedee.bdd.BDD> substitution = new HashMap<>(pairing.composition);
+			// variables renamed into variables are composed as well
+			for (Map.Entry<Integer, Integer> entry: pairing.renaming.asMap().entrySet())
+				substitution.put(entry.getKey(), factory.makeVar(entry.getValue()));
+
+			BDD result = new JavaBDDAdapterBDD(bdd.compose(substitution));
+
+			for (Integer var: pairing.renaming.asMap().keySet())
+				substitution.get(var).free();
+
+			return result;
 		}
 
 		/**
@@ -764,13 +840,17 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 			throw new UnsupportedOperationException();
 		}
 
-		/**
-		 * Unsupported operation.
-		 */
-		
 		@Override
 		public BDD applyEx(BDD that, BDDOp opr, BDD var) {
-			throw new UnsupportedOperationException();
+			// the conjunction has a dedicated single-pass implementation
+			if (opr == and)
+				return relprod(that, var);
+
+			BDD applied = apply(that, opr);
+			BDD result = applied.exist(var);
+			applied.free();
+
+			return result;
 		}
 
 		/**
@@ -797,12 +877,43 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 		}
 
 		/**
-		 * Unsupported operation.
+		 * Chooses the value of the variables of {@code var} one at a time,
+		 * restricting this bdd by each choice, so that {@code pol} is chosen
+		 * whenever this bdd stays satisfiable. The variables that are not in
+		 * {@code var} but are needed for satisfying this bdd are fixed as well.
 		 */
 		
 		@Override
 		public BDD satOne(BDD var, boolean pol) {
-			throw new UnsupportedOperationException();
+			if (bdd.isZero())
+				return new JavaBDDAdapterBDD(factory.makeZero());
+
+			com.juliasoft.beedeedee.bdd.BDD rest = bdd.copy(), result = factory.makeOne();
+			BitSet vars = ((JavaBDDAdapterBDD) var).bdd.vars();
+
+			for (int v = vars.nextSetBit(0); v >= 0; v = vars.nextSetBit(v + 1)) {
+				com.juliasoft.beedeedee.bdd.BDD literal = pol ? factory.makeVar(v) : factory.makeNotVar(v);
+				com.juliasoft.beedeedee.bdd.BDD restricted = rest.restrict(literal);
+
+				// rest is satisfiable, hence it is so for the other value at least
+				if (restricted.isZero()) {
+					restricted.free();
+					literal.notWith();
+					restricted = rest.restrict(literal);
+				}
+
+				rest.free();
+				rest = restricted;
+				result.andWith(literal);
+			}
+
+			// the other variables are fixed along any path of what is left
+			if (!rest.isOne())
+				result.andWith(rest.anySat().toBDD());
+
+			rest.free();
+
+			return new JavaBDDAdapterBDD(result);
 		}
 
 		@Override
@@ -818,7 +929,7 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 		@Override
 		public BDD replace(BDDPairing pair) {
 			try {
-				return new JavaBDDAdapterBDD(bdd.replace(((JavaBDDAdapterBDDPairing)pair).renaming));
+				return new JavaBDDAdapterBDD(((Factory.BDDImpl) bdd).replace(((JavaBDDAdapterBDDPairing)pair).renaming));
 			} catch (ReplacementWithExistingVarException e) {
 				throw new BDDException("Trying to replace with variable " + e.getVarNum() + " which is already in the bdd");
 			}
@@ -827,7 +938,7 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 		@Override
 		public BDD replaceWith(BDDPairing pair) {
 			try {
-				bdd.replaceWith(((JavaBDDAdapterBDDPairing)pair).renaming);
+				((Factory.BDDImpl) bdd).replaceWith(((JavaBDDAdapterBDDPairing)pair).renaming);
 			} catch (ReplacementWithExistingVarException e) {
 				throw new BDDException("Trying to replace with variable " + e.getVarNum() + " which is already in the bdd");
 			}
@@ -854,6 +965,11 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 			return bdd.satCount();
 		}
 
+		@Override
+		public double satCount(BDD varset) {
+			return bdd.exactSatCount(((JavaBDDAdapterBDD) varset).bdd.vars()).doubleValue();
+		}
+
 		@Override
 		public int[] varProfile() {
 			return bdd.varProfile();
@@ -944,7 +1060,8 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 	
 	private class JavaBDDAdapterBDDPairing extends BDDPairing {
 		
-		private final Map<Integer, Integer> renaming = new HashMap<Integer, Integer>();
+		private final Pairing renaming = new Pairing();
+		private final Map<Integer, com.juliasoft.beedeedee.bdd.BDD> composition = new HashMap<Integer, com.juliasoft.beedeedee.bdd.BDD>();
 
 		@Override
 		public void set(int oldvar, int newvar) {
@@ -956,12 +1073,22 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 	        if (newvar < 0 || newvar >= bddVarNum)
 	        	throw new BDDException("Unknown variable " + newvar + " max allowed is " + (bddVarNum - 1));
 
-	        renaming.put(oldvar, newvar);
+	        renaming.set(oldvar, newvar);
 		}
 
+		/**
+		 * Only {@link BDD#veccompose(BDDPairing)} takes into account the pairs set
+		 * by this method.
+		 */
+
 		@Override
 		public void set(int oldvar, BDD newvar) {
-			throw new UnsupportedOperationException();
+			if (oldvar < 0 || oldvar >= bddVarNum)
+				throw new BDDException("Unknown variable " + oldvar + " max allowed is " + (bddVarNum - 1));
+
+			com.juliasoft.beedeedee.bdd.BDD old = composition.put(oldvar, ((JavaBDDAdapterBDD) newvar).bdd.copy());
+			if (old != null)
+				old.free();
 		}
 
 		@Override
@@ -972,6 +1099,9 @@ public class JavaBDDAdapterFactory extends BDDFactory {
 		@Override
 		public void reset() {
 			renaming.clear();
+			for (com.juliasoft.beedeedee.bdd.BDD bdd: composition.values())
+				bdd.free();
+			composition.clear();
 		}
 	}
 }
@@ -0,0 +1,333 @@
+/*
+  Copyright 2014 Julia s.r.l.
+
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A unique table where nodes are inserted without locks. Each thread allocates
+ * nodes from its own chunk of the table, and new nodes are published by
+ * compare-and-swap on the head of their bucket. Resizes still need that no
+ * insertion is in progress: each thread declares when it is inserting, and a
+ * resize first freezes insertions and then waits for those in progress.
+ * Garbage collection and reordering need nothing more, since they exclude
+ * all operations of the factory anyway.
+ * <p>
+ * Since chunks are reserved in advance, the number of nodes in the table
+ * includes the positions reserved but not yet used by each thread.
+ */
+
+class LockFreeUniqueTable extends ResizingAndGarbageCollectedUniqueTable {
+
+	/**
+	 * The number of positions that a thread reserves at a time.
+	 */
+
+	private final static int CHUNK_SIZE = 256;
+
+	private final static VarHandle BUCKETS = MethodHandles.arrayElementVarHandle(int[].class);
+
+	private final static VarHandle NEXT_POS;
+
+	static {
+		try {
+			NEXT_POS = MethodHandles.lookup().findVarHandle(SimpleUniqueTable.class, "nextPos", int.class);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * The insertion state of each live thread that used this table. Those of
+	 * terminated threads are removed when a new thread arrives and at each
+	 * resize or garbage collection.
+	 */
+
+	private final List<Inserter> inserters = new CopyOnWriteArrayList<>();
+
+	private final ThreadLocal<Inserter> inserter = ThreadLocal.withInitial(() -> {
+		pruneInserters();
+		Inserter inserter = new Inserter(Thread.currentThread());
+		inserters.add(inserter);
+		return inserter;
+	});
+
+	/**
+	 * True while a resize is in progress, so that no insertion can start.
+	 */
+
+	private volatile boolean frozen;
+
+	private final Object resizeMonitor = new Object();
+
+	LockFreeUniqueTable(int size, int cacheSize, boolean complementEdges, boolean compactNodes, Factory factory) {
+		super(size, cacheSize, complementEdges, compactNodes, factory);
+	}
+
+	/**
+	 * The chunk of positions reserved by a thread.
+	 */
+
+	private static class Inserter {
+
+		/**
+		 * The thread. It is weakly referenced, so that the table does not keep
+		 * terminated threads reachable.
+		 */
+
+		private final WeakReference<Thread> owner;
+
+		/**
+		 * The next free position of the chunk and the end of the chunk.
+		 */
+
+		private int next, end;
+
+		/**
+		 * The unique identifier for the node at the next free position.
+		 */
+
+		private int nextHashCodeAux;
+
+		/**
+		 * True while the thread is modifying the table.
+		 */
+
+		private volatile boolean inserting;
+
+		private Inserter(Thread owner) {
+			this.owner = new WeakReference<>(owner);
+		}
+
+		/**
+		 * @return true if the thread has terminated, hence it will never use its chunk again
+		 */
+
+		private boolean isDead() {
+			Thread owner = this.owner.get();
+			return owner == null || !owner.isAlive();
+		}
+	}
+
+	/**
+	 * Removes the insertion state of the threads that have terminated. Their
+	 * insertions, if any, have completed, and the positions left in their
+	 * chunks are reclaimed by the next garbage collection.
+	 */
+
+	private void pruneInserters() {
+		inserters.removeIf(Inserter::isDead);
+	}
+
+	@Override
+	protected final int getNode(int var, int low, int high) {
+		Inserter inserter = this.inserter.get();
+
+		while (true) {
+			// size is set last by a resize, hence we read it first
+			int size = this.size;
+			int[] H = this.H;
+			int pos = hash(var, low, high, size);
+
+			int bin, head = (int) BUCKETS.getAcquire(H, pos);
+			for (bin = head; bin >= 0; bin = next(bin))
+				if (isVarLowHigh(bin, var, low, high))
+					return bin;
+
+			if (inserter.next == inserter.end && !reserveChunk(inserter))
+				continue;
+
+			if (!startInserting(inserter))
+				continue;
+
+			try {
+				// if a resize occurred after the scan, the whole bucket must be scanned again
+				return insert(inserter, var, low, high, H == this.H ? head : -1);
+			}
+			finally {
+				inserter.inserting = false;
+			}
+		}
+	}
+
+	/**
+	 * Inserts a new node at the next free position of the chunk of the thread,
+	 * unless another thread inserted the same node in the meanwhile.
+	 *
+	 * @param scanned the head of the bucket when it was last scanned, or -1
+	 * @return the position of the node
+	 */
+
+	private int insert(Inserter inserter, int var, int low, int high, int scanned) {
+		// no resize can occur here, hence the table and its size are stable
+		int[] H = this.H, ut = this.ut;
+		int pos = hash(var, low, high, size), node = inserter.next, cursor = node * getNodeSize();
+		ut[cursor + VAR_OFFSET] = var;
+		ut[cursor + LOW_OFFSET] = low;
+		ut[cursor + HIGH_OFFSET] = high;
+		if (!compactNodes)
+			ut[cursor + HASHCODEAUX_OFFSET] = inserter.nextHashCodeAux;
+
+		while (true) {
+			int head = (int) BUCKETS.getAcquire(H, pos);
+
+			// only the nodes added in front of the bucket since it was scanned are new
+			for (int bin = head; bin >= 0 && bin != scanned; bin = next(bin))
+				if (isVarLowHigh(bin, var, low, high)) {
+					// the position stays in the chunk, but must not look like a node
+					ut[cursor + VAR_OFFSET] = -1;
+					return bin;
+				}
+
+			ut[cursor + NEXT_OFFSET] = head;
+			if (BUCKETS.compareAndSet(H, pos, head, node)) {
+				inserter.next++;
+				inserter.nextHashCodeAux++;
+				return node;
+			}
+
+			scanned = head;
+		}
+	}
+
+	/**
+	 * Declares that the thread is going to modify the table.
+	 *
+	 * @return false if a resize was in progress, hence the table might have changed
+	 */
+
+	private boolean startInserting(Inserter inserter) {
+		inserter.inserting = true;
+
+		// a resize sets frozen before looking at inserting, hence at least one of them sees the other
+		if (frozen) {
+			inserter.inserting = false;
+			awaitResize();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reserves a new chunk of positions for the thread, resizing the table if needed.
+	 *
+	 * @return true if the chunk has been reserved, false if a resize occurred
+	 */
+
+	private boolean reserveChunk(Inserter inserter) {
+		if (!startInserting(inserter))
+			return false;
+
+		try {
+			int[] ut = this.ut;
+			int size = this.size;
+
+			for (int start; (start = nextPos) < size; ) {
+				int end = Math.min(start + CHUNK_SIZE, size);
+				if (NEXT_POS.compareAndSet(this, start, end)) {
+					// reserved positions must not look like nodes to a resize
+					for (int node = start; node < end; node++)
+						ut[node * getNodeSize() + VAR_OFFSET] = -1;
+
+					inserter.next = start;
+					inserter.end = end;
+					inserter.nextHashCodeAux = reserveHashCodeAux(end - start);
+
+					return true;
+				}
+			}
+		}
+		finally {
+			inserter.inserting = false;
+		}
+
+		if (!isResizeInProgress())
+			resize();
+		else
+			awaitResize();
+
+		return false;
+	}
+
+	private void awaitResize() {
+		synchronized (resizeMonitor) {
+			while (frozen || isResizing())
+				try {
+					resizeMonitor.wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+		}
+	}
+
+	@Override
+	void resizeExclusively(ResizeData data) {
+		frozen = true;
+
+		try {
+			pruneInserters();
+
+			for (Inserter inserter: inserters)
+				while (inserter.inserting)
+					Thread.onSpinWait();
+
+			innerResize(data);
+		}
+		finally {
+			synchronized (resizeMonitor) {
+				frozen = false;
+				resizeMonitor.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of threads whose insertion state is kept by this table
+	 */
+
+	int getNumOfInserters() {
+		return inserters.size();
+	}
+
+	@Override
+	int freePositions() {
+		Inserter inserter = this.inserter.get();
+		return super.freePositions() + inserter.end - inserter.next;
+	}
+
+	@Override
+	int compactTable(boolean[] aliveNodes, int[] newPositions) {
+		int collected = super.compactTable(aliveNodes, newPositions);
+
+		// the positions reserved by the threads have been compacted away
+		pruneInserters();
+		for (Inserter inserter: inserters)
+			inserter.next = inserter.end = 0;
+
+		return collected;
+	}
+}
@@ -0,0 +1,209 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.juliasoft.beedeedee.bdd.BDD;
+
+/**
+ * Combines many bdds by conjunction or disjunction, always combining the two
+ * smallest operands available, so that the large intermediate results are
+ * built last. Independent pairs of operands are combined in parallel, and
+ * the intermediate results are freed as soon as they have been combined.
+ * <p>
+ * Workers never wait for each other: a worker stops when less than two
+ * operands are available, and the worker that adds a result looks again
+ * for a pair, hence no pair is left behind.
+ */
+
+final class NaryApply {
+
+	private final Operator op;
+
+	/**
+	 * The operands available, smallest first.
+	 */
+
+	private final PriorityQueue<Operand> operands = new PriorityQueue<>();
+
+	/**
+	 * The absorbing element, once an operand has been found equal to it, or null.
+	 */
+
+	private BDD absorbed;
+
+	/**
+	 * The first failure of a worker, or null.
+	 */
+
+	private Throwable failure;
+
+	private static class Operand implements Comparable<Operand> {
+		private final BDD bdd;
+		private final int size;
+
+		/**
+		 * True if the bdd is an intermediate result, that can be freed.
+		 */
+
+		private final boolean intermediate;
+
+		private Operand(BDD bdd, boolean intermediate) {
+			this.bdd = bdd;
+			this.size = bdd.nodeCount();
+			this.intermediate = intermediate;
+		}
+
+		private void release() {
+			if (intermediate)
+				bdd.free();
+		}
+
+		@Override
+		public int compareTo(Operand other) {
+			return Integer.compare(size, other.size);
+		}
+	}
+
+	private NaryApply(Operator op) {
+		this.op = op;
+	}
+
+	/**
+	 * Combines the given bdds, that are not modified.
+	 *
+	 * @param factory the factory of the bdds
+	 * @param op the operator, either {@link Operator#AND} or {@link Operator#OR}
+	 * @param bdds the bdds
+	 * @param pool the pool where the pairs of operands are combined in parallel,
+	 *             or null if they are combined sequentially by the calling thread
+	 * @return the result, a new bdd
+	 */
+
+	static BDD apply(Factory factory, Operator op, Collection<BDD> bdds, ForkJoinPool pool) {
+		NaryApply apply = new NaryApply(op);
+
+		for (BDD bdd: bdds) {
+			if (apply.isAbsorbing(bdd))
+				return bdd.copy();
+
+			apply.operands.add(new Operand(bdd, false));
+		}
+
+		if (apply.operands.isEmpty())
+			return op == Operator.AND ? factory.makeOne() : factory.makeZero();
+
+		int workers = pool == null ? 1 : Math.min(pool.getParallelism(), apply.operands.size() / 2);
+		if (workers <= 1)
+			apply.work();
+		else {
+			List<ForkJoinTask<?>> tasks = new ArrayList<>();
+			try {
+				for (int worker = 0; worker < workers; worker++)
+					tasks.add(pool.submit(apply::work));
+			}
+			catch (RejectedExecutionException e) {
+				// the pool has been shut down by done() in the meantime
+				apply.work();
+			}
+
+			// the workers record their failures, hence they cannot fail themselves
+			for (ForkJoinTask<?> task: tasks)
+				task.join();
+		}
+
+		if (apply.failure != null) {
+			apply.releaseAll();
+			if (apply.absorbed != null)
+				apply.absorbed.free();
+
+			if (apply.failure instanceof Error)
+				throw (Error) apply.failure;
+			else
+				throw (RuntimeException) apply.failure;
+		}
+
+		if (apply.absorbed != null)
+			return apply.absorbed;
+
+		Operand result = apply.operands.poll();
+		return result.intermediate ? result.bdd : result.bdd.copy();
+	}
+
+	private boolean isAbsorbing(BDD bdd) {
+		return op == Operator.AND ? bdd.isZero() : bdd.isOne();
+	}
+
+	private void work() {
+		while (true) {
+			Operand first, second;
+
+			synchronized (this) {
+				if (operands.size() < 2 || absorbed != null || failure != null)
+					return;
+
+				first = operands.poll();
+				second = operands.poll();
+			}
+
+			Operand result;
+			try {
+				BDD combined = op == Operator.AND ? first.bdd.and(second.bdd) : first.bdd.or(second.bdd);
+				result = new Operand(combined, true);
+			}
+			catch (RuntimeException | Error e) {
+				synchronized (this) {
+					if (failure == null)
+						failure = e;
+				}
+
+				return;
+			}
+			finally {
+				first.release();
+				second.release();
+			}
+
+			synchronized (this) {
+				if (absorbed != null || failure != null)
+					result.release();
+				else if (isAbsorbing(result.bdd)) {
+					absorbed = result.bdd;
+					releaseAll();
+				}
+				else
+					operands.add(result);
+			}
+		}
+	}
+
+	private synchronized void releaseAll() {
+		for (Operand operand: operands)
+			operand.release();
+
+		operands.clear();
+	}
+}
@@ -0,0 +1,355 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Visits each node reachable from some roots once, over an explicit stack.
+ * A node has been visited if its stamp is the epoch of the traversal, hence
+ * a new traversal only increments the epoch and nothing must be cleared.
+ * Each thread uses its own traversal, whose arrays grow with the table and
+ * are then reused by the following traversals, that allocate nothing. Only
+ * the stamps are as large as the table: the buffers of the bottom-up visits
+ * are as large as the visits, and those of the largest ones are not kept.
+ * The stamps left by a traversal belong to an older epoch than the following
+ * ones, hence it does not matter if a garbage collection moves the nodes.
+ * <p>
+ * The table is not kept between traversals, since traversals are reachable
+ * from their threads.
+ */
+
+final class NodeTraversal {
+
+	private final static VarHandle STAMPS = MethodHandles.arrayElementVarHandle(int[].class);
+
+	private int[] stamps = new int[0];
+	private int epoch;
+	private int[] stack = new int[256];
+
+	/**
+	 * The buffers of the bottom-up visits: the nodes in the order they are
+	 * visited, the first position of each level among the sorted nodes and
+	 * the sorted nodes. They are sized by the number of nodes visited, rather
+	 * than by the size of the table, and are dropped after large visits.
+	 */
+
+	private int[] nodes = new int[INITIAL_LENGTH];
+	private int[] starts = new int[64];
+	private int[] sorted = new int[INITIAL_LENGTH];
+
+	/**
+	 * An open-addressing map from the nodes of the last bottom-up visit to
+	 * their index among the sorted nodes: a node is at the first free slot
+	 * after its hash, and -1 marks the free slots. Only the first
+	 * {@code mask + 1} slots are used by the last visit.
+	 */
+
+	private int[] keys = new int[2 * INITIAL_LENGTH];
+	private int[] indices = new int[2 * INITIAL_LENGTH];
+	private int mask;
+
+	/**
+	 * A value for each node of the last bottom-up visit, at its index.
+	 */
+
+	private int[] values = new int[INITIAL_LENGTH];
+
+	private final static int INITIAL_LENGTH = 256;
+
+	/**
+	 * The largest buffers that are kept for the following visits.
+	 */
+
+	private final static int MAX_KEPT_LENGTH = 1 << 16;
+
+	/**
+	 * Starts a new traversal, where no node has been visited yet.
+	 *
+	 * @param size the size of the table whose nodes are visited
+	 * @return this traversal
+	 */
+
+	NodeTraversal start(int size) {
+		if (nodes.length > MAX_KEPT_LENGTH) {
+			nodes = new int[INITIAL_LENGTH];
+			sorted = new int[INITIAL_LENGTH];
+			keys = new int[2 * INITIAL_LENGTH];
+			indices = new int[2 * INITIAL_LENGTH];
+			values = new int[INITIAL_LENGTH];
+		}
+
+		if (stamps.length < size) {
+			stamps = new int[Math.max(size, stamps.length * 2)];
+			epoch = 1;
+		}
+		else if (++epoch == 0) {
+			// the stamps of the previous epochs might look like the new one
+			Arrays.fill(stamps, 0);
+			epoch = 1;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Visits the nodes reachable from the given edge that have not been visited
+	 * yet by this traversal. The caller must hold a garbage collection lock.
+	 *
+	 * @param ut the table of the nodes
+	 * @param root the edge
+	 * @param visitor applied to the position of each node visited, or null
+	 * @return the number of nodes visited
+	 */
+
+	int visit(ResizingAndGarbageCollectedUniqueTable ut, int root, IntConsumer visitor) {
+		int[] stamps = this.stamps, stack = this.stack;
+		int epoch = this.epoch, top = 0, visited = 0;
+		stack[top++] = root;
+
+		while (top > 0) {
+			int node = ut.node(stack[--top]);
+			if (node >= Factory.FIRST_NODE_NUM && stamps[node] != epoch) {
+				stamps[node] = epoch;
+				visited++;
+
+				if (visitor != null)
+					visitor.accept(node);
+
+				if (top + 2 > stack.length)
+					this.stack = stack = Arrays.copyOf(stack, stack.length * 2);
+
+				stack[top++] = ut.highAt(node);
+				stack[top++] = ut.lowAt(node);
+			}
+		}
+
+		return visited;
+	}
+
+	/**
+	 * Visits the nodes reachable from the given edge that have not been visited
+	 * yet by this traversal, and sorts them from the deepest level, so that
+	 * each node follows its children. The caller must hold a garbage collection lock.
+	 *
+	 * @param ut the table of the nodes
+	 * @param root the edge
+	 * @return the number of nodes visited, whose positions are the first
+	 *         elements of {@link #sorted()}, by decreasing level. The index of
+	 *         each of them is yielded by {@link #indexOf(int)}
+	 */
+
+	int bottomUp(ResizingAndGarbageCollectedUniqueTable ut, int root) {
+		int[] nodes = this.nodes, stamps = this.stamps, stack = this.stack;
+		int epoch = this.epoch, top = 0, visited = 0, maxLevel = 0;
+		stack[top++] = root;
+
+		while (top > 0) {
+			int node = ut.node(stack[--top]);
+			if (node >= Factory.FIRST_NODE_NUM && stamps[node] != epoch) {
+				stamps[node] = epoch;
+
+				if (visited == nodes.length)
+					this.nodes = nodes = Arrays.copyOf(nodes, nodes.length * 2);
+
+				nodes[visited++] = node;
+				maxLevel = Math.max(maxLevel, ut.varAt(node));
+
+				if (top + 2 > stack.length)
+					this.stack = stack = Arrays.copyOf(stack, stack.length * 2);
+
+				stack[top++] = ut.highAt(node);
+				stack[top++] = ut.lowAt(node);
+			}
+		}
+
+		// a counting sort of the nodes by decreasing level
+		if (starts.length < maxLevel + 2)
+			starts = new int[Math.max(maxLevel + 2, starts.length * 2)];
+
+		int[] starts = this.starts;
+		Arrays.fill(starts, 0, maxLevel + 2, 0);
+		for (int pos = 0; pos < visited; pos++)
+			starts[maxLevel - ut.varAt(nodes[pos]) + 1]++;
+
+		for (int level = 1; level < maxLevel + 2; level++)
+			starts[level] += starts[level - 1];
+
+		if (sorted.length < nodes.length)
+			sorted = new int[nodes.length];
+
+		int[] sorted = this.sorted;
+		for (int pos = 0; pos < visited; pos++)
+			sorted[starts[maxLevel - ut.varAt(nodes[pos])]++] = nodes[pos];
+
+		// at most half of the slots of the map are used
+		int capacity = Math.max(Integer.highestOneBit(visited) * 4, 16);
+		if (keys.length < capacity) {
+			keys = new int[capacity];
+			indices = new int[capacity];
+		}
+
+		int[] keys = this.keys, indices = this.indices;
+		int mask = this.mask = capacity - 1;
+		Arrays.fill(keys, 0, capacity, -1);
+		for (int index = 0; index < visited; index++) {
+			int slot = hash(sorted[index]) & mask;
+			while (keys[slot] >= 0)
+				slot = (slot + 1) & mask;
+
+			keys[slot] = sorted[index];
+			indices[slot] = index;
+		}
+
+		return visited;
+	}
+
+	/**
+	 * Yields the index, among the sorted nodes, of the given node, that must
+	 * have been visited by the last call to
+	 * {@link #bottomUp(ResizingAndGarbageCollectedUniqueTable, int)}.
+	 */
+
+	int indexOf(int node) {
+		int[] keys = this.keys;
+		int mask = this.mask, slot = hash(node) & mask;
+		while (keys[slot] != node)
+			slot = (slot + 1) & mask;
+
+		return indices[slot];
+	}
+
+	private static int hash(int node) {
+		int hash = node * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Yields the nodes sorted by the last call to
+	 * {@link #bottomUp(ResizingAndGarbageCollectedUniqueTable, int)}.
+	 * Only as many elements as it returned are meaningful.
+	 */
+
+	int[] sorted() {
+		return sorted;
+	}
+
+	/**
+	 * Yields an array where the callers can keep a value for each node
+	 * visited by the last call to
+	 * {@link #bottomUp(ResizingAndGarbageCollectedUniqueTable, int)},
+	 * at its index among the sorted nodes.
+	 */
+
+	int[] values() {
+		if (values.length < sorted.length)
+			values = new int[sorted.length];
+
+		return values;
+	}
+
+	/**
+	 * Counts the nodes reachable from the given edge that have not been
+	 * visited yet by this traversal, and visits them. The subgraphs near
+	 * the root are visited in parallel by the threads of the given pool.
+	 * The caller must hold a garbage collection lock.
+	 *
+	 * @param pool the pool of the threads
+	 * @param ut the table of the nodes
+	 * @param root the edge
+	 * @param maxParallelDepth the depth below which the nodes are visited sequentially
+	 * @return the number of nodes visited
+	 */
+
+	int parallelVisit(ForkJoinPool pool, ResizingAndGarbageCollectedUniqueTable ut, int root, int maxParallelDepth) {
+		return pool.invoke(new ParallelVisit(ut, stamps, epoch, root, 0, maxParallelDepth));
+	}
+
+	/**
+	 * A visit that forks the visit of the high child of the nodes near the
+	 * root. Nodes are claimed by compare-and-swap of their stamp, so that
+	 * each of them is visited by a single task.
+	 */
+
+	@SuppressWarnings("serial")
+	private static class ParallelVisit extends RecursiveTask<Integer> {
+		private final ResizingAndGarbageCollectedUniqueTable ut;
+		private final int[] stamps;
+		private final int epoch;
+		private final int root;
+		private final int depth;
+		private final int maxParallelDepth;
+
+		private ParallelVisit(ResizingAndGarbageCollectedUniqueTable ut, int[] stamps, int epoch, int root, int depth, int maxParallelDepth) {
+			this.ut = ut;
+			this.stamps = stamps;
+			this.epoch = epoch;
+			this.root = root;
+			this.depth = depth;
+			this.maxParallelDepth = maxParallelDepth;
+		}
+
+		@Override
+		protected Integer compute() {
+			int node = ut.node(root);
+			if (!claim(node))
+				return 0;
+
+			if (depth < maxParallelDepth) {
+				ParallelVisit high = new ParallelVisit(ut, stamps, epoch, ut.highAt(node), depth + 1, maxParallelDepth);
+				high.fork();
+				int low = new ParallelVisit(ut, stamps, epoch, ut.lowAt(node), depth + 1, maxParallelDepth).compute();
+				return 1 + low + high.join();
+			}
+
+			int[] stack = new int[256];
+			int top = 0, visited = 1;
+			stack[top++] = ut.highAt(node);
+			stack[top++] = ut.lowAt(node);
+
+			while (top > 0) {
+				node = ut.node(stack[--top]);
+				if (claim(node)) {
+					visited++;
+
+					if (top + 2 > stack.length)
+						stack = Arrays.copyOf(stack, stack.length * 2);
+
+					stack[top++] = ut.highAt(node);
+					stack[top++] = ut.lowAt(node);
+				}
+			}
+
+			return visited;
+		}
+
+		private boolean claim(int node) {
+			if (node < Factory.FIRST_NODE_NUM)
+				return false;
+
+			int stamp = (int) STAMPS.getOpaque(stamps, node);
+			return stamp != epoch && STAMPS.compareAndSet(stamps, node, stamp, epoch);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A unique table that keeps its nodes out of the Java heap, in chunks of
+ * direct memory. A resize only allocates the chunks for the new positions,
+ * hence the nodes are never copied. Moreover, the nodes are not bounded by
+ * the maximal length of an array divided by the size of a node, as they are
+ * when they all lie in a single array.
+ * <p>
+ * Only the nodes leave the heap, though. The hash table is still an array
+ * with an element per node, that a resize reallocates and rebuilds, and a
+ * garbage collection still allocates an array of booleans and an array of
+ * integers with an element per node. Ids are integers as well, hence the
+ * table holds at most {@link #maxSize()} nodes.
+ * <p>
+ * Direct memory is limited by {@code -XX:MaxDirectMemorySize}, that
+ * defaults to the maximal size of the heap.
+ */
+
+class OffHeapUniqueTable extends ResizingAndGarbageCollectedUniqueTable {
+
+	/**
+	 * The logarithm of the number of nodes of a chunk.
+	 */
+
+	private final static int CHUNK_BITS = 16;
+
+	private final static int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private final static int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final static int[] NO_NODES = new int[0];
+
+	/**
+	 * The chunks of the table. Only the array of chunks is copied by a resize.
+	 */
+
+	private volatile IntBuffer[] chunks = new IntBuffer[0];
+
+	OffHeapUniqueTable(int size, int cacheSize, boolean complementEdges, boolean compactNodes, Factory factory) {
+		super(size, cacheSize, complementEdges, compactNodes, factory);
+
+		addChunks(getSize());
+	}
+
+	@Override
+	protected int maxSize() {
+		// the ids of the nodes are int and the hash table is an array
+		return complementEdges ? Integer.MAX_VALUE >> 1 : Integer.MAX_VALUE - 8;
+	}
+
+	@Override
+	protected int[] newNodes(int size) {
+		return NO_NODES;
+	}
+
+	@Override
+	protected void moveNodes(int[] newUt, int newSize) {
+		addChunks(newSize);
+	}
+
+	private void addChunks(int size) {
+		IntBuffer[] chunks = this.chunks;
+		int needed = (int) (((long) size + CHUNK_MASK) >>> CHUNK_BITS);
+
+		if (needed > chunks.length) {
+			IntBuffer[] newChunks = Arrays.copyOf(chunks, needed);
+			for (int pos = chunks.length; pos < needed; pos++)
+				newChunks[pos] = ByteBuffer.allocateDirect(CHUNK_SIZE * getNodeSize() * Integer.BYTES)
+					.order(ByteOrder.nativeOrder()).asIntBuffer();
+
+			this.chunks = newChunks;
+		}
+	}
+
+	private IntBuffer chunk(int node) {
+		return chunks[node >>> CHUNK_BITS];
+	}
+
+	private int index(int node, int offset) {
+		return (node & CHUNK_MASK) * getNodeSize() + offset;
+	}
+
+	@Override
+	protected boolean isVarLowHigh(int id, int var, int low, int high) {
+		IntBuffer chunk = chunk(id);
+		int pos = index(id, HIGH_OFFSET);
+
+		return chunk.get(pos--) == high && chunk.get(pos--) == low && chunk.get(pos) == var;
+	}
+
+	@Override
+	protected int varAt(int node) {
+		return chunk(node).get(index(node, VAR_OFFSET));
+	}
+
+	@Override
+	protected int lowAt(int node) {
+		return chunk(node).get(index(node, LOW_OFFSET));
+	}
+
+	@Override
+	protected int highAt(int node) {
+		return chunk(node).get(index(node, HIGH_OFFSET));
+	}
+
+	@Override
+	protected int next(int id) {
+		return chunk(id).get(index(id, NEXT_OFFSET));
+	}
+
+	@Override
+	protected int hashCodeAux(int id) {
+		if (compactNodes)
+			return 0;
+
+		return chunk(id).get(index(id, HASHCODEAUX_OFFSET));
+	}
+
+	@Override
+	protected int fieldAt(int node, int offset) {
+		return chunk(node).get(index(node, offset));
+	}
+
+	@Override
+	protected int setAtNextPos(int varNumber, int lowNode, int highNode, int next) {
+		int nextPos = this.nextPos++;
+		setFields(nextPos, varNumber, lowNode, highNode, next, compactNodes ? 0 : reserveHashCodeAux(1));
+
+		return nextPos;
+	}
+
+	@Override
+	protected void setAt(int where, int varNumber, int lowNode, int highNode) {
+		setFields(where, varNumber, lowNode, highNode, -1, compactNodes ? 0 : reserveHashCodeAux(1));
+	}
+
+	@Override
+	protected void setNext(int node, int nextNode) {
+		chunk(node).put(index(node, NEXT_OFFSET), nextNode);
+	}
+
+	@Override
+	protected void setVarLowHighHash(int node, int varNumber, int lowNode, int highNode, int hca) {
+		IntBuffer chunk = chunk(node);
+		int pos = index(node, VAR_OFFSET);
+
+		chunk.put(pos++, varNumber);
+		chunk.put(pos++, lowNode);
+		chunk.put(pos++, highNode);
+		if (!compactNodes)
+			chunk.put(++pos, hca);
+	}
+
+	private void setFields(int node, int varNumber, int lowNode, int highNode, int next, int hca) {
+		IntBuffer chunk = chunk(node);
+		int pos = index(node, VAR_OFFSET);
+
+		chunk.put(pos++, varNumber);
+		chunk.put(pos++, lowNode);
+		chunk.put(pos++, highNode);
+		chunk.put(pos++, next);
+		if (!compactNodes)
+			chunk.put(pos, hca);
+	}
+}
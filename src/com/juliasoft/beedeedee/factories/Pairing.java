@@ -0,0 +1,87 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A renaming of variables that is built once and then used for many
+ * replacements. It is translated into the interned renaming of levels
+ * of a factory only once for each order of the variables, so that the
+ * replacements with the same pairing do not look it up again.
+ */
+
+final class Pairing {
+	private final Map<Integer, Integer> renaming = new HashMap<>();
+
+	/**
+	 * The renaming of levels for the last factory and order this pairing
+	 * has been used with, if any.
+	 */
+
+	private Renaming compiled;
+	private Factory compiledFor;
+	private int compiledAtReorder;
+
+	/**
+	 * Renames a variable into another.
+	 */
+
+	synchronized void set(int oldVar, int newVar) {
+		renaming.put(oldVar, newVar);
+		compiled = null;
+	}
+
+	synchronized void clear() {
+		renaming.clear();
+		compiled = null;
+	}
+
+	/**
+	 * @return an unmodifiable view of the renaming of variables
+	 */
+
+	Map<Integer, Integer> asMap() {
+		return Collections.unmodifiableMap(renaming);
+	}
+
+	/**
+	 * Yields the interned renaming of levels of the given factory, under its
+	 * current order. The caller must hold a lock that prevents reorderings.
+	 */
+
+	synchronized Renaming compile(Factory factory) {
+		int reorders = factory.ut.getNumOfReorders();
+
+		if (compiled == null || compiledFor != factory || compiledAtReorder != reorders) {
+			compiled = factory.renamingOf(factory.ut.levelsOf(renaming));
+			compiledFor = factory;
+			compiledAtReorder = reorders;
+		}
+
+		return compiled;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return renaming.toString();
+	}
+}
@@ -0,0 +1,131 @@
+/*
+  Copyright 2014 Julia s.r.l.
+
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.Arrays;
+
+/**
+ * The distribution of the pauses due to the garbage collections of a factory,
+ * since its creation. A pause lasts from the request of all garbage collection
+ * locks to the end of the collection, hence it includes the time spent waiting
+ * for the operations in progress. Pauses are kept in a histogram with a bucket
+ * for each power of two microseconds, hence percentiles are approximated by
+ * the upper bound of their bucket.
+ */
+public final class PauseDistribution {
+
+	/**
+	 * The distribution before the first garbage collection.
+	 */
+	final static PauseDistribution EMPTY = new PauseDistribution(new long[Long.SIZE], 0L, 0L, 0L);
+
+	/**
+	 * The number of pauses of at most {@code 2^i} microseconds but longer than
+	 * {@code 2^(i-1)} microseconds, at position i.
+	 */
+	private final long[] histogram;
+	private final long count;
+	private final long total;
+	private final long max;
+
+	private PauseDistribution(long[] histogram, long count, long total, long max) {
+		this.histogram = histogram;
+		this.count = count;
+		this.total = total;
+		this.max = max;
+	}
+
+	/**
+	 * Yields the distribution that also includes the given pause.
+	 *
+	 * @param pause the duration of the pause, in microseconds
+	 * @return the new distribution
+	 */
+	PauseDistribution add(long pause) {
+		long[] histogram = this.histogram.clone();
+		histogram[bucket(pause)]++;
+
+		return new PauseDistribution(histogram, count + 1, total + pause, Math.max(max, pause));
+	}
+
+	private static int bucket(long pause) {
+		return pause <= 1 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(pause - 1);
+	}
+
+	/**
+	 * @return the number of pauses
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the total duration of the pauses, in microseconds
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the longest pause, in microseconds, or 0 if there was no pause
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the average pause, in microseconds, or 0 if there was no pause
+	 */
+	public double getMean() {
+		return count == 0 ? 0.0 : (double) total / count;
+	}
+
+	/**
+	 * Yields an upper bound of the given percentile of the pauses.
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the duration, in microseconds, that is not exceeded by the given
+	 *         percentage of the pauses, or 0 if there was no pause
+	 */
+	public long getPercentile(double percentile) {
+		if (percentile < 0.0 || percentile > 100.0)
+			throw new IllegalArgumentException("illegal percentile " + percentile);
+
+		long needed = (long) Math.ceil(count * percentile / 100.0), seen = 0;
+		for (int bucket = 0; bucket < histogram.length; bucket++)
+			if ((seen += histogram[bucket]) >= needed && seen > 0)
+				return Math.min(1L << bucket, max);
+
+		return max;
+	}
+
+	/**
+	 * @return the number of pauses of at most {@code 2^i} microseconds but longer
+	 *         than {@code 2^(i-1)} microseconds, at position i
+	 */
+	public long[] getHistogram() {
+		return Arrays.copyOf(histogram, bucket(max) + 1);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d pauses, mean %.0f us, p50 %d us, p99 %d us, max %d us",
+			count, getMean(), getPercentile(50.0), getPercentile(99.0), max);
+	}
+}
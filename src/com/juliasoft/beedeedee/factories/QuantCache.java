@@ -18,17 +18,20 @@
 */
 package com.juliasoft.beedeedee.factories;
 
-import java.util.BitSet;
+import java.util.function.IntUnaryOperator;
 
 /**
- * The cache for existential and universal quantification.
+ * The cache for existential and universal quantification. Each entry holds
+ * the operand, the key of the quantification and the result, where the key
+ * is the identifier of the interned set of quantified variables, shifted to
+ * the left, and its lowest bit is set for existential quantification.
  */
 class QuantCache {
-	private final static int ENTRY_SIZE = 2;
+	private final static int ENTRY_SIZE = 3;
 	private final int[] cache;
-	private final BitSet[] varss;
 	private final int size;
 	private final Object[] locks = new Object[100];
+	private final CacheCounters counters;
 
 	/**
 	 * Constructs a QuantCache of the given size.
@@ -36,16 +39,42 @@ class QuantCache {
 	 * @param size the size of the cache
 	 */
 	QuantCache(int size) {
+		this(size, new CacheCounters());
+	}
+
+	/**
+	 * Constructs a QuantCache of the given size, that updates the given counters.
+	 * 
+	 * @param size the size of the cache
+	 * @param counters the counters of the accesses to the cache
+	 */
+	QuantCache(int size, CacheCounters counters) {
+		this.counters = counters;
 		this.size = size;
 		int arraySize = size * ENTRY_SIZE;
 		this.cache = new int[arraySize];
 		for (int i = 0; i < arraySize; i += ENTRY_SIZE)
 			cache[i] = -1;
-		this.varss = new BitSet[arraySize];
 		for (int pos = 0; pos < locks.length; pos++)
 			locks[pos] = new Object();
 	}
 
+	/**
+	 * @return the counters of the accesses to this cache
+	 */
+	CacheCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Returns the size of this cache.
+	 * 
+	 * @return the size
+	 */
+	int getSize() {
+		return size;
+	}
+
 	/**
 	 * Clears all the entries in this cache.
 	 */
@@ -55,28 +84,75 @@ class QuantCache {
 			cache[i] = -1;
 	}
 
+	/**
+	 * Keeps the entries whose bdds all survived a garbage collection, at the
+	 * position for their new indexes, and discards the others.
+	 * 
+	 * @param relocation yields the new index of a bdd, or -1 if it has been collected
+	 */
+	void remap(IntUnaryOperator relocation) {
+		int[] old = cache.clone();
+		clear();
+
+		for (int pos = 0; pos < old.length; pos += ENTRY_SIZE)
+			if (old[pos] != -1) {
+				int bdd = relocation.applyAsInt(old[pos]), result = relocation.applyAsInt(old[pos + 2]);
+
+				if (bdd >= 0 && result >= 0) {
+					int key = old[pos + 1], newPos = hash(bdd, key);
+					cache[newPos] = bdd;
+					cache[newPos + 1] = key;
+					cache[newPos + 2] = result;
+				}
+			}
+	}
+
+	/**
+	 * Copies into this cache the entries of a smaller cache, at their position
+	 * in this cache. The other cache might be in use by other threads, hence
+	 * each entry is read consistently and those being written are skipped.
+	 * 
+	 * @param other the other cache
+	 */
+	void copyFrom(QuantCache other) {
+		int[] from = other.cache;
+
+		for (int pos = 0; pos < from.length; pos += ENTRY_SIZE)
+			synchronized (other.locks[pos % other.locks.length]) {
+				if (from[pos] != -1)
+					System.arraycopy(from, pos, cache, hash(from[pos], from[pos + 1]), ENTRY_SIZE);
+			}
+	}
+
 	/**
 	 * Gets an entry from this cache.
 	 * 
 	 * @param exist true if it is an existential quantification result
 	 * @param bdd the operand bdd index
-	 * @param vars the var set
-	 * @param hashCodeOfVs the hashCode of the vars set
+	 * @param vars the interned set of the quantified variables
 	 * @return the index of the result, or -1 if not found
 	 */
-	int get(boolean exist, int bdd, BitSet vars, int hashCodeOfVs) {
-		if (exist)
-			bdd = -bdd;
-
-		int pos = hash(bdd, hashCodeOfVs);
+	int get(boolean exist, int bdd, VarSet vars) {
+		int key = key(exist, vars), pos = hash(bdd, key);
 
 		synchronized (locks[pos % locks.length]) {
-			return cache[pos] == bdd && varss[pos++].equals(vars) ? cache[pos] : -1;
+			if (cache[pos] == bdd && cache[pos + 1] == key) {
+				counters.hit();
+				return cache[pos + 2];
+			}
+
+			counters.miss(cache[pos] != -1);
+			return -1;
 		}
 	}
 
-	private int hash(int bdd, int hashCodeOfVs) {
-		return ENTRY_SIZE * (Math.abs(bdd ^ hashCodeOfVs) % size);
+	private static int key(boolean exist, VarSet vars) {
+		return exist ? (vars.id << 1) | 1 : vars.id << 1;
+	}
+
+	private int hash(int bdd, int key) {
+		// identifiers are small and consecutive, hence they are spread first
+		return ENTRY_SIZE * (((bdd ^ key * 0x9E3779B9) & Integer.MAX_VALUE) % size);
 	}
 
 	/**
@@ -84,19 +160,16 @@ class QuantCache {
 	 * 
 	 * @param exist true if it is an existential quantification result
 	 * @param bdd the operand bdd index
-	 * @param vars the var set
-	 * @param hashCodeOfVs the hashCode of the vars set
+	 * @param vars the interned set of the quantified variables
 	 * @param result the computation result
 	 */
-	void put(boolean exist, int bdd, BitSet vars, int hashCodeOfVs, int result) {
-		if (exist)
-			bdd = -bdd;
-
-		int pos = hash(bdd, hashCodeOfVs);
+	void put(boolean exist, int bdd, VarSet vars, int result) {
+		int key = key(exist, vars), pos = hash(bdd, key);
 
 		synchronized (locks[pos % locks.length]) {
-			varss[pos] = vars;
+			counters.put(cache[pos] != -1 && (cache[pos] != bdd || cache[pos + 1] != key));
 			cache[pos++] = bdd;
+			cache[pos++] = key;
 			cache[pos] = result;
 		}
 	}
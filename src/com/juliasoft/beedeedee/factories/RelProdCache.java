@@ -0,0 +1,188 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The cache for relational products (conjunction followed by existential
+ * quantification). Each entry holds the operands, the identifier of the
+ * interned set of quantified variables and the result.
+ */
+class RelProdCache {
+	private final static int ENTRY_SIZE = 4;
+	private final int[] cache;
+	private final int size;
+	private final Object[] locks = new Object[100];
+	private final CacheCounters counters;
+
+	/**
+	 * Constructs a RelProdCache of the given size.
+	 *
+	 * @param size the size of the cache
+	 */
+	RelProdCache(int size) {
+		this(size, new CacheCounters());
+	}
+
+	/**
+	 * Constructs a RelProdCache of the given size, that updates the given counters.
+	 * 
+	 * @param size the size of the cache
+	 * @param counters the counters of the accesses to the cache
+	 */
+	RelProdCache(int size, CacheCounters counters) {
+		this.counters = counters;
+		this.size = size;
+		int arraySize = size * ENTRY_SIZE;
+		this.cache = new int[arraySize];
+		for (int i = 0; i < arraySize; i += ENTRY_SIZE)
+			cache[i] = -1;
+		for (int pos = 0; pos < locks.length; pos++)
+			locks[pos] = new Object();
+	}
+
+	/**
+	 * @return the counters of the accesses to this cache
+	 */
+	CacheCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Returns the size of this cache.
+	 * 
+	 * @return the size
+	 */
+	int getSize() {
+		return size;
+	}
+
+	/**
+	 * Clears all the entries in this cache.
+	 */
+	void clear() {
+		int arraySize = size * ENTRY_SIZE;
+		for (int i = 0; i < arraySize; i += ENTRY_SIZE)
+			cache[i] = -1;
+	}
+
+	/**
+	 * Keeps the entries whose bdds all survived a garbage collection, at the
+	 * position for their new indexes, and discards the others.
+	 * 
+	 * @param relocation yields the new index of a bdd, or -1 if it has been collected
+	 */
+	void remap(IntUnaryOperator relocation) {
+		int[] old = cache.clone();
+		clear();
+
+		for (int pos = 0; pos < old.length; pos += ENTRY_SIZE)
+			if (old[pos] >= 0) {
+				// relocation keeps the order of the indexes, hence the operands stay in normal form
+				int bdd1 = relocation.applyAsInt(old[pos]), bdd2 = relocation.applyAsInt(old[pos + 1]);
+				int result = relocation.applyAsInt(old[pos + 3]);
+
+				if (bdd1 >= 0 && bdd2 >= 0 && result >= 0) {
+					int id = old[pos + 2], newPos = hash(bdd1, bdd2, id) * ENTRY_SIZE;
+					cache[newPos] = bdd1;
+					cache[newPos + 1] = bdd2;
+					cache[newPos + 2] = id;
+					cache[newPos + 3] = result;
+				}
+			}
+	}
+
+	/**
+	 * Copies into this cache the entries of a smaller cache, at their position
+	 * in this cache. The other cache might be in use by other threads, hence
+	 * each entry is read consistently and those being written are skipped.
+	 * 
+	 * @param other the other cache
+	 */
+	void copyFrom(RelProdCache other) {
+		int[] from = other.cache;
+
+		for (int entry = 0, pos = 0; entry < other.size; entry++, pos += ENTRY_SIZE)
+			synchronized (other.locks[entry % other.locks.length]) {
+				if (from[pos] >= 0)
+					System.arraycopy(from, pos, cache, hash(from[pos], from[pos + 1], from[pos + 2]) * ENTRY_SIZE, ENTRY_SIZE);
+			}
+	}
+
+	/**
+	 * Gets an entry from this cache.
+	 *
+	 * @param bdd1 the first operand bdd index
+	 * @param bdd2 the second operand bdd index
+	 * @param vars the interned set of the variables to quantify
+	 * @return the index of the result, or -1 if not found
+	 */
+	int get(int bdd1, int bdd2, VarSet vars) {
+		// the conjunction is symmetrical, hence we keep the operands in a normal form
+		if (bdd1 > bdd2) {
+			int temp = bdd1;
+			bdd1 = bdd2;
+			bdd2 = temp;
+		}
+
+		int entry = hash(bdd1, bdd2, vars.id), pos = entry * ENTRY_SIZE;
+
+		synchronized (locks[entry % locks.length]) {
+			if (cache[pos] == bdd1 && cache[pos + 1] == bdd2 && cache[pos + 2] == vars.id) {
+				counters.hit();
+				return cache[pos + 3];
+			}
+
+			counters.miss(cache[pos] >= 0);
+			return -1;
+		}
+	}
+
+	private int hash(int bdd1, int bdd2, int id) {
+		// identifiers are small and consecutive, hence they are spread first
+		return ((bdd1 ^ (bdd2 << 2) ^ id * 0x9E3779B9) & Integer.MAX_VALUE) % size;
+	}
+
+	/**
+	 * Puts an entry into this cache.
+	 *
+	 * @param bdd1 the first operand bdd index
+	 * @param bdd2 the second operand bdd index
+	 * @param vars the interned set of the variables to quantify
+	 * @param result the computation result
+	 */
+	void put(int bdd1, int bdd2, VarSet vars, int result) {
+		if (bdd1 > bdd2) {
+			int temp = bdd1;
+			bdd1 = bdd2;
+			bdd2 = temp;
+		}
+
+		int entry = hash(bdd1, bdd2, vars.id), pos = entry * ENTRY_SIZE;
+
+		synchronized (locks[entry % locks.length]) {
+			counters.put(cache[pos] >= 0 && (cache[pos] != bdd1 || cache[pos + 1] != bdd2 || cache[pos + 2] != vars.id));
+			cache[pos] = bdd1;
+			cache[pos + 1] = bdd2;
+			cache[pos + 2] = vars.id;
+			cache[pos + 3] = result;
+		}
+	}
+}
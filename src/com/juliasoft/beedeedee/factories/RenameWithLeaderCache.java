@@ -1,14 +1,21 @@
 package com.juliasoft.beedeedee.factories;
 
 import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
 public class RenameWithLeaderCache {
 	private final int[] bdds;
 	private final EquivalenceRelation[] ers;
 	private final int[] results;
 	private final Object[] locks = new Object[100];
+	private final CacheCounters counters;
 
 	RenameWithLeaderCache(int size) {
+		this(size, new CacheCounters());
+	}
+
+	RenameWithLeaderCache(int size, CacheCounters counters) {
+		this.counters = counters;
 		bdds = new int[size];
 		ers = new EquivalenceRelation[size];
 		results = new int[size];
@@ -17,15 +24,72 @@ public class RenameWithLeaderCache {
 			locks[i] = new Object();
 	}
 
+	int getSize() {
+		return bdds.length;
+	}
+
+	CacheCounters getCounters() {
+		return counters;
+	}
+
 	void clear() {
 		Arrays.fill(bdds, -1);
 	}
 
+	/**
+	 * Keeps the entries whose bdds all survived a garbage collection, at the
+	 * position for their new indexes, and discards the others.
+	 * 
+	 * @param relocation yields the new index of a bdd, or -1 if it has been collected
+	 */
+	void remap(IntUnaryOperator relocation) {
+		int[] oldBdds = bdds.clone(), oldResults = results.clone();
+		EquivalenceRelation[] oldErs = ers.clone();
+		clear();
+
+		for (int pos = 0; pos < oldBdds.length; pos++)
+			if (oldBdds[pos] != -1) {
+				int bdd = relocation.applyAsInt(oldBdds[pos]), result = relocation.applyAsInt(oldResults[pos]);
+
+				if (bdd >= 0 && result >= 0) {
+					int newPos = hash(bdd, oldErs[pos]);
+					bdds[newPos] = bdd;
+					ers[newPos] = oldErs[pos];
+					results[newPos] = result;
+				}
+			}
+	}
+
+	/**
+	 * Copies into this cache the entries of a smaller cache, at their position
+	 * in this cache. The other cache might be in use by other threads, hence
+	 * each entry is read consistently and those being written are skipped.
+	 * 
+	 * @param other the other cache
+	 */
+	void copyFrom(RenameWithLeaderCache other) {
+		for (int pos = 0; pos < other.bdds.length; pos++)
+			synchronized (other.locks[pos % other.locks.length]) {
+				if (other.bdds[pos] != -1) {
+					int newPos = hash(other.bdds[pos], other.ers[pos]);
+					bdds[newPos] = other.bdds[pos];
+					ers[newPos] = other.ers[pos];
+					results[newPos] = other.results[pos];
+				}
+			}
+	}
+
 	public int get(int bdd, EquivalenceRelation er) {
 		int pos = hash(bdd, er);
 
 		synchronized (locks[pos % locks.length]) {
-			return bdds[pos] == bdd && ers[pos] == er ? results[pos] : -1;
+			if (bdds[pos] == bdd && ers[pos] == er) {
+				counters.hit();
+				return results[pos];
+			}
+
+			counters.miss(bdds[pos] != -1);
+			return -1;
 		}
 	}
 
@@ -33,6 +97,7 @@ public class RenameWithLeaderCache {
 		int pos = hash(bdd, er);
 
 		synchronized (locks[pos % locks.length]) {
+			counters.put(bdds[pos] != -1 && (bdds[pos] != bdd || ers[pos] != er));
 			bdds[pos] = bdd;
 			ers[pos] = er;
 			results[pos] = res;
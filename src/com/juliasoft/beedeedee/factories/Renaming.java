@@ -0,0 +1,161 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A renaming of levels interned by a factory, so that the cache of the
+ * replacements identifies it by a small integer rather than by comparing
+ * maps. Identifiers are never reused, hence an identifier denotes the same
+ * renaming for the whole life of the factory.
+ */
+
+final class Renaming {
+
+	/**
+	 * The new level of each level, or -1 for the levels that are not renamed.
+	 * The last element, if any, is not -1, so that equal renamings have
+	 * equal arrays.
+	 */
+
+	private final int[] newLevels;
+
+	/**
+	 * The number of levels that are actually renamed.
+	 */
+
+	private final int renamed;
+
+	/**
+	 * True if the renamed levels keep their order, that is, a deeper
+	 * level is renamed into a deeper level.
+	 */
+
+	final boolean monotone;
+
+	final int id;
+
+	/**
+	 * Builds a renaming that is not interned yet, hence has no identifier.
+	 *
+	 * @param levels the new level of each renamed level
+	 */
+
+	Renaming(Map<Integer, Integer> levels) {
+		int length = 0;
+		for (Map.Entry<Integer, Integer> entry: levels.entrySet()) {
+			int level = entry.getKey();
+			if (level != entry.getValue())
+				length = Math.max(length, level + 1);
+		}
+
+		this.newLevels = new int[length];
+		Arrays.fill(newLevels, -1);
+		int renamed = 0;
+		for (Map.Entry<Integer, Integer> entry: levels.entrySet()) {
+			int level = entry.getKey(), newLevel = entry.getValue();
+			if (level != newLevel) {
+				newLevels[level] = newLevel;
+				renamed++;
+			}
+		}
+
+		this.renamed = renamed;
+		this.monotone = isMonotone(newLevels);
+		this.id = -1;
+	}
+
+	private Renaming(Renaming other, int id) {
+		this.newLevels = other.newLevels;
+		this.renamed = other.renamed;
+		this.monotone = other.monotone;
+		this.id = id;
+	}
+
+	private static boolean isMonotone(int[] newLevels) {
+		int lastNewLevel = -1;
+		for (int newLevel: newLevels)
+			if (newLevel >= 0) {
+				if (newLevel <= lastNewLevel)
+					return false;
+
+				lastNewLevel = newLevel;
+			}
+
+		return true;
+	}
+
+	/**
+	 * Yields this same renaming, with the given identifier.
+	 */
+
+	Renaming withId(int id) {
+		return new Renaming(this, id);
+	}
+
+	/**
+	 * Determines if this renaming renames levels as the given map does.
+	 * This is cheaper than building a renaming from the map and then
+	 * looking it up.
+	 */
+
+	boolean matches(Map<Integer, Integer> levels) {
+		int renamed = 0;
+		for (Map.Entry<Integer, Integer> entry: levels.entrySet()) {
+			int level = entry.getKey(), newLevel = entry.getValue();
+			if (level != newLevel) {
+				if (level >= newLevels.length || newLevels[level] != newLevel)
+					return false;
+
+				renamed++;
+			}
+		}
+
+		return renamed == this.renamed;
+	}
+
+	/**
+	 * Yields the level that replaces the given one.
+	 *
+	 * @param level the level
+	 * @return its new level, that is {@code level} itself if it is not renamed
+	 */
+
+	int newLevel(int level) {
+		int newLevel;
+		return level < newLevels.length && (newLevel = newLevels[level]) >= 0 ? newLevel : level;
+	}
+
+	/**
+	 * Two renamings are equal if they rename the same levels in the same way,
+	 * whatever their identifiers are. This is only used for interning them.
+	 */
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Renaming && Arrays.equals(newLevels, ((Renaming) other).newLevels);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(newLevels);
+	}
+}
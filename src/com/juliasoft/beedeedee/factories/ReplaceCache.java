@@ -18,18 +18,18 @@
 */
 package com.juliasoft.beedeedee.factories;
 
-import java.util.Map;
+import java.util.function.IntUnaryOperator;
 
 /**
- * The cache for replace operations.
+ * The cache for replace operations. Each entry holds the operand, the
+ * identifier of the interned renaming and the result.
  */
 class ReplaceCache {
-	private final static int ENTRY_SIZE = 2;
+	private final static int ENTRY_SIZE = 3;
 	private final int[] cache;
-	@SuppressWarnings("rawtypes")
-	private final Map[] renamings;
 	private final int size;
 	private final Object[] locks = new Object[100];
+	private final CacheCounters counters;
 	
 	/**
 	 * Constructs a ReplaceCache of the given size.
@@ -37,16 +37,42 @@ class ReplaceCache {
 	 * @param size the size of the cache
 	 */
 	ReplaceCache(int size) {
+		this(size, new CacheCounters());
+	}
+
+	/**
+	 * Constructs a ReplaceCache of the given size, that updates the given counters.
+	 * 
+	 * @param size the size of the cache
+	 * @param counters the counters of the accesses to the cache
+	 */
+	ReplaceCache(int size, CacheCounters counters) {
+		this.counters = counters;
 		this.size = size;
 		int arraySize = size * ENTRY_SIZE;
 		this.cache = new int[arraySize];
 		for (int i = 0; i < arraySize; i += ENTRY_SIZE)
 			cache[i] = -1;
-		renamings = new Map[arraySize];
 		for (int pos = 0; pos < locks.length; pos++)
 			locks[pos] = new Object();
 	}
 	
+	/**
+	 * @return the counters of the accesses to this cache
+	 */
+	CacheCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Returns the size of this cache.
+	 * 
+	 * @return the size
+	 */
+	int getSize() {
+		return size;
+	}
+
 	/**
 	 * Clears all the entries in this cache.
 	 */
@@ -56,40 +82,86 @@ class ReplaceCache {
 			cache[i] = -1;
 	}
 
+	/**
+	 * Keeps the entries whose bdds all survived a garbage collection, at the
+	 * position for their new indexes, and discards the others.
+	 * 
+	 * @param relocation yields the new index of a bdd, or -1 if it has been collected
+	 */
+	void remap(IntUnaryOperator relocation) {
+		int[] old = cache.clone();
+		clear();
+
+		for (int pos = 0; pos < old.length; pos += ENTRY_SIZE)
+			if (old[pos] >= 0) {
+				int bdd = relocation.applyAsInt(old[pos]), result = relocation.applyAsInt(old[pos + 2]);
+
+				if (bdd >= 0 && result >= 0) {
+					int id = old[pos + 1], newPos = hash(bdd, id);
+					cache[newPos] = bdd;
+					cache[newPos + 1] = id;
+					cache[newPos + 2] = result;
+				}
+			}
+	}
+
+	/**
+	 * Copies into this cache the entries of a smaller cache, at their position
+	 * in this cache. The other cache might be in use by other threads, hence
+	 * each entry is read consistently and those being written are skipped.
+	 * 
+	 * @param other the other cache
+	 */
+	void copyFrom(ReplaceCache other) {
+		int[] from = other.cache;
+
+		for (int pos = 0; pos < from.length; pos += ENTRY_SIZE)
+			synchronized (other.locks[pos % other.locks.length]) {
+				if (from[pos] >= 0)
+					System.arraycopy(from, pos, cache, hash(from[pos], from[pos + 1]), ENTRY_SIZE);
+			}
+	}
+
 	/**
 	 * Gets an entry from this cache.
 	 * 
 	 * @param bdd the operand bdd index
-	 * @param renaming a map for variable renaming
-	 * @param hashOfRenaming the hashCode of the renaming map
+	 * @param renaming the interned renaming of levels
 	 * @return the index of the result, or -1 if not found
 	 */
-	int get(int bdd, Map<Integer, Integer> renaming, int hashOfRenaming) {
-		int pos = hash(bdd, hashOfRenaming);
+	int get(int bdd, Renaming renaming) {
+		int id = renaming.id, pos = hash(bdd, id);
 
 		synchronized (locks[pos % locks.length]) {
-			return cache[pos] == bdd && renaming.equals(renamings[pos++]) ? cache[pos] : -1;
+			if (cache[pos] == bdd && cache[pos + 1] == id) {
+				counters.hit();
+				return cache[pos + 2];
+			}
+
+			counters.miss(cache[pos] >= 0);
+			return -1;
 		}
 	}
 
-	private int hash(int bdd, int hashOfRenaming) {
-		return ENTRY_SIZE * (Math.abs((bdd ^ hashOfRenaming)) % size);
+	private int hash(int bdd, int id) {
+		// identifiers are small and consecutive, hence they are spread first
+		return ENTRY_SIZE * (((bdd ^ id * 0x9E3779B9) & Integer.MAX_VALUE) % size);
 	}
 
 	/**
 	 * Puts an entry into this cache.
 	 * 
 	 * @param bdd the operand bdd index
-	 * @param renaming a map for variable renaming
+	 * @param renaming the interned renaming of levels
 	 * @param result the computation result
-	 * @param hashOfRenaming the hashCode of the renaming map
 	 */
-	void put(int bdd, Map<Integer, Integer> renaming, int result, int hashOfRenaming) {
-		int pos = hash(bdd, hashOfRenaming);
+	void put(int bdd, Renaming renaming, int result) {
+		int id = renaming.id, pos = hash(bdd, id);
 
 		synchronized (locks[pos % locks.length]) {
-			cache[pos] = bdd;
-			renamings[pos++] = renaming;
+			counters.put(cache[pos] >= 0 && (cache[pos] != bdd || cache[pos + 1] != id));
+			cache[pos++] = bdd;
+			cache[pos++] = id;
 			cache[pos] = result;
 		}
 	}
@@ -18,13 +18,24 @@
 */
 package com.juliasoft.beedeedee.factories;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.IntStream;
 
 import com.juliasoft.beedeedee.factories.Factory.GarbageCollectionListener;
+import com.juliasoft.beedeedee.factories.Factory.ReorderListener;
 import com.juliasoft.beedeedee.factories.Factory.ResizeListener;
 
 public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
@@ -64,6 +75,17 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 
 	private final AtomicInteger hashCodeAuxCounter = new AtomicInteger();
 
+	/**
+	 * Reserves a range of consecutive unique identifiers for new nodes.
+	 *
+	 * @param count the size of the range
+	 * @return the first identifier of the range
+	 */
+
+	final int reserveHashCodeAux(int count) {
+		return hashCodeAuxCounter.getAndAdd(count);
+	}
+
 	/**
 	 * The number of resize operations performed so far.
 	 */
@@ -76,7 +98,40 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 	 * The number of garbage collections performed so far.
 	 */
 
-	private int numOfGCs;
+	private volatile int numOfGCs;
+
+	/**
+	 * The distribution of the pauses of the garbage collections performed so far.
+	 */
+
+	private volatile PauseDistribution pauses = PauseDistribution.EMPTY;
+
+	/**
+	 * True if garbage collection keeps the entries of the caches whose bdds
+	 * all survived, instead of clearing the caches.
+	 */
+
+	private volatile boolean remapCachesOnGC;
+
+	/**
+	 * The size of the computation cache from which the caches are translated
+	 * or copied in parallel.
+	 */
+
+	private final static int MIN_CACHE_SIZE_FOR_PARALLELISM = 200000;
+
+	/**
+	 * The number of nodes from which the hash table is rebuilt, and the table
+	 * compacted, in parallel.
+	 */
+
+	private final static int MIN_NODES_FOR_PARALLELISM = 600000;
+
+	/**
+	 * The number of consecutive nodes that a parallel compaction handles as a single task.
+	 */
+
+	private final static int COMPACTION_SLICE = 1 << 15;
 
 	/**
 	 * The garbage collection listener, if any.
@@ -99,7 +154,15 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 	private int nextGCLocks;
 
 	ResizingAndGarbageCollectedUniqueTable(int size, int cacheSize, Factory factory) {
-		super(size, cacheSize);
+		this(size, cacheSize, false, factory);
+	}
+
+	ResizingAndGarbageCollectedUniqueTable(int size, int cacheSize, boolean complementEdges, Factory factory) {
+		this(size, cacheSize, complementEdges, false, factory);
+	}
+
+	ResizingAndGarbageCollectedUniqueTable(int size, int cacheSize, boolean complementEdges, boolean compactNodes, Factory factory) {
+		super(size, cacheSize, complementEdges, compactNodes);
 
 		for (int pos = 0; pos < getLocks.length; pos++)
 			getLocks[pos] = new Object();
@@ -114,7 +177,7 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 	}
 
 	@Override
-	public final int get(int var, int low, int high) {
+	protected int getNode(int var, int low, int high) {
 		do {
 			int size = this.size, pos = hash(var, low, high, size);
 
@@ -142,12 +205,13 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 		int bin = H[pos];
 
 		if (bin < 0) {	// empty bin, created node is first
+			int size = this.size;
 			int allocationPoint = nextPos(myLock);
 			setAt(allocationPoint, var, low, high);
-			// recompute hash, could have been changed by intervening resize
-			// triggered by current position request
-			pos = hash(var, low, high);
-			return H[pos] = allocationPoint;
+			if (size == this.size)
+				return H[pos] = allocationPoint;
+			else
+				return linkAfterResize(allocationPoint, var, low, high);
 		}
 		else	// append to collision list
 			while (true) {
@@ -156,14 +220,30 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 
 				int old = bin;
 				if ((bin = next(bin)) < 0) {
+					int size = this.size;
 					int allocationPoint = nextPos(myLock);
 					setAt(allocationPoint, var, low, high);
-					setNext(old, allocationPoint);
+					if (size == this.size)
+						setNext(old, allocationPoint);
+					else
+						linkAfterResize(allocationPoint, var, low, high);
+
 					return allocationPoint;
 				}
 			}
 	}
 
+	/**
+	 * Links a new node in front of its collision list, when a resize, triggered
+	 * by the request of its position, has rebuilt the collision lists in the meanwhile.
+	 */
+
+	private int linkAfterResize(int node, int var, int low, int high) {
+		int pos = hash(var, low, high);
+		setNext(node, H[pos]);
+		return H[pos] = node;
+	}
+
 	private int getOptimistic(int var, int low, int high, int pos) {
 		int bin;
 
@@ -208,7 +288,21 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 		}
 	}
 
-	private boolean isResizeInProgress() {
+	/**
+	 * @return true if a resize is in progress
+	 */
+
+	final boolean isResizing() {
+		return resizeInProgress;
+	}
+
+	/**
+	 * Checks if a resize is in progress and, if not, declares that the caller will start one.
+	 *
+	 * @return true if a resize was already in progress
+	 */
+
+	boolean isResizeInProgress() {
 		synchronized (resizeInProgressLock) {
 			if (resizeInProgress)
 				return true;
@@ -219,16 +313,36 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 		}
 	}
 
-	private void resize() {
+	/**
+	 * Resizes the table. The caller must have found that no other resize is in progress.
+	 */
+
+	void resize() {
 		// we precompute as much as we can outside the critical section
 		ResizeData data = new ResizeData(this);
 
-		lockAllAndResize(0, data);
+		resizeExclusively(data);
 
 		// and after it
 		postResize(data);
 	}
 
+	/**
+	 * @return the number of positions where the current thread can still create nodes without a resize
+	 */
+
+	int freePositions() {
+		return size - nextPos;
+	}
+
+	/**
+	 * Performs the resize while no other thread is inserting nodes into the table.
+	 */
+
+	void resizeExclusively(ResizeData data) {
+		lockAllAndResize(0, data);
+	}
+
 	private void lockAllAndResize(int pos, ResizeData data) {
 		if (pos < getLocks.length)
 			synchronized (getLocks[pos]) {
@@ -238,10 +352,8 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 				// more threads waiting on the same lock
 				getLocks[pos].notifyAll();
 			}
-		else {
+		else
 			innerResize(data);
-			resizeInProgress = false;
-		}
 	}
 
 	protected void setAt(int where, int varNumber, int lowNode, int highNode) {
@@ -252,7 +364,8 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 		table[pos++] = lowNode;
 		table[pos++] = highNode;
 		table[pos++] = -1;
-		table[pos] = hashCodeAuxCounter.getAndIncrement();
+		if (!compactNodes)
+			table[pos] = hashCodeAuxCounter.getAndIncrement();
 	}
 
 	@Override
@@ -279,10 +392,31 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 		}
 	}
 
+	/**
+	 * @return the number of garbage collections performed so far, including
+	 *         those performed by the reorderings
+	 */
+
+	final int getNumOfGCs() {
+		return numOfGCs;
+	}
+
+	/**
+	 * @return the number of reorderings performed so far
+	 */
+
+	final int getNumOfReorders() {
+		return numOfReorders;
+	}
+
 	void setGarbageCollectionListener(GarbageCollectionListener listener) {
 		this.gcListener = listener;
 	}
 
+	PauseDistribution getGCPauses() {
+		return pauses;
+	}
+
 	void setResizeListener(ResizeListener listener) {
 		this.resizeListener = listener;
 	}
@@ -301,6 +435,10 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 				resize();
 
 			gcRequired = false;
+
+			// the table might have grown enough to deserve a reordering
+			if (autoReorder && nextPos >= reorderThreshold)
+				reorder();
 		}
 	}
 
@@ -317,9 +455,32 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 	}
 
 	private boolean getAllLocksAndGC(int pos) {
+		// the pause starts when the operations in progress must be waited for
+		long pauseStart = System.nanoTime();
+
 		for (ReentrantLock lock: gcLocks)
 			lock.lock();
 
+		int collected = collectGarbage(pauseStart, remapCachesOnGC);
+
+		for (ReentrantLock lock: gcLocks)
+			lock.unlock();
+
+		return collected > nextPos * minFreeNodes;
+	}
+
+	/**
+	 * Collects the garbage nodes of this table. The caller must hold all the
+	 * garbage collection locks.
+	 *
+	 * @param pauseStart the time when the operations of the factory were stopped,
+	 *                   as given by {@link System#nanoTime()}
+	 * @param remapCaches true if the entries of the caches about surviving nodes
+	 *                    must be kept, false if the caches must be cleared
+	 * @return the number of collected nodes
+	 */
+
+	private int collectGarbage(long pauseStart, boolean remapCaches) {
 		int size = getSize();
 		long start = System.currentTimeMillis();
 
@@ -331,26 +492,25 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 		boolean[] aliveNodes = new boolean[size];
 		factory.markAliveNodes(aliveNodes);
 
-		int collected = compactTable(aliveNodes);
-	
-		// update hash table
-		for (int i = H.length - 1; i >= 0; i--)
-			H[i] = -1;
+		// compaction rebuilds the hash table as well
+		int[] newPositions = new int[size];
+		int collected = compactTable(aliveNodes, newPositions);
 
-		updateHashTable();
+		if (remapCaches)
+			remapCaches(newPositions);
+		else
+			clearCaches();
 
 		long gcTime = System.currentTimeMillis() - start;
 		totalGCTime += gcTime;
 		numOfGCs++;
+		PauseDistribution pauses = this.pauses = this.pauses.add((System.nanoTime() - pauseStart) / 1000);
 
 		listener = gcListener;
 		if (listener != null)
-			listener.onStop(numOfGCs, size, size - nextPos, gcTime, totalGCTime);
-
-		for (ReentrantLock lock: gcLocks)
-			lock.unlock();
+			listener.onStop(numOfGCs, size, size - nextPos, gcTime, totalGCTime, pauses);
 
-		return collected > nextPos * minFreeNodes;
+		return collected;
 	}
 
 	protected void scheduleGC() {
@@ -419,30 +579,747 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 		return oldMinFreeNodes;
 	}
 
-	private class ResizeData {
+	/*
+	 * Variable reordering
+	 */
+
+	/**
+	 * The minimal number of nodes that triggers an automatic reordering.
+	 */
+
+	private final static int MIN_NODES_FOR_AUTO_REORDER = 10000;
+
+	/**
+	 * The maximal growth of the table that is tolerated while sifting a
+	 * variable, with respect to the best size found so far for that variable.
+	 */
+
+	private final static double MAX_GROWTH_WHILE_SIFTING = 1.2;
+
+	/**
+	 * The level of each variable and the variable at each level. They are
+	 * {@code null} until the first reordering. Variables and levels beyond
+	 * the end of these arrays have never been reordered, hence their level
+	 * coincides with their number. They are only modified while holding all
+	 * garbage collection locks.
+	 */
+
+	private int[] var2level, level2var;
+
+	/**
+	 * The blocks of variables that must be kept adjacent when sifting.
+	 */
+
+	private final List<BitSet> varBlocks = new ArrayList<>();
+
+	/**
+	 * True if reordering is performed automatically when the number of nodes
+	 * has doubled since the last reordering.
+	 */
+
+	private volatile boolean autoReorder;
+
+	/**
+	 * The number of nodes that triggers the next automatic reordering.
+	 */
+
+	private volatile int reorderThreshold;
+
+	private long totalReorderTime;
+
+	/**
+	 * The number of reorderings performed so far.
+	 */
+
+	private volatile int numOfReorders;
+
+	/**
+	 * The reorder listener, if any.
+	 */
+
+	private ReorderListener reorderListener;
+
+	void setReorderListener(ReorderListener listener) {
+		this.reorderListener = listener;
+	}
+
+	/**
+	 * Returns the level of the given variable in the current order.
+	 *
+	 * @param var the variable
+	 * @return its level
+	 */
+
+	final int levelOfVar(int var) {
+		int[] var2level = this.var2level;
+		return var2level != null && var < var2level.length ? var2level[var] : var;
+	}
+
+	/**
+	 * Returns the variable at the given level in the current order.
+	 *
+	 * @param level the level
+	 * @return the variable at that level
+	 */
+
+	final int varOfLevel(int level) {
+		int[] level2var = this.level2var;
+		return level2var != null && level < level2var.length ? level2var[level] : level;
+	}
+
+	/**
+	 * Translates a set of variables into the set of their levels.
+	 *
+	 * @param vars the set of variables
+	 * @return the set of their levels. This is {@code vars} itself if
+	 *         no reordering has been performed so far
+	 */
+
+	final BitSet levelsOf(BitSet vars) {
+		if (var2level == null)
+			return vars;
+
+		BitSet levels = new BitSet();
+		for (int var = vars.nextSetBit(0); var >= 0; var = vars.nextSetBit(var + 1))
+			levels.set(levelOfVar(var));
+
+		return levels;
+	}
+
+	/**
+	 * Translates a renaming of variables into the corresponding renaming of levels.
+	 *
+	 * @param renaming the renaming of variables
+	 * @return the renaming of levels. This is {@code renaming} itself if
+	 *         no reordering has been performed so far
+	 */
+
+	final Map<Integer, Integer> levelsOf(Map<Integer, Integer> renaming) {
+		if (var2level == null)
+			return renaming;
+
+		Map<Integer, Integer> levels = new HashMap<>();
+		for (Map.Entry<Integer, Integer> entry: renaming.entrySet())
+			levels.put(levelOfVar(entry.getKey()), levelOfVar(entry.getValue()));
+
+		return levels;
+	}
+
+	/**
+	 * Returns the current order of the variables, from the topmost.
+	 *
+	 * @param numberOfVars the number of variables to report
+	 * @return the variable at each level, up to {@code numberOfVars}
+	 */
+
+	int[] getVarOrder(int numberOfVars) {
+		lockAll();
+
+		try {
+			int[] order = new int[numberOfVars];
+			for (int level = 0; level < numberOfVars; level++)
+				order[level] = varOfLevel(level);
+
+			return order;
+		}
+		finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Enables or disables automatic reordering.
+	 *
+	 * @param autoReorder true if and only if reordering must be performed automatically
+	 * @return the previous setting
+	 */
+
+	boolean setAutoReorder(boolean autoReorder) {
+		boolean old = this.autoReorder;
+		reorderThreshold = 2 * Math.max(nextPos, MIN_NODES_FOR_AUTO_REORDER);
+		this.autoReorder = autoReorder;
+
+		return old;
+	}
+
+	/**
+	 * Enables or disables the translation of the caches at garbage collection.
+	 *
+	 * @param remapCachesOnGC true if and only if garbage collection must keep the
+	 *                        entries of the caches whose bdds all survived
+	 * @return the previous setting
+	 */
+
+	boolean setRemapCachesOnGC(boolean remapCachesOnGC) {
+		boolean old = this.remapCachesOnGC;
+		this.remapCachesOnGC = remapCachesOnGC;
+
+		return old;
+	}
+
+	/**
+	 * Declares a block of variables that must be kept adjacent, in their
+	 * current relative order, when sifting. Blocks cannot overlap.
+	 *
+	 * @param vars the variables in the block. They must be at adjacent levels
+	 */
+
+	void addVarBlock(BitSet vars) {
+		lockAll();
+
+		try {
+			if (vars.isEmpty())
+				throw new IllegalArgumentException("empty block of variables");
+
+			for (BitSet block: varBlocks)
+				if (block.intersects(vars))
+					throw new IllegalArgumentException("variable blocks cannot overlap");
+
+			int first = Integer.MAX_VALUE, last = -1;
+			for (int var = vars.nextSetBit(0); var >= 0; var = vars.nextSetBit(var + 1)) {
+				first = Math.min(first, levelOfVar(var));
+				last = Math.max(last, levelOfVar(var));
+			}
+
+			if (last - first + 1 != vars.cardinality())
+				throw new IllegalArgumentException("the variables of a block must be at adjacent levels");
+
+			varBlocks.add((BitSet) vars.clone());
+		}
+		finally {
+			unlockAll();
+		}
+	}
+
+	void clearVarBlocks() {
+		lockAll();
+		varBlocks.clear();
+		unlockAll();
+	}
+
+	/**
+	 * Reorders the variables of this table by sifting.
+	 */
+
+	void reorder() {
+		reorder(0, Reorderer::sift);
+	}
+
+	/**
+	 * Exchanges the levels of two variables.
+	 *
+	 * @param var1 the first variable
+	 * @param var2 the second variable
+	 */
+
+	void swapVars(int var1, int var2) {
+		reorder(Math.max(var1, var2) + 1, reorderer -> reorderer.swapVars(var1, var2));
+	}
+
+	/**
+	 * Sets the order of the variables.
+	 *
+	 * @param order the variable that must be put at each level, from the topmost.
+	 *              It must be a permutation of {@code 0...order.length-1}
+	 */
+
+	void setVarOrder(int[] order) {
+		BitSet seen = new BitSet();
+		for (int var: order)
+			if (var < 0 || var >= order.length || seen.get(var))
+				throw new IllegalArgumentException("the order is not a permutation of 0.." + (order.length - 1));
+			else
+				seen.set(var);
+
+		reorder(order.length, reorderer -> reorderer.setVarOrder(order));
+	}
+
+	private void reorder(int minNumberOfLevels, Consumer<Reorderer> reordering) {
+		lockAll();
+
+		try {
+			long start = System.currentTimeMillis();
+
+			// the nodes of the table must be alive when computing their reference counts
+			collectGarbage(System.nanoTime(), false);
+
+			int nodesBefore = nextPos;
+			ReorderListener listener = reorderListener;
+			if (listener != null)
+				listener.onStart(numOfReorders, nodesBefore, totalReorderTime);
+
+			reordering.accept(new Reorderer(minNumberOfLevels));
+			factory.invalidateOrderDependentCaches();
+
+			// the swaps leave dead nodes behind and make the caches stale
+			collectGarbage(System.nanoTime(), false);
+
+			reorderThreshold = 2 * Math.max(nextPos, MIN_NODES_FOR_AUTO_REORDER);
+			long reorderTime = System.currentTimeMillis() - start;
+			totalReorderTime += reorderTime;
+			numOfReorders++;
+
+			listener = reorderListener;
+			if (listener != null)
+				listener.onStop(numOfReorders, nodesBefore, nextPos, reorderTime, totalReorderTime);
+		}
+		finally {
+			unlockAll();
+		}
+	}
+
+	private void lockAll() {
+		for (ReentrantLock lock: gcLocks)
+			lock.lock();
+	}
+
+	private void unlockAll() {
+		for (ReentrantLock lock: gcLocks)
+			lock.unlock();
+	}
+
+	/**
+	 * The state of a reordering. Levels are exchanged in place: nodes keep
+	 * their index and their meaning, so that no bdd needs to be updated.
+	 * Reference counts are kept for each node, so that nodes that are no
+	 * longer reachable are detected and removed from the hash table.
+	 */
+
+	private class Reorderer {
+
+		/**
+		 * The number of levels that get reordered. Levels beyond this are not affected.
+		 */
+
+		private final int numberOfLevels;
+
+		/**
+		 * The number of references to each node, from other nodes or from outside.
+		 */
+
+		private int[] refs;
+
+		/**
+		 * The nodes at each level. They might include nodes that have died or moved
+		 * since, which are recognized since their variable is not that level anymore.
+		 */
+
+		private final int[][] nodesAt;
+
+		private final int[] countAt;
+
+		/**
+		 * The block of each variable, or -1 if it does not belong to any block.
+		 */
+
+		private final int[] blockOf;
+
+		/**
+		 * The number of alive nodes in the table.
+		 */
+
+		private int aliveNodes;
+
+		private Reorderer(int minNumberOfLevels) {
+			int numberOfLevels = Math.max(minNumberOfLevels, factory.getMaxVar() + 1);
+			if (var2level != null)
+				numberOfLevels = Math.max(numberOfLevels, var2level.length);
+
+			for (int node = factory.NUMBER_OF_PREALLOCATED_NODES; node < nextPos; node++)
+				numberOfLevels = Math.max(numberOfLevels, varAt(node) + 1);
+
+			for (BitSet block: varBlocks)
+				numberOfLevels = Math.max(numberOfLevels, block.length());
+
+			this.numberOfLevels = numberOfLevels;
+
+			// levels that were never reordered are the identity
+			int oldLength = var2level == null ? 0 : var2level.length;
+			if (oldLength < numberOfLevels) {
+				var2level = var2level == null ? new int[numberOfLevels] : Arrays.copyOf(var2level, numberOfLevels);
+				level2var = level2var == null ? new int[numberOfLevels] : Arrays.copyOf(level2var, numberOfLevels);
+				for (int var = oldLength; var < numberOfLevels; var++)
+					var2level[var] = level2var[var] = var;
+			}
+
+			this.blockOf = new int[numberOfLevels];
+			Arrays.fill(blockOf, -1);
+			for (int pos = 0; pos < varBlocks.size(); pos++) {
+				BitSet block = varBlocks.get(pos);
+				for (int var = block.nextSetBit(0); var >= 0; var = block.nextSetBit(var + 1))
+					blockOf[var] = pos;
+			}
+
+			this.nodesAt = new int[numberOfLevels][];
+			this.countAt = new int[numberOfLevels];
+			this.refs = new int[size];
+
+			for (int node = Factory.FIRST_NODE_NUM; node < nextPos; node++) {
+				int level = varAt(node);
+				if (level < numberOfLevels)
+					add(node, level);
+
+				refs[node(lowAt(node))]++;
+				refs[node(highAt(node))]++;
+			}
+
+			factory.countExternalReferences(refs);
+			this.aliveNodes = nextPos;
+		}
+
+		private void add(int node, int level) {
+			int[] nodes = nodesAt[level];
+			if (nodes == null)
+				nodes = nodesAt[level] = new int[16];
+			else if (countAt[level] == nodes.length)
+				nodes = nodesAt[level] = Arrays.copyOf(nodes, nodes.length * 2);
+
+			nodes[countAt[level]++] = node;
+		}
+
+		/**
+		 * Removes the nodes that are no longer at the given level from its list.
+		 */
+
+		private void purge(int level) {
+			int[] nodes = nodesAt[level];
+			int count = 0;
+
+			for (int pos = 0; pos < countAt[level]; pos++)
+				if (varAt(nodes[pos]) == level)
+					nodes[count++] = nodes[pos];
+
+			countAt[level] = count;
+		}
+
+		/**
+		 * Exchanges the variables at the given level and at the level just below it.
+		 */
+
+		private void swap(int upper) {
+			int lower = upper + 1;
+			purge(upper);
+			purge(lower);
+
+			int[] upperNodes = nodesAt[upper], lowerNodes = nodesAt[lower];
+			int upperCount = countAt[upper], lowerCount = countAt[lower];
+			nodesAt[upper] = nodesAt[lower] = null;
+			countAt[upper] = countAt[lower] = 0;
+
+			// each node at the upper level might create two nodes at the lower level:
+			// the table cannot be resized in the middle of a swap, since some nodes
+			// are temporarily missing from the hash table
+			ensureFree(2 * upperCount);
+
+			// the cofactors of the nodes at the upper level, wrt the two variables;
+			// they are edges, hence the accessors take their complement bit into account
+			int[] cofactors = new int[4 * upperCount];
+			for (int pos = 0, cursor = 0; pos < upperCount; pos++, cursor += 4) {
+				int node = upperNodes[pos], low = lowAt(node), high = highAt(node);
+				unlink(node);
+
+				if (var(low) == lower) {
+					cofactors[cursor] = low(low);
+					cofactors[cursor + 1] = high(low);
+				}
+				else
+					cofactors[cursor] = cofactors[cursor + 1] = low;
+
+				if (var(high) == lower) {
+					cofactors[cursor + 2] = low(high);
+					cofactors[cursor + 3] = high(high);
+				}
+				else
+					cofactors[cursor + 2] = cofactors[cursor + 3] = high;
+			}
+
+			// the nodes at the lower level do not depend on the upper variable: they just move up
+			for (int pos = 0; pos < lowerCount; pos++) {
+				int node = lowerNodes[pos];
+				unlink(node);
+				relink(node, upper, lowAt(node), highAt(node));
+				add(node, upper);
+			}
+
+			// the same for the nodes at the upper level that do not depend on the lower variable;
+			// they must be in the hash table before the others get rebuilt, since they might be shared
+			for (int pos = 0, cursor = 0; pos < upperCount; pos++, cursor += 4)
+				if (cofactors[cursor] == cofactors[cursor + 1] && cofactors[cursor + 2] == cofactors[cursor + 3]) {
+					int node = upperNodes[pos];
+					relink(node, lower, lowAt(node), highAt(node));
+					add(node, lower);
+				}
+
+			// the other nodes are rebuilt in place, so that they keep their index; with
+			// complement edges, their low edge stays regular since its cofactors are regular
+			for (int pos = 0, cursor = 0; pos < upperCount; pos++, cursor += 4)
+				if (cofactors[cursor] != cofactors[cursor + 1] || cofactors[cursor + 2] != cofactors[cursor + 3]) {
+					int node = upperNodes[pos], oldLow = lowAt(node), oldHigh = highAt(node);
+					int low = mk(lower, cofactors[cursor], cofactors[cursor + 2]);
+					int high = mk(lower, cofactors[cursor + 1], cofactors[cursor + 3]);
+					relink(node, upper, low, high);
+					add(node, upper);
+					release(oldLow);
+					release(oldHigh);
+				}
+
+			int upperVar = level2var[upper], lowerVar = level2var[lower];
+			level2var[upper] = lowerVar;
+			level2var[lower] = upperVar;
+			var2level[lowerVar] = upper;
+			var2level[upperVar] = lower;
+		}
+
+		/**
+		 * Yields the edge to the node with the given components, referenced once more.
+		 */
+
+		private int mk(int level, int low, int high) {
+			if (low == high) {
+				refs[node(low)]++;
+				return low;
+			}
+
+			int edge = get(level, low, high), node = node(edge);
+			// nodes that are alive are referenced, the others are not in the hash table
+			if (refs[node] == 0) { // the node has just been created
+				refs[node(low)]++;
+				refs[node(high)]++;
+				aliveNodes++;
+				add(node, level);
+			}
+
+			refs[node]++;
+
+			return edge;
+		}
+
+		/**
+		 * Removes a reference to the node reached by the given edge.
+		 */
+
+		private void release(int edge) {
+			int node = node(edge);
+
+			if (--refs[node] == 0) {
+				int low = lowAt(node), high = highAt(node);
+				unlink(node);
+				setVarLowHighHash(node, -1, low, high, hashCodeAux(node));
+				aliveNodes--;
+				release(low);
+				release(high);
+			}
+		}
+
+		private void unlink(int node) {
+			int pos = hash(varAt(node), lowAt(node), highAt(node));
+			int bin = H[pos];
+
+			if (bin == node)
+				H[pos] = next(node);
+			else
+				for (int previous = bin; previous >= 0; previous = bin)
+					if ((bin = next(previous)) == node) {
+						setNext(previous, next(node));
+						return;
+					}
+		}
+
+		private void relink(int node, int level, int low, int high) {
+			setVarLowHighHash(node, level, low, high, hashCodeAux(node));
+			int pos = hash(level, low, high);
+			setNext(node, H[pos]);
+			H[pos] = node;
+		}
+
+		private void ensureFree(int nodes) {
+			while (freePositions() < nodes)
+				if (!isResizeInProgress())
+					resize();
+
+			if (refs.length < getSize())
+				refs = Arrays.copyOf(refs, getSize());
+		}
+
+		/*
+		 * A unit is a block of variables or a single variable outside all blocks.
+		 */
+
+		private int unitStart(int level) {
+			int block = blockOf[level2var[level]];
+			if (block >= 0)
+				while (level > 0 && blockOf[level2var[level - 1]] == block)
+					level--;
+
+			return level;
+		}
+
+		private int unitLength(int start) {
+			int block = blockOf[level2var[start]], end = start + 1;
+			if (block >= 0)
+				while (end < numberOfLevels && blockOf[level2var[end]] == block)
+					end++;
+
+			return end - start;
+		}
+
+		/**
+		 * Moves the unit at the given levels above the unit just above it.
+		 *
+		 * @return the new start of the unit, or -1 if it was already at the top
+		 */
+
+		private int moveUp(int start, int length) {
+			if (start == 0)
+				return -1;
+
+			int aboveStart = unitStart(start - 1);
+			exchange(aboveStart, start - aboveStart, length);
+
+			return aboveStart;
+		}
+
+		/**
+		 * Moves the unit at the given levels below the unit just below it.
+		 *
+		 * @return the new start of the unit, or -1 if it was already at the bottom
+		 */
+
+		private int moveDown(int start, int length) {
+			int below = start + length;
+			if (below >= numberOfLevels)
+				return -1;
+
+			int belowLength = unitLength(below);
+			exchange(start, length, belowLength);
+
+			return start + belowLength;
+		}
+
+		/**
+		 * Exchanges two adjacent units, keeping the relative order of the
+		 * variables inside each of them.
+		 */
+
+		private void exchange(int upperStart, int upperLength, int lowerLength) {
+			for (int moved = 0; moved < lowerLength; moved++)
+				for (int level = upperStart + upperLength - 1 + moved; level >= upperStart + moved; level--)
+					swap(level);
+		}
+
+		/**
+		 * Rudell's sifting: each unit, starting from those with more nodes, is
+		 * moved across all levels and then put back where the table was smallest.
+		 */
+
+		private void sift() {
+			List<int[]> units = new ArrayList<>(); // pairs (variable, number of nodes)
+			for (int start = 0; start < numberOfLevels; ) {
+				int length = unitLength(start), nodes = 0;
+				for (int level = start; level < start + length; level++)
+					nodes += countAt[level];
+
+				units.add(new int[] { level2var[start], nodes });
+				start += length;
+			}
+
+			units.sort((unit1, unit2) -> Integer.compare(unit2[1], unit1[1]));
+
+			for (int[] unit: units)
+				sift(unit[0]);
+		}
+
+		private void sift(int var) {
+			int start = unitStart(var2level[var]), length = unitLength(start);
+			int bestSize = aliveNodes, bestStart = start;
+			// we first move towards the closer end
+			boolean upFirst = start < numberOfLevels - start - length;
+
+			for (int pass = 0; pass < 2; pass++) {
+				boolean up = (pass == 0) == upFirst;
+
+				for (int next; (next = up ? moveUp(start, length) : moveDown(start, length)) >= 0; ) {
+					start = next;
+
+					if (aliveNodes < bestSize) {
+						bestSize = aliveNodes;
+						bestStart = start;
+					}
+					else if (aliveNodes > bestSize * MAX_GROWTH_WHILE_SIFTING)
+						break;
+				}
+			}
+
+			while (start > bestStart)
+				start = moveUp(start, length);
+
+			while (start < bestStart)
+				start = moveDown(start, length);
+		}
+
+		private void swapVars(int var1, int var2) {
+			int level1 = levelOf(var1), level2 = levelOf(var2);
+			if (level1 > level2) {
+				int temp = level1;
+				level1 = level2;
+				level2 = temp;
+			}
+
+			// the upper variable goes down to level2, then the lower one goes up to level1
+			for (int level = level1; level < level2; level++)
+				swap(level);
+
+			for (int level = level2 - 2; level >= level1; level--)
+				swap(level);
+		}
+
+		private void setVarOrder(int[] order) {
+			for (int level = 0; level < order.length; level++)
+				for (int current = levelOf(order[level]); current > level; current--)
+					swap(current - 1);
+		}
+
+		private int levelOf(int var) {
+			if (var < 0 || var >= numberOfLevels)
+				throw new IllegalArgumentException("unknown variable " + var);
+
+			return var2level[var];
+		}
+	}
+
+	class ResizeData {
 		private final long start;
 		private final int oldSize;
 		private final int newSize;
 		private final int[] newH;
 		private final int[] newUt;
 		private final ComputationCache computationCache;
+		private final IteCache iteCache;
 		private final RestrictCache restrictCache;
+		private final CubeRestrictCache cubeRestrictCache;
 		private final QuantCache quantCache;
+		private final RelProdCache relProdCache;
+		private final ComposeCache composeCache;
 		private final ReplaceCache replaceCache;
 		private final EquivCache equivCache;
 		private final RenameWithLeaderCache rwlCache;
 		private final SqueezeEquivCache squeezeEquivCache;
 
+		/**
+		 * The number of garbage collections when the caches were copied.
+		 */
+		private final int numOfGCs;
+
 		private ResizeData(ResizingAndGarbageCollectedUniqueTable table) {
 			start = System.currentTimeMillis();
 			oldSize = table.getSize();
-			if(oldSize == MAX_SIZE){
-				throw new RuntimeException("BDD table cannot be enlarged beyond max size: " + MAX_SIZE);
+			if(oldSize == maxSize()){
+				throw new RuntimeException("BDD table cannot be enlarged beyond max size: " + maxSize());
 			}
 			int newSizeTemp = oldSize * (table.increaseFactor - 1) > table.maxIncrease
 				? oldSize + table.maxIncrease : (int) (oldSize * table.increaseFactor);
 			//SEE: comment on SimpleUniqueTable.MAX_SIZE
-			newSize = Math.min(MAX_SIZE, newSizeTemp);
+			newSize = Math.min(maxSize(), newSizeTemp);
 
 			int oldCacheSize = table.getCacheSize();
 			int newCacheSize = newSize * table.cacheRatio > oldCacheSize ?
@@ -456,35 +1333,92 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 			for (int i = newH.length - 1; i >= 0; i--)
 				newH[i] = -1;
 
-			newUt = new int[newSize * getNodeSize()];
+			newUt = newNodes(newSize);
 
 			int sizeOfSmallCaches = Math.max(1, newCacheSize / 20);
-			computationCache = new ComputationCache(newCacheSize);
-			restrictCache = new RestrictCache(sizeOfSmallCaches);
-			replaceCache = new ReplaceCache(sizeOfSmallCaches);
-			quantCache = new QuantCache(sizeOfSmallCaches);
-			equivCache = new EquivCache(sizeOfSmallCaches);
-			rwlCache = new RenameWithLeaderCache(sizeOfSmallCaches);
-			squeezeEquivCache = new SqueezeEquivCache(sizeOfSmallCaches);
+			// the new caches keep counting where the old ones stopped
+			computationCache = new ComputationCache(newCacheSize, table.computationCache.getCounters());
+			iteCache = new IteCache(newCacheSize, table.iteCache.getCounters());
+			restrictCache = new RestrictCache(sizeOfSmallCaches, table.restrictCache.getCounters());
+			cubeRestrictCache = new CubeRestrictCache(sizeOfSmallCaches, table.cubeRestrictCache.getCounters());
+			replaceCache = new ReplaceCache(sizeOfSmallCaches, table.replaceCache.getCounters());
+			quantCache = new QuantCache(sizeOfSmallCaches, table.quantCache.getCounters());
+			relProdCache = new RelProdCache(sizeOfSmallCaches, table.relProdCache.getCounters());
+			composeCache = new ComposeCache(sizeOfSmallCaches, table.composeCache.getCounters());
+			equivCache = new EquivCache(sizeOfSmallCaches, table.equivCache.getCounters());
+			rwlCache = new RenameWithLeaderCache(sizeOfSmallCaches, table.rwlCache.getCounters());
+			squeezeEquivCache = new SqueezeEquivCache(sizeOfSmallCaches, table.squeezeEquivCache.getCounters());
+
+			// node indexes do not change with a resize, hence the cached results are still valid
+			numOfGCs = table.numOfGCs;
+			table.runOnCaches(new Runnable[] {
+				() -> computationCache.copyFrom(table.computationCache),
+				() -> iteCache.copyFrom(table.iteCache),
+				() -> restrictCache.copyFrom(table.restrictCache),
+				() -> cubeRestrictCache.copyFrom(table.cubeRestrictCache),
+				() -> replaceCache.copyFrom(table.replaceCache),
+				() -> quantCache.copyFrom(table.quantCache),
+				() -> relProdCache.copyFrom(table.relProdCache),
+				() -> composeCache.copyFrom(table.composeCache),
+				() -> equivCache.copyFrom(table.equivCache),
+				() -> rwlCache.copyFrom(table.rwlCache),
+				() -> squeezeEquivCache.copyFrom(table.squeezeEquivCache)
+			}, newCacheSize);
+		}
+
+		/**
+		 * Clears the new caches, since a garbage collection might have moved
+		 * the nodes after they were copied.
+		 */
+		private void clearCaches() {
+			computationCache.clear();
+			iteCache.clear();
+			restrictCache.clear();
+			cubeRestrictCache.clear();
+			replaceCache.clear();
+			quantCache.clear();
+			relProdCache.clear();
+			composeCache.clear();
+			equivCache.clear();
+			rwlCache.clear();
+			squeezeEquivCache.clear();
 		}
 	}
 
-	private void innerResize(ResizeData data) {
-		System.arraycopy(ut, 0, data.newUt, 0, nextPos * getNodeSize());
+	void innerResize(ResizeData data) {
+		if (data.numOfGCs != numOfGCs)
+			data.clearCaches();
 
 		// TODO is this instruction order mandatory according to the JMM?
-		this.ut = data.newUt;
+		moveNodes(data.newUt, data.newSize);
 		this.H = data.newH;
 		this.size = data.newSize;
 		this.computationCache = data.computationCache;
+		this.iteCache = data.iteCache;
 		this.restrictCache = data.restrictCache;
+		this.cubeRestrictCache = data.cubeRestrictCache;
 		this.replaceCache = data.replaceCache;
 		this.quantCache = data.quantCache;
+		this.relProdCache = data.relProdCache;
+		this.composeCache = data.composeCache;
 		this.equivCache = data.equivCache;
 		this.rwlCache = data.rwlCache;
 		this.squeezeEquivCache = data.squeezeEquivCache;
 
 		updateHashTable();
+		resizeInProgress = false;
+	}
+
+	/**
+	 * Moves the nodes into the array allocated for a resize of the table.
+	 *
+	 * @param newUt the array, as allocated by {@link #newNodes(int)}
+	 * @param newSize the new size of the table
+	 */
+
+	protected void moveNodes(int[] newUt, int newSize) {
+		System.arraycopy(ut, 0, newUt, 0, nextPos * getNodeSize());
+		this.ut = newUt;
 	}
 
 	private void postResize(ResizeData data) {
@@ -498,7 +1432,7 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 	}
 
 	void updateHashTable() {
-		if (size >= 600000) {
+		if (size >= MIN_NODES_FOR_PARALLELISM && !inForkJoinWorker()) {
 			try {
 				pool.submit(() -> 
 					IntStream.range(0, total)
@@ -512,63 +1446,273 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 			return;
 		}
 
-		for (int i = nextPos - 1, index = i * getNodeSize() + VAR_OFFSET; i >= 0; i--, index -= getNodeSize())
+		for (int i = nextPos - 1; i >= 0; i--) {
+			int var = varAt(i);
+
 			// we only consider valid entries
-			if (ut[index] >= 0) {
-				int pos = hash(ut[index], ut[index + 1], ut[index + 2]);
+			if (var >= 0) {
+				int pos = hash(var, lowAt(i), highAt(i));
 
 				setNext(i, H[pos]);
 				H[pos] = i;
 			}
+		}
 	}
 
 	private final static int total = Runtime.getRuntime().availableProcessors();
 
 	private void updater(int offset) {
-		for (int i = nextPos - 1 - offset, index = i * getNodeSize() + VAR_OFFSET; i >= 0; i -= total, index -= getNodeSize() * total)
+		for (int i = nextPos - 1 - offset; i >= 0; i -= total) {
+			int var = varAt(i);
+
 			// we only consider valid entries
-			if (ut[index] >= 0) {
-				int pos = hash(ut[index], ut[index + 1], ut[index + 2]);
+			if (var >= 0) {
+				int pos = hash(var, lowAt(i), highAt(i));
 
 				synchronized (updateLocks[pos % updateLocks.length]) {
 					setNext(i, H[pos]);
 					H[pos] = i;
 				}
 			}
+		}
 	}
 
+	/**
+	 * Moves the live nodes of this table at its beginning, in the same order,
+	 * and clears the caches.
+	 *
+	 * @param aliveNodes the live nodes. It gets cleared
+	 * @return the number of collected nodes
+	 */
+
 	int compactTable(boolean[] aliveNodes) {
+		int collected = compactTable(aliveNodes, new int[size]);
+		clearCaches();
+
+		return collected;
+	}
+
+	/**
+	 * Moves the live nodes of this table at its beginning, in the same order.
+	 *
+	 * @param aliveNodes the live nodes. It gets cleared
+	 * @param newPositions filled with the new position of each node, or -1 for the dead nodes
+	 * @return the number of collected nodes
+	 */
+
+	int compactTable(boolean[] aliveNodes, int[] newPositions) {
+		boolean parallel = nextPos >= MIN_NODES_FOR_PARALLELISM && !inForkJoinWorker();
+		int collected = parallel ? moveNodesInParallel(aliveNodes, newPositions) : moveAndLinkNodes(aliveNodes, newPositions);
+
+		aliveNodes[0] = aliveNodes[1] = false;
+
+		// change indices of external BDD objects
+		factory.updateIndicesOfAllBDDsCreatedSoFar(newPositions);
+
+		synchronized (nextPosLock) {
+			nextPos -= collected;
+		}
+
+		if (parallel) {
+			Arrays.fill(H, -1);
+			updateHashTable();
+		}
+
+		return collected;
+	}
+
+	/**
+	 * Moves the live nodes at the beginning of the table and rebuilds the hash
+	 * table while moving them, instead of with another pass over the table.
+	 *
+	 * @return the number of collected nodes
+	 */
+
+	private int moveAndLinkNodes(boolean[] aliveNodes, int[] newPositions) {
 		int collected = 0;
-		int[] newPositions = new int[size];
 
 		for (int oldCursor = 0, newCursor = 0; oldCursor < nextPos; oldCursor++)
+			if (aliveNodes[oldCursor])
+				newPositions[oldCursor] = newCursor++;
+			else {
+				newPositions[oldCursor] = -1;
+				collected++;
+			}
+
+		Arrays.fill(H, -1);
+		for (int terminal = 0; terminal < Factory.FIRST_NODE_NUM; terminal++)
+			link(terminal, varAt(terminal), lowAt(terminal), highAt(terminal));
+
+		// after a reordering, children might follow their parents in the table,
+		// hence nodes are only moved once all new positions are known
+		for (int oldCursor = Factory.FIRST_NODE_NUM; oldCursor < nextPos; oldCursor++)
 			if (aliveNodes[oldCursor]) {
+				int var = varAt(oldCursor), low = lowAt(oldCursor), high = highAt(oldCursor), newCursor = newPositions[oldCursor];
+				int newLow = relocate(low, newPositions), newHigh = relocate(high, newPositions);
+
 				// copy node to new position
-				if (collected > 0)
-					setVarLowHighHash(newCursor, var(oldCursor), newPositions[low(oldCursor)], newPositions[high(oldCursor)], hashCodeAux(oldCursor));
+				if (newCursor != oldCursor || newLow != low || newHigh != high)
+					setVarLowHighHash(newCursor, var, newLow, newHigh, hashCodeAux(oldCursor));
 
-				newPositions[oldCursor] = newCursor++;
+				link(newCursor, var, newLow, newHigh);
 				aliveNodes[oldCursor] = false;
 			}
-			else
-				collected++;
 
-		// change indices of external BDD objects
-		factory.updateIndicesOfAllBDDsCreatedSoFar(newPositions);
+		return collected;
+	}
 
-		synchronized (nextPosLock) {
-			nextPos -= collected;
+	/**
+	 * Moves the live nodes at the beginning of the table, computing their new
+	 * positions and relocating their children in parallel, slice by slice.
+	 * The hash table must be rebuilt afterwards.
+	 *
+	 * @return the number of collected nodes
+	 */
+
+	private int moveNodesInParallel(boolean[] aliveNodes, int[] newPositions) {
+		int nextPos = this.nextPos, slices = (nextPos + COMPACTION_SLICE - 1) / COMPACTION_SLICE;
+
+		// the first new position of each slice is the number of live nodes before it
+		int[] firsts = new int[slices + 1];
+		inParallel(slices, slice -> {
+			int alive = 0;
+			for (int node = slice * COMPACTION_SLICE, end = Math.min(node + COMPACTION_SLICE, nextPos); node < end; node++)
+				if (aliveNodes[node])
+					alive++;
+
+			firsts[slice + 1] = alive;
+		});
+
+		for (int slice = 0; slice < slices; slice++)
+			firsts[slice + 1] += firsts[slice];
+
+		inParallel(slices, slice -> {
+			int newCursor = firsts[slice];
+			for (int node = slice * COMPACTION_SLICE, end = Math.min(node + COMPACTION_SLICE, nextPos); node < end; node++)
+				newPositions[node] = aliveNodes[node] ? newCursor++ : -1;
+		});
+
+		// each node only rewrites itself, hence the children are relocated in place by all slices at once
+		inParallel(slices, slice -> {
+			int start = Math.max(slice * COMPACTION_SLICE, Factory.FIRST_NODE_NUM), end = Math.min((slice + 1) * COMPACTION_SLICE, nextPos);
+			for (int node = start; node < end; node++)
+				if (aliveNodes[node]) {
+					int low = lowAt(node), high = highAt(node);
+					int newLow = relocate(low, newPositions), newHigh = relocate(high, newPositions);
+
+					if (newLow != low || newHigh != high)
+						setVarLowHighHash(node, varAt(node), newLow, newHigh, hashCodeAux(node));
+				}
+		});
+
+		// a slice might overwrite nodes of the previous slice that are still to be moved,
+		// hence the nodes are copied towards the beginning of the table in a single ordered pass
+		for (int node = Factory.FIRST_NODE_NUM; node < nextPos; node++)
+			if (aliveNodes[node]) {
+				int newCursor = newPositions[node];
+				if (newCursor != node)
+					setVarLowHighHash(newCursor, varAt(node), lowAt(node), highAt(node), hashCodeAux(node));
+
+				aliveNodes[node] = false;
+			}
+
+		return nextPos - firsts[slices];
+	}
+
+	/**
+	 * Runs the given task for each index from 0 to {@code tasks}, in parallel.
+	 */
+
+	private void inParallel(int tasks, IntConsumer task) {
+		try {
+			pool.submit(() -> IntStream.range(0, tasks).parallel().forEach(task)).get();
+		}
+		catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
 		}
+	}
 
+	private void clearCaches() {
 		computationCache.clear();
+		iteCache.clear();
 		restrictCache.clear();
+		cubeRestrictCache.clear();
 		replaceCache.clear();
 		quantCache.clear();
+		relProdCache.clear();
+		composeCache.clear();
 		equivCache.clear();
 		rwlCache.clear();
 		squeezeEquivCache.clear();
+	}
 
-		return collected;
+	/**
+	 * Keeps the entries of the caches whose bdds all survived a garbage
+	 * collection. Large caches are translated in parallel, one per thread.
+	 *
+	 * @param newPositions the new position of each node, or -1 for the dead nodes
+	 */
+
+	private void remapCaches(int[] newPositions) {
+		IntUnaryOperator relocation = id -> newPositions[node(id)] < 0 ? -1 : relocate(id, newPositions);
+
+		Runnable[] remaps = {
+			() -> computationCache.remap(relocation),
+			() -> iteCache.remap(relocation),
+			() -> restrictCache.remap(relocation),
+			() -> cubeRestrictCache.remap(relocation),
+			() -> replaceCache.remap(relocation),
+			() -> quantCache.remap(relocation),
+			() -> relProdCache.remap(relocation),
+			() -> composeCache.remap(relocation),
+			() -> equivCache.remap(relocation),
+			() -> rwlCache.remap(relocation),
+			() -> squeezeEquivCache.remap(relocation)
+		};
+
+		runOnCaches(remaps, computationCache.getSize());
+	}
+
+	/**
+	 * Determines if the current thread is the worker of a fork-join pool,
+	 * such as those of the parallel apply. While it waits for a task of another
+	 * pool, such a worker runs the tasks of its own pool, that might need the
+	 * table that it is updating. Hence it must update the table by itself.
+	 */
+
+	private static boolean inForkJoinWorker() {
+		return Thread.currentThread() instanceof ForkJoinWorkerThread;
+	}
+
+	/**
+	 * Runs the given tasks, one per cache. They are run in parallel if the caches are large.
+	 *
+	 * @param tasks the tasks
+	 * @param cacheSize the size of the computation cache
+	 */
+
+	private void runOnCaches(Runnable[] tasks, int cacheSize) {
+		if (cacheSize >= MIN_CACHE_SIZE_FOR_PARALLELISM && !inForkJoinWorker()) {
+			try {
+				pool.submit(() -> Arrays.stream(tasks).parallel().forEach(Runnable::run)).get();
+			}
+			catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		else
+			for (Runnable task: tasks)
+				task.run();
+	}
+
+	/**
+	 * Adds a node in front of its bucket of the hash table.
+	 */
+
+	private void link(int node, int var, int low, int high) {
+		int pos = hash(var, low, high);
+		setNext(node, H[pos]);
+		H[pos] = node;
 	}
 
 	protected void setVarLowHighHash(int node, int varNumber, int lowNode, int highNode, int hca) {
@@ -577,7 +1721,8 @@ public class ResizingAndGarbageCollectedUniqueTable extends SimpleUniqueTable {
 		ut[pos++] = varNumber;
 		ut[pos++] = lowNode;
 		ut[pos++] = highNode;
-		ut[++pos] = hca;
+		if (!compactNodes)
+			ut[++pos] = hca;
 	}
 
 	public EquivCache getEquivCache() {
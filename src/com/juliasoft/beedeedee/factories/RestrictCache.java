@@ -18,6 +18,8 @@
 */
 package com.juliasoft.beedeedee.factories;
 
+import java.util.function.IntUnaryOperator;
+
 /**
  * The cache for restrict operations.
  */
@@ -26,6 +28,7 @@ class RestrictCache {
 	private final int[] cache;
 	private final int size;
 	private final Object[] locks = new Object[100];
+	private final CacheCounters counters;
 	
 	/**
 	 * Constructs a RestrictCache of the given size.
@@ -33,6 +36,17 @@ class RestrictCache {
 	 * @param size the size of the cache
 	 */
 	RestrictCache(int size) {
+		this(size, new CacheCounters());
+	}
+
+	/**
+	 * Constructs a RestrictCache of the given size, that updates the given counters.
+	 * 
+	 * @param size the size of the cache
+	 * @param counters the counters of the accesses to the cache
+	 */
+	RestrictCache(int size, CacheCounters counters) {
+		this.counters = counters;
 		this.size = size;
 		int arraySize = size * ENTRY_SIZE;
 		this.cache = new int[arraySize];
@@ -42,6 +56,22 @@ class RestrictCache {
 			locks[pos] = new Object();
 	}
 
+	/**
+	 * @return the counters of the accesses to this cache
+	 */
+	CacheCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Returns the size of this cache.
+	 * 
+	 * @return the size
+	 */
+	int getSize() {
+		return size;
+	}
+
 	/**
 	 * Clears all the entries in this cache.
 	 */
@@ -51,6 +81,49 @@ class RestrictCache {
 			cache[i] = -1;
 	}
 
+	/**
+	 * Keeps the entries whose bdds all survived a garbage collection, at the
+	 * position for their new indexes, and discards the others.
+	 * 
+	 * @param relocation yields the new index of a bdd, or -1 if it has been collected
+	 */
+	void remap(IntUnaryOperator relocation) {
+		int[] old = cache.clone();
+		clear();
+
+		for (int pos = 0; pos < old.length; pos += ENTRY_SIZE)
+			if (old[pos] >= 0) {
+				int bdd = relocation.applyAsInt(old[pos]), result = relocation.applyAsInt(old[pos + 3]);
+
+				if (bdd >= 0 && result >= 0) {
+					int newPos = hash(bdd, old[pos + 1]);
+					cache[newPos] = bdd;
+					cache[newPos + 1] = old[pos + 1];
+					cache[newPos + 2] = old[pos + 2];
+					cache[newPos + 3] = result;
+				}
+			}
+	}
+
+	/**
+	 * Copies into this cache the entries of a smaller cache, at their position
+	 * in this cache. The other cache might be in use by other threads, hence
+	 * each entry is read consistently and those being written are skipped.
+	 * 
+	 * @param other the other cache
+	 */
+	void copyFrom(RestrictCache other) {
+		int[] from = other.cache;
+
+		for (int pos = 0; pos < from.length; pos += ENTRY_SIZE)
+			synchronized (other.locks[pos % other.locks.length]) {
+				if (from[pos] >= 0) {
+					int newPos = hash(from[pos], from[pos + 1]);
+					System.arraycopy(from, pos, cache, newPos, ENTRY_SIZE);
+				}
+			}
+	}
+
 	/**
 	 * Gets an entry from this cache.
 	 * 
@@ -63,14 +136,15 @@ class RestrictCache {
 		int pos = hash(bdd, var);
 		int[] cache = this.cache;
 
-		if (cache[pos++] == bdd && cache[pos++] == var && cache[pos] == (value ? 1 : 0)) {
-			pos -= 2;
-
+		if (cache[pos] == bdd && cache[pos + 1] == var && cache[pos + 2] == (value ? 1 : 0))
 			synchronized (locks[pos % locks.length]) {
-				return (cache[pos++] == bdd && cache[pos++] == var && cache[pos++] == (value ? 1 : 0)) ? cache[pos] : -1;
+				if (cache[pos] == bdd && cache[pos + 1] == var && cache[pos + 2] == (value ? 1 : 0)) {
+					counters.hit();
+					return cache[pos + 3];
+				}
 			}
-		}
 
+		counters.miss(cache[pos] >= 0);
 		return -1;
 	}
 
@@ -96,6 +170,7 @@ class RestrictCache {
 		int[] cache = this.cache;
 
 		synchronized (locks[pos % locks.length]) {
+			counters.put(cache[pos] >= 0 && (cache[pos] != bdd || cache[pos + 1] != var || cache[pos + 2] != (value ? 1 : 0)));
 			cache[pos++] = bdd;
 			cache[pos++] = var;
 			cache[pos++] = value ? 1 : 0;
@@ -18,7 +18,9 @@
 */
 package com.juliasoft.beedeedee.factories;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 class SimpleUniqueTable implements UniqueTable {
 
@@ -29,6 +31,12 @@ class SimpleUniqueTable implements UniqueTable {
 	protected static final int HASHCODEAUX_OFFSET = 4;
 	protected static final int NODE_SIZE = 5;
 
+	/**
+	 * The size of the nodes of a compact table, that have no {@code hashCodeAux}.
+	 */
+
+	protected static final int COMPACT_NODE_SIZE = 4;
+
 	//The maximum allowed size to prevent integer overflow (leading to
 	//  NegativeArraySizeException) and array over-allocation (leading to
 	//  OutOfMemoryError: Requested array size exceeds VM limit) when
@@ -41,25 +49,66 @@ class SimpleUniqueTable implements UniqueTable {
 	protected volatile int size;
 	protected volatile int nextPos;
 	protected volatile ComputationCache computationCache;
+	protected volatile IteCache iteCache;
 	protected volatile RestrictCache restrictCache;
+	protected volatile CubeRestrictCache cubeRestrictCache;
 	protected volatile ReplaceCache replaceCache;
 	protected volatile QuantCache quantCache;
+	protected volatile RelProdCache relProdCache;
+	protected volatile ComposeCache composeCache;
 	protected volatile EquivCache equivCache;
 	protected volatile RenameWithLeaderCache rwlCache;
 	protected volatile SqueezeEquivCache squeezeEquivCache;
 
-	private final int[] hitCounters = new int[Operator.values().length];
-	private final int[] opCounters = new int[Operator.values().length];
 	protected int hashCodeAuxCounter;
 
+	/**
+	 * True if the edges of this table carry a complement bit. In that case,
+	 * the id of a node is its position in the table shifted left by one, with
+	 * the lowest bit set when the edge negates the function of the node.
+	 * The low edge stored in a node is never complemented, which keeps the
+	 * representation canonical.
+	 */
+
+	protected final boolean complementEdges;
+
+	/**
+	 * True if the nodes of this table have no {@code hashCodeAux}. Their four
+	 * integers fit 16 bytes, hence a node never spans two cache lines and the
+	 * chains of the hash table are scanned over less memory. The hash codes
+	 * of the bdds must then be derived from their functions.
+	 */
+
+	protected final boolean compactNodes;
+
+	private final int edgeShift;
+
+	private final int complementMask;
+
 	protected SimpleUniqueTable(int size, int cacheSize) {
-		this.size = Math.min(size, MAX_SIZE);
-		this.ut = new int[this.size * getNodeSize()];
+		this(size, cacheSize, false);
+	}
+
+	protected SimpleUniqueTable(int size, int cacheSize, boolean complementEdges) {
+		this(size, cacheSize, complementEdges, false);
+	}
+
+	protected SimpleUniqueTable(int size, int cacheSize, boolean complementEdges, boolean compactNodes) {
+		this.complementEdges = complementEdges;
+		this.compactNodes = compactNodes;
+		this.edgeShift = complementEdges ? 1 : 0;
+		this.complementMask = complementEdges ? 1 : 0;
+		this.size = Math.min(size, maxSize());
+		this.ut = newNodes(this.size);
 		this.H = new int[this.size];
 		this.computationCache = new ComputationCache(cacheSize);
+		this.iteCache = new IteCache(cacheSize);
 		this.restrictCache = new RestrictCache(Math.max(1, cacheSize / 20));
+		this.cubeRestrictCache = new CubeRestrictCache(Math.max(1, cacheSize / 20));
 		this.replaceCache = new ReplaceCache(Math.max(1, cacheSize / 20));
 		this.quantCache = new QuantCache(Math.max(1, cacheSize / 20));
+		this.relProdCache = new RelProdCache(Math.max(1, cacheSize / 20));
+		this.composeCache = new ComposeCache(Math.max(1, cacheSize / 20));
 		this.equivCache = new EquivCache(Math.max(1, cacheSize / 20));
 		this.rwlCache = new RenameWithLeaderCache(Math.max(1, cacheSize / 20));
 		this.squeezeEquivCache = new SqueezeEquivCache(Math.max(1, cacheSize / 20));
@@ -68,7 +117,25 @@ class SimpleUniqueTable implements UniqueTable {
 	}
 
 	protected int getNodeSize() {
-		return NODE_SIZE;
+		return compactNodes ? COMPACT_NODE_SIZE : NODE_SIZE;
+	}
+
+	/**
+	 * @return the maximal number of nodes of this table
+	 */
+
+	protected int maxSize() {
+		return compactNodes ? (Integer.MAX_VALUE - 8) / COMPACT_NODE_SIZE : MAX_SIZE;
+	}
+
+	/**
+	 * Allocates the array of the nodes of a table of the given size.
+	 * Subclasses that keep their nodes elsewhere return an empty array
+	 * and override the accessors and mutators of the nodes.
+	 */
+
+	protected int[] newNodes(int size) {
+		return new int[size * getNodeSize()];
 	}
 
 	@Override
@@ -88,10 +155,28 @@ class SimpleUniqueTable implements UniqueTable {
 
 	@Override
 	public final void printStatistics() {
-		for (int i = 0; i < opCounters.length; i++) {
-			System.out.print(" +" + opCounters[i]);
-			System.out.print(" *" + hitCounters[i]);
-		}
+		System.out.println(getStatistics());
+	}
+
+	@Override
+	public final Statistics getStatistics() {
+		List<CacheStatistics> caches = new ArrayList<>();
+		CacheCounters[] counters = computationCache.getCounters();
+		for (Operator op: Operator.values())
+			caches.add(counters[op.ordinal()].snapshot(op.name().toLowerCase(), computationCache.getSize()));
+
+		caches.add(iteCache.getCounters().snapshot("ite", iteCache.getSize()));
+		caches.add(restrictCache.getCounters().snapshot("restrict", restrictCache.getSize()));
+		caches.add(cubeRestrictCache.getCounters().snapshot("cubeRestrict", cubeRestrictCache.getSize()));
+		caches.add(replaceCache.getCounters().snapshot("replace", replaceCache.getSize()));
+		caches.add(quantCache.getCounters().snapshot("quant", quantCache.getSize()));
+		caches.add(relProdCache.getCounters().snapshot("relProd", relProdCache.getSize()));
+		caches.add(composeCache.getCounters().snapshot("compose", composeCache.getSize()));
+		caches.add(equivCache.getCounters().snapshot("equiv", equivCache.getSize()));
+		caches.add(rwlCache.getCounters().snapshot("renameWithLeader", rwlCache.getSize()));
+		caches.add(squeezeEquivCache.getCounters().snapshot("squeezeEquiv", squeezeEquivCache.getSize()));
+
+		return new Statistics(nextPos, size, caches);
 	}
 
 	/*
@@ -104,19 +189,72 @@ class SimpleUniqueTable implements UniqueTable {
 		return ut[pos--] == high && ut[pos--] == low && ut[pos] == var;
 	}
 
+	/**
+	 * Yields the position in the table of the node reached by the given edge.
+	 */
+
+	final int node(int id) {
+		return id >> edgeShift;
+	}
+
+	/**
+	 * Yields the regular edge to the node at the given position in the table.
+	 */
+
+	final int edge(int node) {
+		return node << edgeShift;
+	}
+
+	/**
+	 * Yields 1 if the given edge is complemented, 0 otherwise.
+	 */
+
+	final int complementBit(int id) {
+		return id & complementMask;
+	}
+
+	/**
+	 * Yields the edge to the same node as {@code id}, after the nodes have been
+	 * moved to the given new positions.
+	 */
+
+	final int relocate(int id, int[] newPositions) {
+		return edge(newPositions[node(id)]) | complementBit(id);
+	}
+
 	@Override
 	public int var(int id) {
-		return ut[id * getNodeSize() + VAR_OFFSET];
+		return varAt(node(id));
 	}
 
 	@Override
 	public int low(int id) {
-		return ut[id * getNodeSize() + LOW_OFFSET];
+		return lowAt(node(id)) ^ complementBit(id);
 	}
 
 	@Override
 	public int high(int id) {
-		return ut[id * getNodeSize() + HIGH_OFFSET];
+		return highAt(node(id)) ^ complementBit(id);
+	}
+
+	/**
+	 * @return a unique identifier of the function represented by the given edge
+	 */
+
+	final int hashCodeAuxOfEdge(int id) {
+		return edge(hashCodeAux(node(id))) | complementBit(id);
+	}
+
+	protected int varAt(int node) {
+		return ut[node * getNodeSize() + VAR_OFFSET];
+	}
+
+	protected int lowAt(int node) {
+		return ut[node * getNodeSize() + LOW_OFFSET];
+	}
+
+	protected int highAt(int node) {
+		return ut[node * getNodeSize() + HIGH_OFFSET];
 	}
 
 	protected int next(int id) {
@@ -124,9 +262,20 @@ class SimpleUniqueTable implements UniqueTable {
 	}
 
 	protected int hashCodeAux(int id) {
+		if (compactNodes)
+			return 0;
+
 		return ut[id * getNodeSize() + HASHCODEAUX_OFFSET];
 	}
 
+	/**
+	 * @return the field at the given offset of the given node
+	 */
+
+	protected int fieldAt(int node, int offset) {
+		return ut[node * getNodeSize() + offset];
+	}
+
 	/*
 	 * Node mutator methods
 	 */
@@ -140,7 +289,8 @@ class SimpleUniqueTable implements UniqueTable {
 		table[pos++] = lowNode;
 		table[pos++] = highNode;
 		table[pos++] = next;
-		table[pos] = hashCodeAuxCounter++;
+		if (!compactNodes)
+			table[pos] = hashCodeAuxCounter++;
 
 		return nextPos;
 	}
@@ -156,9 +306,9 @@ class SimpleUniqueTable implements UniqueTable {
 
 		for (int i = 0; i < nextPos; i++) {
 			if (i % getNodeSize() == 0) {
-				s += i / getNodeSize() + ": \t" + var(i / getNodeSize()) + "\t";
+				s += i / getNodeSize() + ": \t" + varAt(i / getNodeSize()) + "\t";
 			} else {
-				s += ut[i] + "\t";
+				s += fieldAt(i / getNodeSize(), i % getNodeSize()) + "\t";
 			}
 			if ((i + 1) % getNodeSize() == 0) {
 				s += "\n";
@@ -174,8 +324,8 @@ class SimpleUniqueTable implements UniqueTable {
 
 		// skip terminals
 		for (int i = 0; i < nextPos; i++) {
-			s += i + " -> " + low(i) + " [style=dotted];\n";
-			s += i + " -> " + high(i) + ";\n";
+			s += i + " -> " + lowAt(i) + " [style=dotted];\n";
+			s += i + " -> " + highAt(i) + ";\n";
 		}
 
 		s += "}\n";
@@ -225,10 +375,22 @@ class SimpleUniqueTable implements UniqueTable {
 	}
 
 	@Override
-	public int get(int var, int low, int high) {
+	public final int get(int var, int low, int high) {
+		// with complement edges, the node is stored with a regular low edge
+		int complement = complementBit(low);
+
+		return edge(getNode(var, low ^ complement, high ^ complement)) | complement;
+	}
+
+	/**
+	 * Returns the position of the node with the given attributes, creating it if not present.
+	 * The attributes are stored as they are.
+	 */
+
+	protected int getNode(int var, int low, int high) {
 		int bin, pos = hash(var, low, high);
 
-		if ((bin = H[pos]) < 0 || var(bin) > var)
+		if ((bin = H[pos]) < 0 || varAt(bin) > var)
 			return H[pos] = setAtNextPos(var, low, high, bin);
 		else
 			do {
@@ -236,7 +398,7 @@ class SimpleUniqueTable implements UniqueTable {
 					return bin;
 
 				int old = bin;
-				if ((bin = next(bin)) < 0 || var(bin) > var) {
+				if ((bin = next(bin)) < 0 || varAt(bin) > var) {
 					setNext(old, nextPos);
 					return setAtNextPos(var, low, high, bin);
 				}
@@ -244,9 +406,17 @@ class SimpleUniqueTable implements UniqueTable {
 			while (true);
 	}
 
+	public final IteCache getIteCache() {
+		return iteCache;
+	}
+
 	public final RestrictCache getRestrictCache() {
 		return restrictCache;
 	}
+
+	public final CubeRestrictCache getCubeRestrictCache() {
+		return cubeRestrictCache;
+	}
 	
 	public final ReplaceCache getReplaceCache() {
 		return replaceCache;
@@ -255,4 +425,12 @@ class SimpleUniqueTable implements UniqueTable {
 	public final QuantCache getQuantCache() {
 		return quantCache;
 	}
+
+	public final RelProdCache getRelProdCache() {
+		return relProdCache;
+	}
+
+	public final ComposeCache getComposeCache() {
+		return composeCache;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+/*
+  Copyright 2014 Julia s.r.l.
+
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A snapshot of the statistics of a factory.
+ */
+public final class Statistics {
+	private final int nodes;
+	private final int tableSize;
+	private final List<CacheStatistics> caches;
+
+	Statistics(int nodes, int tableSize, List<CacheStatistics> caches) {
+		this.nodes = nodes;
+		this.tableSize = tableSize;
+		this.caches = Collections.unmodifiableList(caches);
+	}
+
+	/**
+	 * @return the number of nodes in the unique table
+	 */
+	public int getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return the size of the unique table
+	 */
+	public int getTableSize() {
+		return tableSize;
+	}
+
+	/**
+	 * @return the statistics of all caches of the factory
+	 */
+	public List<CacheStatistics> getCaches() {
+		return caches;
+	}
+
+	/**
+	 * Yields the statistics of a cache of the factory.
+	 * 
+	 * @param name the name of the cache
+	 * @return the statistics of the cache, or null if there is no such cache
+	 */
+	public CacheStatistics getCache(String name) {
+		for (CacheStatistics cache: caches)
+			if (cache.getName().equals(name))
+				return cache;
+
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("nodes: ").append(nodes).append(" of ").append(tableSize);
+		for (CacheStatistics cache: caches)
+			sb.append('\n').append(cache);
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,134 @@
+/*
+  Copyright 2014 Julia s.r.l.
+
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A substitution of levels by bdds interned by a factory, so that the cache
+ * of the compositions identifies it by a small integer rather than by
+ * comparing maps. Identifiers are never reused, hence an identifier denotes
+ * the same substitution for the whole life of the factory: a garbage
+ * collection relocates the bdds of a substitution but keeps its identifier,
+ * and forgets the substitutions whose bdds have been collected.
+ */
+
+final class Substitution {
+
+	/**
+	 * The index of the bdd that replaces each level, or -1 for the levels
+	 * that are not replaced. The last element is not -1, so that equal
+	 * substitutions have equal arrays.
+	 */
+
+	private final int[] replacements;
+
+	final int id;
+
+	/**
+	 * Builds a substitution that is not interned yet, hence has no identifier.
+	 *
+	 * @param replacements the index of the bdd that replaces each level
+	 */
+
+	Substitution(Map<Integer, Integer> replacements) {
+		int length = 0;
+		for (int level: replacements.keySet())
+			length = Math.max(length, level + 1);
+
+		this.replacements = new int[length];
+		Arrays.fill(this.replacements, -1);
+		for (Map.Entry<Integer, Integer> entry: replacements.entrySet())
+			this.replacements[entry.getKey()] = entry.getValue();
+
+		this.id = -1;
+	}
+
+	private Substitution(int[] replacements, int id) {
+		this.replacements = replacements;
+		this.id = id;
+	}
+
+	/**
+	 * Yields this same substitution, with the given identifier.
+	 */
+
+	Substitution withId(int id) {
+		return new Substitution(replacements, id);
+	}
+
+	/**
+	 * @return the deepest level that is replaced, or -1 if none is
+	 */
+
+	int maxLevel() {
+		return replacements.length - 1;
+	}
+
+	/**
+	 * Yields the bdd that replaces the given level.
+	 *
+	 * @param level the level
+	 * @return the index of the bdd, or -1 if the level is not replaced
+	 */
+
+	int replacement(int level) {
+		return level < replacements.length ? replacements[level] : -1;
+	}
+
+	/**
+	 * Yields this substitution after a garbage collection, with the same identifier.
+	 *
+	 * @param ut the unique table that has been collected
+	 * @param newPositions the new position of each node, or -1 for the dead nodes
+	 * @return the relocated substitution, or null if some of its bdds has been collected
+	 */
+
+	Substitution relocate(SimpleUniqueTable ut, int[] newPositions) {
+		int[] relocated = replacements.clone();
+
+		for (int level = 0; level < relocated.length; level++) {
+			int bdd = relocated[level];
+			if (bdd >= 0) {
+				if (newPositions[ut.node(bdd)] < 0)
+					return null;
+
+				relocated[level] = ut.relocate(bdd, newPositions);
+			}
+		}
+
+		return new Substitution(relocated, id);
+	}
+
+	/**
+	 * Two substitutions are equal if they replace the same levels by the same
+	 * bdds, whatever their identifiers are. This is only used for interning them.
+	 */
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Substitution && Arrays.equals(replacements, ((Substitution) other).replacements);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(replacements);
+	}
+}
@@ -99,6 +99,13 @@ interface UniqueTable {
 	public void putIntoCache(Operator op, int bdd1, int bdd2, int result);
 	
 	public void printStatistics();
+
+	/**
+	 * Returns the statistics of the table and of its caches.
+	 * 
+	 * @return a snapshot of the statistics
+	 */
+	public Statistics getStatistics();
 	
 	/**
 	 * Returns a GraphViz format representation of the table.
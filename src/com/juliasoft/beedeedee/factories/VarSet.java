@@ -0,0 +1,44 @@
+/* 
+  Copyright 2014 Julia s.r.l.
+    
+  This file is part of BeeDeeDee.
+
+  BeeDeeDee is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  BeeDeeDee is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with BeeDeeDee.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.juliasoft.beedeedee.factories;
+
+import java.util.BitSet;
+
+/**
+ * A set of levels interned by a factory, so that the caches of the
+ * quantifications identify it by a small integer rather than by comparing
+ * sets. Identifiers are never reused, hence an identifier denotes the same
+ * set for the whole life of the factory.
+ */
+
+final class VarSet {
+
+	/**
+	 * The levels. They must not be modified.
+	 */
+
+	final BitSet levels;
+
+	final int id;
+
+	VarSet(BitSet levels, int id) {
+		this.levels = levels;
+		this.id = id;
+	}
+}
@@ -2,6 +2,10 @@ package com.juliasoft.beedeedee.factories;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -47,6 +51,22 @@ public class BDDERTest {
 		erBddX3 = (BDDER) erFactory.makeVar(3);
 	}
 
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		BDD bdd = erBddX1biX2.and(erBddX3);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		erFactory.save(out, Arrays.asList(bdd, erBddX3));
+
+		// the equivalences are saved as part of the function
+		List<BDD> loaded = factory.load(new ByteArrayInputStream(out.toByteArray()));
+		assertTrue(loaded.get(0).isEquivalentTo(bddX1biX2.and(bddX3)));
+		assertTrue(loaded.get(1).isEquivalentTo(bddX3));
+
+		loaded = erFactory.load(new ByteArrayInputStream(out.toByteArray()));
+		assertTrue(loaded.get(0) instanceof BDDER);
+		assertTrue(loaded.get(0).isEquivalentTo(bdd));
+	}
+
 	@Test
 	public void testBasicMethods() {
 		BDD bdd = erFactory.makeVar(2);
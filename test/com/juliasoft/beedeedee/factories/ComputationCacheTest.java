@@ -0,0 +1,85 @@
+package com.juliasoft.beedeedee.factories;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComputationCacheTest {
+	private ComputationCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new ComputationCache(1000);
+	}
+
+	@Test
+	public void test() {
+		assertEquals(-1, cache.get(Operator.AND, 1, 2));
+
+		cache.put(Operator.AND, 1, 2, 5);
+		assertEquals(5, cache.get(Operator.AND, 1, 2));
+		// symmetrical operators are normalized
+		assertEquals(5, cache.get(Operator.AND, 2, 1));
+		assertEquals(-1, cache.get(Operator.OR, 1, 2));
+
+		cache.put(Operator.IMP, 6, 8, 15);
+		assertEquals(15, cache.get(Operator.IMP, 6, 8));
+		assertEquals(-1, cache.get(Operator.IMP, 8, 6));
+
+		cache.clear();
+		assertEquals(-1, cache.get(Operator.AND, 1, 2));
+		assertEquals(-1, cache.get(Operator.IMP, 6, 8));
+	}
+
+	@Test
+	public void testCounters() {
+		cache = new ComputationCache(1);
+		cache.get(Operator.AND, 1, 2);
+		cache.put(Operator.AND, 1, 2, 5);
+		cache.get(Operator.AND, 1, 2);
+		// the cache has a single entry
+		cache.put(Operator.AND, 3, 4, 7);
+		cache.get(Operator.AND, 1, 2);
+
+		CacheStatistics and = cache.getCounters()[Operator.AND.ordinal()].snapshot("and", cache.getSize());
+		assertEquals(1, and.getHits());
+		assertEquals(2, and.getMisses());
+		assertEquals(1, and.getCollisions());
+		assertEquals(1, and.getOverwrites());
+		assertEquals(0, cache.getCounters()[Operator.OR.ordinal()].snapshot("or", cache.getSize()).getMisses());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		cache = new ComputationCache(10);
+		final AtomicInteger wrong = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+
+		for (int t = 0; t < threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread() {
+
+				@Override
+				public void run() {
+					// all threads collide on few entries: a hit must never mix two of them
+					for (int i = 0; i < 200000; i++) {
+						int bdd1 = (i * (seed + 1)) % 37, bdd2 = bdd1 + i % 5;
+						cache.put(Operator.XOR, bdd1, bdd2, bdd1 * 100 + bdd2);
+						int result = cache.get(Operator.XOR, bdd2, bdd1);
+						if (result >= 0 && result != bdd1 * 100 + bdd2)
+							wrong.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		for (Thread thread: threads)
+			thread.join();
+
+		assertEquals(0, wrong.get());
+	}
+}
@@ -1,10 +1,21 @@
 package com.juliasoft.beedeedee.factories;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,7 +23,10 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import org.junit.After;
 import org.junit.Before;
@@ -333,6 +347,17 @@ public class FactoryTest {
 //		factory.printNodeTable();
 	}
 
+	@Test
+	public void testReplaceByNonMonotoneRenaming() {
+		// the renaming swaps 1 and 2, but the bdd only tests 1 of them
+		renaming.put(1, 5);
+		renaming.put(2, 4);
+
+		BDD f = x1.or(x3), g = f.replace(renaming);
+		assertTrue(g.isEquivalentTo(x5.or(x3)));
+		assertTrue(f.and(x2).replace(renaming).isEquivalentTo(g.and(x4)));
+	}
+
 	@Test (expected=ReplacementWithExistingVarException.class)
 	public void testReplace6() {
 		BDD and = x1.and(x2);
@@ -351,6 +376,64 @@ public class FactoryTest {
 		and.replaceWith(renaming);
 	}
 
+	@Test
+	public void testReplaceInterleavedVariables() {
+		for (Factory factory: new Factory[] { this.factory, Factory.mkWithComplementEdges(10, 10, 0) }) {
+			// current state variables are even, next state variables are odd
+			BDD next = atLeastHalf(factory, 1), current = atLeastHalf(factory, 0);
+			for (int i = 0; i < 12; i++)
+				renaming.put(2 * i + 1, 2 * i);
+
+			// the renaming preserves the order of the variables of next
+			assertTrue(next.replace(renaming).isEquivalentTo(current));
+			assertTrue(next.copy().replaceWith(renaming).isEquivalentTo(current));
+
+			// x1 cannot be renamed into x0 if x0 is already there
+			BDD both = next.and(factory.makeVar(0));
+			try {
+				both.replace(renaming);
+				fail();
+			}
+			catch (ReplacementWithExistingVarException e) {}
+
+			// a renaming that does not preserve the order puts the nodes in order again
+			renaming.put(23, 0);
+			renaming.put(1, 24);
+			BDD expected = current.restrict(22, true).andWith(factory.makeVar(24));
+			assertTrue(next.and(factory.makeVar(1)).replace(renaming).isEquivalentTo(expected));
+			renaming.clear();
+		}
+	}
+
+	/**
+	 * Builds the function that holds when at least half of the variables
+	 * {@code first}, {@code first + 2}, ..., {@code first + 22} hold.
+	 */
+	private static BDD atLeastHalf(Factory factory, int first) {
+		// counts[k] holds when exactly k of the variables seen so far hold
+		List<BDD> counts = new ArrayList<>();
+		counts.add(factory.makeOne());
+
+		for (int i = 0; i < 12; i++) {
+			BDD var = factory.makeVar(first + 2 * i);
+			List<BDD> next = new ArrayList<>();
+			for (int k = 0; k <= counts.size(); k++) {
+				BDD count = k < counts.size() ? var.not().andWith(counts.get(k).copy()) : factory.makeZero();
+				if (k > 0)
+					count.orWith(var.and(counts.get(k - 1)));
+				next.add(count);
+			}
+
+			counts = next;
+		}
+
+		BDD result = factory.makeZero();
+		for (int k = 6; k < counts.size(); k++)
+			result.orWith(counts.get(k).copy());
+
+		return result;
+	}
+
 	@Test
 	public void testCompose() {
 		BDD and = x1.and(x2);
@@ -359,6 +442,53 @@ public class FactoryTest {
 		assertCompose(comp, and, x3, 1);
 	}
 
+	@Test
+	public void testComposeWithVarsAbove() {
+		BDD bdd = x2.xor(x3).or(x4);
+		BDD comp = bdd.compose(x1.and(x4), 3);
+
+		assertCompose(comp, bdd, x1.and(x4), 3);
+		// the second computation comes from the cache
+		assertTrue(bdd.compose(x1.and(x4), 3).isEquivalentTo(comp));
+	}
+
+	@Test
+	public void testVectorCompose() {
+		BDD bdd = x1.and(x2).or(x3.xor(x4));
+		Map<Integer, BDD> substitution = new HashMap<>();
+		substitution.put(1, x3.or(x4));
+		substitution.put(3, x1);
+
+		// the substitution is simultaneous: x1 in the substituted bdd must not be replaced again
+		BDD expected = x3.or(x4).and(x2).or(x1.xor(x4));
+		assertTrue(bdd.compose(substitution).isEquivalentTo(expected));
+
+		assertTrue(bdd.compose(new HashMap<Integer, BDD>()).isEquivalentTo(bdd));
+	}
+
+	@Test
+	public void testComposeAcrossGarbageCollections() {
+		factory.setRemapCachesOnGC(true);
+		BDD bdd = x1.and(x2).or(x3);
+		BDD garbage = x2.or(x5);
+		BDD other = x4.xor(x5);
+		BDD comp = bdd.compose(other, 1);
+
+		// other moves, but the substitution and the cached composition are relocated with it
+		garbage.free();
+		factory.gc();
+		long hits = factory.ut.getComposeCache().getCounters().snapshot("compose", 1).getHits();
+		assertCompose(bdd.compose(other, 1), bdd, other, 1);
+		assertTrue(factory.ut.getComposeCache().getCounters().snapshot("compose", 1).getHits() > hits);
+
+		// the substitution refers to collected bdds, hence it must not match the new ones
+		other.free();
+		comp.free();
+		factory.gc();
+		BDD another = x4.imp(x5);
+		assertCompose(bdd.compose(another, 1), bdd, another, 1);
+	}
+
 	private void assertCompose(BDD compose, BDD bdd, BDD other, int var) {
 		BDD expected = other.and(bdd.restrict(var, true))
 				.or(other.not().and(bdd.restrict(var, false)));
@@ -390,6 +520,903 @@ public class FactoryTest {
 		assertTrue(ite.isEquivalentTo(expected));
 	}
 
+	@Test
+	public void testIteStandardTriples() {
+		BDD f = x1.xor(x3);
+		BDD g = x2.or(x4);
+		BDD zero = factory.makeZero(), one = factory.makeOne();
+
+		assertTrue(f.ite(f, g).isEquivalentTo(f.or(g)));
+		assertTrue(f.ite(g, f).isEquivalentTo(f.and(g)));
+		assertTrue(f.ite(g, one).isEquivalentTo(f.imp(g)));
+		assertTrue(f.ite(zero, one).isEquivalentTo(f.not()));
+		assertTrue(f.ite(zero, g).isEquivalentTo(f.not().and(g)));
+		assertTrue(f.ite(one, zero).isEquivalentTo(f));
+
+		// a repeated computation must give the very same (cached) result
+		BDD h = x2.biimp(x4);
+		assertTrue(f.ite(g, h).isEquivalentTo(f.ite(g, h)));
+		assertTrue(f.ite(g, h).isEquivalentTo(f.and(g).or(f.not().and(h))));
+	}
+
+	/**
+	 * Builds the conjunction of x_i <-> x_(n+i), whose size is exponential
+	 * in the natural order and linear when the variables are interleaved.
+	 */
+	private BDD pairwiseEquivalence(int n) {
+		BDD result = factory.makeOne();
+		for (int i = 0; i < n; i++)
+			result.andWith(factory.makeVar(i).biimpWith(factory.makeVar(n + i)));
+
+		return result;
+	}
+
+	@Test
+	public void testReorder() {
+		BDD f = pairwiseEquivalence(6);
+		int nodesBefore = f.nodeCount();
+		long satCount = f.satCount(11);
+
+		factory.reorder();
+
+		assertTrue(f.nodeCount() < nodesBefore);
+		assertEquals(satCount, f.satCount(11));
+		// the table is still canonical
+		assertTrue(pairwiseEquivalence(6).isEquivalentTo(f));
+		assertEquals(3 * 6, f.nodeCount());
+	}
+
+	@Test
+	public void testSwapVars() {
+		BDD f = x1.and(x2).or(x3.and(x4.not()));
+
+		factory.swapVars(1, 4);
+
+		assertEquals(4, factory.levelOfVar(1));
+		assertEquals(1, factory.levelOfVar(4));
+		assertEquals(4, factory.varOfLevel(1));
+		assertEquals(2, factory.levelOfVar(2));
+		assertTrue(f.isEquivalentTo(x1.and(x2).or(x3.and(x4.not()))));
+		assertEquals(4, f.var());
+	}
+
+	@Test
+	public void testOperationsAfterSetVarOrder() {
+		BDD f = x1.and(x2).or(x3.and(x4.not()));
+		BDD g = x2.xor(x5);
+
+		factory.setVarOrder(new int[] { 5, 3, 1, 4, 0, 2 });
+
+		assertEquals(5, factory.varOfLevel(0));
+		assertEquals(4, factory.levelOfVar(0));
+		assertEquals(3, f.var());
+		assertEquals(4, f.maxVar());
+
+		BitSet vars = new BitSet();
+		vars.set(1, 5);
+		assertEquals(vars, f.vars());
+		assertEquals(1, f.varProfile()[3]);
+
+		assertTrue(f.restrict(2, true).isEquivalentTo(x1.or(x3.and(x4.not()))));
+		assertTrue(f.exist(3).isEquivalentTo(x1.and(x2).or(x4.not())));
+		assertTrue(f.exist(x1.and(x2)).isEquivalentTo(factory.makeOne()));
+		assertTrue(f.relProd(g, x2).isEquivalentTo(f.and(g).exist(x2)));
+		assertTrue(f.and(g).exist(x2).isEquivalentTo(x1.and(x5.not()).or(x3.and(x4.not()))));
+		assertTrue(f.compose(x5, 1).isEquivalentTo(x5.and(x2).or(x3.and(x4.not()))));
+
+		renaming.put(4, 0);
+		assertTrue(f.replace(renaming).isEquivalentTo(x1.and(x2).or(x3.and(factory.makeNotVar(0)))));
+
+		assertTrue(f.anySat().toBDD().imp(f).isOne());
+		for (Assignment assignment: f.allSat())
+			assertTrue(assignment.toBDD().imp(f).isOne());
+	}
+
+	@Test
+	public void testVarBlocks() {
+		BDD f = pairwiseEquivalence(3);
+		BitSet block = new BitSet();
+		block.set(0, 3);
+		factory.addVarBlock(block);
+
+		factory.reorder();
+
+		// the block has moved as a whole
+		int level = factory.levelOfVar(0);
+		assertEquals(level + 1, factory.levelOfVar(1));
+		assertEquals(level + 2, factory.levelOfVar(2));
+		assertTrue(pairwiseEquivalence(3).isEquivalentTo(f));
+	}
+
+	@Test
+	public void testAutoReorder() {
+		final int[] reorderings = new int[1];
+		factory.setReorderListener(new Factory.ReorderListener() {
+
+			@Override
+			public void onStart(int num, int nodes, long totalTime) {}
+
+			@Override
+			public void onStop(int num, int nodesBefore, int nodesAfter, long time, long totalTime) {
+				reorderings[0]++;
+				assertTrue(nodesAfter < nodesBefore);
+			}
+		});
+
+		factory.setAutoReorder(true);
+		BDD f = pairwiseEquivalence(13);
+		factory.gc();
+
+		assertEquals(1, reorderings[0]);
+		assertEquals(3 * 13, f.nodeCount());
+	}
+
+	@Test
+	public void testComplementEdgesNegation() {
+		factory = Factory.mkWithComplementEdges(10, 10, 0);
+		BDD f = pairwiseEquivalence(4);
+		int nodes = factory.nodesCount();
+
+		BDD notF = f.not();
+
+		// negation creates no node
+		assertEquals(nodes, factory.nodesCount());
+		assertEquals(f.nodeCount(), notF.nodeCount());
+		assertTrue(notF.not().isEquivalentTo(f));
+		assertTrue(f.xor(notF).isOne());
+		assertTrue(f.biimp(notF).isZero());
+		assertTrue(f.and(notF).isZero());
+		assertTrue(f.or(notF).isOne());
+		assertEquals(256 - f.satCount(7), notF.satCount(7));
+	}
+
+	@Test
+	public void testComplementEdgesAgreeWithRegularEdges() {
+		Factory regular = factory;
+		BDD expected = pairwiseEquivalence(5).xor(x1.imp(x3.nand(x4)));
+
+		factory = Factory.mkWithComplementEdges(10, 10, 0);
+		BDD f = pairwiseEquivalence(5).xor(factory.makeVar(1).imp(factory.makeVar(3).nand(factory.makeVar(4))));
+
+		assertEquals(expected.satCount(9), f.satCount(9));
+		assertTrue(f.nodeCount() < expected.nodeCount());
+
+		// nodes survive garbage collection and reordering with their complement bit
+		BDD notF = f.not();
+		factory.gc();
+		factory.reorder();
+		assertEquals(expected.satCount(9), f.satCount(9));
+		assertTrue(notF.not().isEquivalentTo(f));
+		assertTrue(f.ite(factory.makeOne(), factory.makeZero()).isEquivalentTo(f));
+		assertTrue(f.exist(1).isEquivalentTo(f.restrict(1, false).or(f.restrict(1, true))));
+		regular.done();
+	}
+
+	@Test
+	public void testStatistics() {
+		BDD f = pairwiseEquivalence(5);
+		f.andWith(pairwiseEquivalence(5));
+		f.exist(3).free();
+
+		Statistics statistics = factory.getStatistics();
+		CacheStatistics and = statistics.getCache("and");
+		// the table has been resized, but the counters survive
+		assertTrue(statistics.getTableSize() > 10);
+		assertTrue(and.getHits() > 0);
+		assertTrue(and.getMisses() > 0);
+		assertTrue(statistics.getCache("restrict").getMisses() > 0);
+		assertEquals(statistics.getCache("or").getSize(), and.getSize());
+	}
+
+	@Test
+	public void testGCPauses() {
+		final PauseDistribution[] last = new PauseDistribution[1];
+		factory.setGarbageCollectionListener(new Factory.GarbageCollectionListener() {
+
+			@Override
+			public void onStart(int num, int size, int free, long totalTime) {}
+
+			@Override
+			public void onStop(int num, int size, int free, long time, long totalTime) {}
+
+			@Override
+			public void onStop(int num, int size, int free, long time, long totalTime, PauseDistribution pauses) {
+				assertEquals(num, pauses.getCount());
+				last[0] = pauses;
+			}
+		});
+
+		BDD f = pairwiseEquivalence(5);
+		factory.gc();
+		pairwiseEquivalence(6).free();
+		factory.gc();
+
+		PauseDistribution pauses = factory.getGCPauses();
+		assertSame(last[0], pauses);
+		// the table is small, hence it has also been collected before being resized
+		assertTrue(pauses.getCount() >= 2);
+		assertTrue(pauses.getPercentile(50.0) <= pauses.getPercentile(100.0));
+		assertEquals(pauses.getMax(), pauses.getPercentile(100.0));
+		assertEquals(pauses.getCount(), Arrays.stream(pauses.getHistogram()).sum());
+		// the hash table has been rebuilt by the compaction
+		assertTrue(pairwiseEquivalence(5).isEquivalentTo(f));
+	}
+
+	@Test
+	public void testParallelCompaction() {
+		factory.done();
+		// large enough to be compacted in parallel, with complemented edges to relocate
+		factory = Factory.mkWithComplementEdges(1000000, 1000);
+
+		BDD[] vars = new BDD[1200];
+		for (int i = 0; i < vars.length; i++)
+			vars[i] = factory.makeVar(i);
+
+		List<BDD> bdds = new ArrayList<>();
+		for (int i = 0; i < vars.length; i++)
+			for (int j = i + 1; j < vars.length; j++)
+				bdds.add(vars[i].xor(vars[j]));
+
+		assertTrue(factory.nodesCount() >= 600000);
+
+		List<BDD> kept = new ArrayList<>();
+		for (int pos = 0; pos < bdds.size(); pos++)
+			if (pos % 3 == 0)
+				kept.add(bdds.get(pos));
+			else
+				bdds.get(pos).free();
+
+		factory.gc();
+		int nodes = factory.nodesCount();
+
+		// the surviving nodes are found again through the rebuilt hash table
+		int pos = 0;
+		for (int i = 0; i < vars.length; i++)
+			for (int j = i + 1; j < vars.length; j++, pos++)
+				if (pos % 3 == 0)
+					assertTrue(vars[i].xor(vars[j]).isEquivalentTo(kept.get(pos / 3)));
+
+		assertEquals(nodes, factory.nodesCount());
+	}
+
+	@Test
+	public void testRemapCachesOnGC() {
+		factory.done();
+		// a resize would create new caches
+		factory = new Factory(1000, 1000, 0);
+		factory.setRemapCachesOnGC(true);
+
+		// garbage in front of the live nodes, that get moved by the collection
+		BDD garbage = pairwiseEquivalence(4);
+		BDD f = pairwiseEquivalence(5);
+		BDD g = pairwiseEquivalence(3);
+		BDD and = f.and(g);
+		BitSet vars = new BitSet();
+		vars.set(2);
+		vars.set(7);
+		BDD exist = f.exist(vars);
+		garbage.free();
+		factory.gc();
+
+		long andHits = factory.getStatistics().getCache("and").getHits();
+		long quantHits = factory.getStatistics().getCache("quant").getHits();
+		assertTrue(f.and(g).isEquivalentTo(and));
+		assertTrue(f.exist(vars).isEquivalentTo(exist));
+
+		// the results have been found in the caches, at the new indexes of their operands
+		assertEquals(andHits + 1, factory.getStatistics().getCache("and").getHits());
+		assertEquals(quantHits + 1, factory.getStatistics().getCache("quant").getHits());
+	}
+
+	@Test
+	public void testCachesSurviveResize() {
+		factory.done();
+		factory = new Factory(100, 1000, 0);
+		// the table gets collected before being resized
+		factory.setRemapCachesOnGC(true);
+
+		BDD f = pairwiseEquivalence(5);
+		BDD g = pairwiseEquivalence(3);
+		BDD and = f.and(g);
+		int tableSize = factory.getStatistics().getTableSize();
+
+		// live nodes that do not fit in the table
+		BDD large = pairwiseEquivalence(8);
+		Statistics statistics = factory.getStatistics();
+		assertTrue(statistics.getTableSize() > tableSize);
+
+		long hits = statistics.getCache("and").getHits();
+		assertTrue(f.and(g).isEquivalentTo(and));
+		assertEquals(hits + 1, factory.getStatistics().getCache("and").getHits());
+		large.free();
+	}
+
+	@Test
+	public void testParallelApply() {
+		BDD f = pairwiseEquivalence(5).xor(x1.imp(x3.nand(x4)));
+		BDD g = pairwiseEquivalence(4).or(x2.and(factory.makeVar(9)));
+		BDD and = f.and(g), or = f.or(g), xor = f.xor(g);
+
+		for (Factory parallel: new Factory[] { new Factory(10, 10, 0), Factory.mkWithComplementEdges(10, 10, 0) }) {
+			Factory sequential = factory;
+			factory = parallel;
+			assertEquals(1, factory.setParallelism(4));
+
+			BDD pf = pairwiseEquivalence(5).xor(factory.makeVar(1).imp(factory.makeVar(3).nand(factory.makeVar(4))));
+			BDD pg = pairwiseEquivalence(4).or(factory.makeVar(2).and(factory.makeVar(9)));
+			assertEquals(and.satCount(9), pf.and(pg).satCount(9));
+			assertEquals(or.satCount(9), pf.or(pg).satCount(9));
+			assertEquals(xor.satCount(9), pf.xor(pg).satCount(9));
+			assertTrue(pf.copy().andWith(pg.copy()).isEquivalentTo(pf.not().orWith(pg.not()).not()));
+
+			assertEquals(4, factory.setParallelism(1));
+			factory.done();
+			factory = sequential;
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testParallelApplyThatResizesLargeCaches() {
+		// the caches are large enough to be copied in parallel at each resize
+		factory.done();
+		factory = new Factory(1000, 200000, 0);
+		factory.setParallelism(2);
+
+		BDD left = factory.makeOne(), right = factory.makeZero();
+		for (int i = 0; i < 12; i++) {
+			left.andWith(factory.makeVar(i).biimp(factory.makeVar(23 - i)).orWith(factory.makeVar(24 + i % 3)));
+			right.orWith(factory.makeVar(i).and(factory.makeVar(12 + (i * 7) % 12)).andWith(factory.makeVar(27 + i % 2)));
+		}
+
+		BDD and = left.and(right);
+		factory.setParallelism(1);
+		assertTrue(and.isEquivalentTo(left.and(right)));
+	}
+
+	@Test
+	public void testSetParallelismWhileApplying() throws InterruptedException, ExecutionException {
+		BDD f = pairwiseEquivalence(5).xor(x1.imp(x3.nand(x4)));
+		BDD g = pairwiseEquivalence(4).or(x2.and(factory.makeVar(9)));
+		long expected = f.and(g).satCount(9);
+		int threads = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ExecutorCompletionService<Void> ecs = new ExecutorCompletionService<Void>(executor);
+
+		for (int t = 0; t < threads; t++)
+			ecs.submit(() -> {
+				for (int i = 0; i < 1000; i++) {
+					BDD and = f.and(g);
+					assertEquals(expected, and.satCount(9));
+					and.free();
+				}
+
+				return null;
+			});
+
+		// the pools are changed until all threads have finished computing with them
+		for (int i = 0, finished = 0; finished < threads; i++) {
+			factory.setParallelism(i % 3 + 1);
+			Future<Void> future = ecs.poll();
+			if (future != null) {
+				future.get();
+				finished++;
+			}
+		}
+
+		executor.shutdown();
+		factory.done();
+		assertTrue(f.and(g).isEquivalentTo(f.not().orWith(g.not()).not()));
+	}
+
+	@Test
+	public void testIterativeOperations() {
+		BDD f = pairwiseEquivalence(5).xor(x1.imp(x3.nand(x4)));
+		BDD g = pairwiseEquivalence(4).or(x2.and(factory.makeVar(9)));
+		BitSet vars = new BitSet();
+		vars.set(3);
+		vars.set(7);
+		Map<Integer, Integer> renaming = new HashMap<>();
+		renaming.put(9, 12);
+		renaming.put(2, 13);
+		BDD[] expected = { f.and(g), f.or(g), f.imp(g), f.biimp(g), f.xor(g), f.exist(vars), f.forAll(x4), g.replace(renaming) };
+
+		for (Factory iterative: new Factory[] { new Factory(10, 10, 0), Factory.mkWithComplementEdges(10, 10, 0) }) {
+			Factory recursive = factory;
+			factory = iterative;
+			assertEquals(false, factory.setIterative(true));
+
+			BDD pf = pairwiseEquivalence(5).xor(factory.makeVar(1).imp(factory.makeVar(3).nand(factory.makeVar(4))));
+			BDD pg = pairwiseEquivalence(4).or(factory.makeVar(2).and(factory.makeVar(9)));
+			BDD[] actual = { pf.and(pg), pf.or(pg), pf.imp(pg), pf.biimp(pg), pf.xor(pg), pf.exist(vars), pf.forAll(factory.makeVar(4)), pg.replace(renaming) };
+			factory.gc();
+
+			for (int i = 0; i < expected.length; i++)
+				assertEquals(expected[i].satCount(13), actual[i].satCount(13));
+
+			try {
+				pf.replace(Collections.singletonMap(0, 1));
+				fail();
+			}
+			catch (ReplacementWithExistingVarException e) {
+				// the frames left behind must not affect the next operation
+				assertTrue(pf.and(pg).isEquivalentTo(actual[0]));
+			}
+
+			assertEquals(true, factory.setIterative(false));
+			factory.done();
+			factory = recursive;
+		}
+	}
+
+	@Test
+	public void testIterativeOperationsOnDeepBdds() {
+		factory.done();
+		factory = new Factory(1000, 1000, 0);
+		factory.setIterative(true);
+		int n = 50000;
+
+		// the conjunction goes through all variables, one at a time
+		BDD even = factory.makeOne(), odd = factory.makeOne();
+		for (int var = 2 * n - 1; var >= 0; var--)
+			if (var % 2 == 0)
+				even.andWith(factory.makeVar(var));
+			else
+				odd.andWith(factory.makeVar(var));
+
+		BDD conjunction = even.and(odd);
+		factory.gc();
+
+		int depth = 0;
+		for (BDD bdd = conjunction; !bdd.isOne(); bdd = bdd.high(), depth++) {
+			assertEquals(depth, bdd.var());
+			assertTrue(bdd.low().isZero());
+		}
+
+		assertEquals(2 * n, depth);
+	}
+
+	@Test
+	public void testOffHeapTable() {
+		BDD f = pairwiseEquivalence(6).xor(x1.imp(x3.nand(x4)));
+		long satCount = f.satCount(11);
+		int nodeCount = f.nodeCount();
+
+		factory.done();
+		// a small table is resized many times, growing by new chunks
+		factory = Factory.mkOffHeap(10, 10, 0);
+		f = pairwiseEquivalence(6).xor(factory.makeVar(1).imp(factory.makeVar(3).nand(factory.makeVar(4))));
+		factory.gc();
+
+		assertEquals(satCount, f.satCount(11));
+		assertEquals(nodeCount, f.nodeCount());
+
+		factory.reorder();
+
+		assertEquals(satCount, f.satCount(11));
+		// the table is still canonical
+		assertTrue(pairwiseEquivalence(6).xor(factory.makeVar(1).imp(factory.makeVar(3).nand(factory.makeVar(4)))).isEquivalentTo(f));
+	}
+
+	@Test
+	public void testCompactNodes() {
+		BDD f = pairwiseEquivalence(6).xor(x1.imp(x3.nand(x4)));
+		long satCount = f.satCount(11);
+		int nodeCount = f.nodeCount();
+
+		factory.done();
+		factory = Factory.mkCompact(10, 10, 0);
+		f = pairwiseEquivalence(6).xor(factory.makeVar(1).imp(factory.makeVar(3).nand(factory.makeVar(4))));
+		assertEquals(satCount, f.satCount(11));
+		assertEquals(nodeCount, f.nodeCount());
+
+		// the hash code depends on the function only
+		int hashCode = f.hashCodeAux();
+		BDD g = factory.makeVar(1).imp(factory.makeVar(3).nand(factory.makeVar(4))).xor(pairwiseEquivalence(6));
+		assertEquals(hashCode, g.hashCodeAux());
+		assertTrue(hashCode != f.not().hashCodeAux());
+
+		factory.gc();
+		factory.reorder();
+
+		assertEquals(satCount, f.satCount(11));
+		assertEquals(hashCode, f.copy().hashCodeAux());
+
+		// a bdd as deep as its 100000 variables, whose nodes are marked without recursion
+		factory.setIterative(true);
+		BDD deep = factory.makeOne();
+		for (int var = 99999; var >= 0; var--)
+			deep = factory.makeVar(var).andWith(deep);
+
+		assertEquals(deep.hashCodeAux(), deep.not().not().hashCodeAux());
+		assertTrue(deep.hashCodeAux() != deep.not().hashCodeAux());
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		BDD f = pairwiseEquivalence(6).xor(x1.imp(x3.nand(x4)));
+		BDD g = f.not().and(x5);
+		List<BDD> bdds = Arrays.asList(f, g, factory.makeOne(), factory.makeZero(), x2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		factory.save(out, bdds);
+
+		ByteArrayOutputStream twice = new ByteArrayOutputStream();
+		factory.save(twice, Arrays.asList(f, f));
+		ByteArrayOutputStream once = new ByteArrayOutputStream();
+		factory.save(once, Arrays.asList(f));
+		// shared nodes are written once, hence only the second root is added
+		assertTrue(twice.size() <= once.size() + 5);
+
+		List<BDD> loaded = factory.load(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(bdds.size(), loaded.size());
+		for (int i = 0; i < bdds.size(); i++)
+			assertTrue(bdds.get(i).isEquivalentTo(loaded.get(i)));
+
+		// another factory, with complement edges and another variable order
+		Factory other = Factory.mkWithComplementEdges(10, 10, 0);
+		other.setVarOrder(new int[] { 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1, 0 });
+		loaded = other.load(new ByteArrayInputStream(out.toByteArray()));
+		for (int i = 0; i < bdds.size(); i++)
+			assertEquals(bdds.get(i).satCount(11), loaded.get(i).satCount(11));
+
+		// and back, with complemented edges in the stream
+		out.reset();
+		other.save(out, loaded);
+		List<BDD> back = factory.load(new ByteArrayInputStream(out.toByteArray()));
+		for (int i = 0; i < bdds.size(); i++)
+			assertTrue(bdds.get(i).isEquivalentTo(back.get(i)));
+
+		other.done();
+
+		try {
+			factory.load(new ByteArrayInputStream(new byte[] { 'B', 'D', 'D' }));
+			fail();
+		}
+		catch (EOFException e) {}
+
+		try {
+			factory.load(new ByteArrayInputStream("not bdds".getBytes()));
+			fail();
+		}
+		catch (StreamCorruptedException e) {}
+	}
+
+	@Test
+	public void testLoadBetweenGarbageCollections() throws IOException {
+		factory.setIterative(true);
+		BDD garbage = factory.makeZero(), chain = factory.makeOne();
+		for (int var = 39999; var >= 0; var--)
+			garbage = factory.makeVar(var).orWith(garbage);
+
+		// more nodes than a batch of the loader, above those of the garbage
+		for (int var = 39999; var >= 0; var--)
+			chain = factory.makeVar(var).andWith(chain);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		factory.save(out, Arrays.asList(chain, chain.not()));
+		garbage.free();
+
+		// a collection, after the first batch, moves the nodes loaded so far
+		List<BDD> loaded = factory.load(new ByteArrayInputStream(out.toByteArray()) {
+			@Override
+			public synchronized int read() {
+				if (pos == count / 2)
+					factory.gc();
+
+				return super.read();
+			}
+		});
+
+		assertTrue(chain.isEquivalentTo(loaded.get(0)));
+		assertTrue(chain.not().isEquivalentTo(loaded.get(1)));
+		assertEquals(40000, loaded.get(0).nodeCount());
+	}
+
+	@Test
+	public void testSaveBetweenGarbageCollections() throws IOException {
+		factory.setIterative(true);
+		BDD garbage = factory.makeZero(), chain = factory.makeOne();
+		for (int var = 39999; var >= 0; var--)
+			garbage = factory.makeVar(var).orWith(garbage);
+
+		// more nodes than a batch of the writer, above those of the garbage
+		for (int var = 39999; var >= 0; var--)
+			chain = factory.makeVar(var).andWith(chain);
+
+		garbage.free();
+
+		// a collection, after the first batch, moves the nodes written so far
+		int gcs = factory.ut.getNumOfGCs();
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] bytes, int offset, int length) {
+				if (count > 0 && factory.ut.getNumOfGCs() == gcs)
+					factory.gc();
+
+				super.write(bytes, offset, length);
+			}
+		};
+
+		factory.save(out, Arrays.asList(chain, chain.not()));
+		assertEquals(gcs + 1, factory.ut.getNumOfGCs());
+
+		List<BDD> loaded = factory.load(new ByteArrayInputStream(out.toByteArray()));
+		assertTrue(chain.isEquivalentTo(loaded.get(0)));
+		assertTrue(chain.not().isEquivalentTo(loaded.get(1)));
+	}
+
+	@Test
+	public void testExactSatCount() {
+		for (Factory counting: new Factory[] { new Factory(10, 10, 0), Factory.mkWithComplementEdges(10, 10, 0) }) {
+			Factory old = factory;
+			factory = counting;
+
+			BDD f = pairwiseEquivalence(6).xor(factory.makeVar(1).imp(factory.makeVar(3).nand(factory.makeVar(4))));
+			assertEquals(BigInteger.valueOf(f.satCount(11)), f.exactSatCount(11));
+
+			// the parity of 200 variables has 2^200 paths, but only 399 nodes
+			BDD parity = factory.makeZero();
+			for (int var = 0; var < 200; var++)
+				parity.xorWith(factory.makeVar(var));
+
+			assertEquals(BigInteger.ONE.shiftLeft(199), parity.exactSatCount(199));
+			assertEquals(BigInteger.ONE.shiftLeft(200), parity.not().exactSatCount(200));
+			assertEquals(BigInteger.ONE.shiftLeft(200), factory.makeOne().exactSatCount(199));
+			assertEquals(Long.MAX_VALUE, parity.satCount(199));
+
+			BDD small = factory.makeVar(0).xor(factory.makeVar(2)).xor(factory.makeVar(4));
+			assertEquals(1L << 59, small.satCount(59));
+			BitSet vars = new BitSet();
+			vars.set(0);
+			vars.set(2);
+			vars.set(4);
+			vars.set(6);
+			assertEquals(BigInteger.valueOf(8), small.exactSatCount(vars));
+
+			try {
+				vars.clear(4);
+				small.exactSatCount(vars);
+				fail();
+			}
+			catch (IllegalArgumentException e) {}
+
+			factory.done();
+			factory = old;
+		}
+	}
+
+	@Test
+	public void testCubes() {
+		for (Factory enumerating: new Factory[] { new Factory(10, 10, 0), Factory.mkWithComplementEdges(10, 10, 0) }) {
+			Factory old = factory;
+			factory = enumerating;
+
+			BDD garbage = factory.makeVar(30).and(factory.makeVar(31)).or(factory.makeVar(32));
+			BDD f = pairwiseEquivalence(6).xor(factory.makeVar(1).imp(factory.makeVar(3).nand(factory.makeVar(4))));
+			List<int[]> cubes = f.cubes().collect(Collectors.toList());
+
+			// the cubes are disjoint and cover the function
+			BDD union = factory.makeZero();
+			BigInteger count = BigInteger.ZERO;
+			for (int[] cube: cubes) {
+				BDD c = factory.makeOne();
+				int free = 0;
+				for (int var = 0; var < cube.length; var++)
+					if (cube[var] < 0)
+						free++;
+					else
+						c.andWith(cube[var] == 1 ? factory.makeVar(var) : factory.makeNotVar(var));
+
+				assertTrue(union.and(c).isZero());
+				union.orWith(c);
+				count = count.add(BigInteger.ONE.shiftLeft(free));
+			}
+
+			assertTrue(union.isEquivalentTo(f));
+			assertEquals(f.exactSatCount(), count);
+			assertEquals(f.allSat().size(), cubes.size());
+
+			// a parallel stream yields the same cubes in the same order
+			List<int[]> parallel = f.cubes().parallel().collect(Collectors.toList());
+			assertEquals(cubes.size(), parallel.size());
+			for (int pos = 0; pos < cubes.size(); pos++)
+				assertTrue(Arrays.equals(cubes.get(pos), parallel.get(pos)));
+
+			// a garbage collection moves the nodes of f during the enumeration
+			int id = ((BDDImpl) f).getId();
+			int[] next = { 0 };
+			f.forEachCube(cube -> {
+				assertTrue(Arrays.equals(cubes.get(next[0]++), cube));
+				if (next[0] == cubes.size() / 2) {
+					garbage.free();
+					factory.gc();
+				}
+			});
+			assertEquals(cubes.size(), next[0]);
+			assertTrue(id != ((BDDImpl) f).getId());
+
+			assertEquals(0L, factory.makeZero().cubes().count());
+			assertEquals(1L, factory.makeOne().cubes().count());
+
+			try {
+				f.cubes().forEach(cube -> factory.swapVars(0, 1));
+				fail();
+			}
+			catch (ConcurrentModificationException e) {}
+
+			factory.done();
+			factory = old;
+		}
+	}
+
+	@Test
+	public void testNodeTraversals() {
+		for (Factory traversing: new Factory[] { new Factory(10, 10, 0), Factory.mkWithComplementEdges(10, 10, 0) }) {
+			Factory old = factory;
+			factory = traversing;
+
+			// the pairwise equivalence has exponentially many paths in the natural order
+			BDD f = pairwiseEquivalence(16).andWith(factory.makeVar(45));
+			BDD g = f.not().orWith(factory.makeVar(41));
+			int nodes = f.nodeCount();
+			assertEquals(45, f.maxVar());
+			assertEquals(33, f.vars().cardinality());
+			assertEquals(nodes, Arrays.stream(f.varProfile()).sum());
+			assertEquals(nodes, factory.nodeCount(Arrays.asList(f, f.copy())));
+			int shared = factory.nodeCount(Arrays.asList(f, g));
+
+			// the nodes are counted in parallel, once each
+			factory.setParallelism(4);
+			f.free();
+			f = pairwiseEquivalence(16).andWith(factory.makeVar(45));
+			assertEquals(nodes, f.nodeCount());
+			assertEquals(shared, factory.nodeCount(Arrays.asList(g, null, f)));
+
+			factory.done();
+			factory = old;
+		}
+	}
+
+	@Test
+	public void testAndAllOrAll() {
+		List<BDD> clauses = new ArrayList<>();
+		BDD and = factory.makeOne(), or = factory.makeZero();
+		for (int var = 0; var < 30; var++) {
+			BDD clause = factory.makeVar(var).biimp(factory.makeVar((7 * var + 3) % 30)).orWith(factory.makeVar(30 + var % 5));
+			clauses.add(clause);
+			and.andWith(clause.copy());
+			or.orWith(clause.not());
+		}
+
+		List<BDD> negations = new ArrayList<>();
+		for (BDD clause: clauses)
+			negations.add(clause.not());
+
+		int bdds = factory.bddCount();
+		BDD andAll = factory.andAll(clauses), orAll = factory.orAll(negations);
+		assertTrue(and.isEquivalentTo(andAll));
+		assertTrue(or.isEquivalentTo(orAll));
+
+		// the operands are left untouched and the intermediate results are freed
+		assertEquals(bdds + 2, factory.bddCount());
+		assertTrue(clauses.get(0).isEquivalentTo(factory.makeVar(0).biimp(factory.makeVar(3)).orWith(factory.makeVar(30))));
+
+		assertTrue(factory.andAll(Collections.emptyList()).isOne());
+		assertTrue(factory.orAll(Collections.emptyList()).isZero());
+		assertTrue(factory.andAll(Arrays.asList(clauses.get(1), clauses.get(1).not(), clauses.get(2))).isZero());
+		assertTrue(factory.orAll(Arrays.asList(clauses.get(1))).isEquivalentTo(clauses.get(1)));
+
+		// the same, with pairs of operands combined in parallel
+		factory.setParallelism(4);
+		assertTrue(and.isEquivalentTo(factory.andAll(clauses)));
+		assertTrue(or.isEquivalentTo(factory.orAll(negations)));
+	}
+
+	@Test
+	public void testSatCountsAgreeAboveMaxVar() {
+		// x7 & (x9 | x12) tests three variables, all above the last one considered
+		BDD f = factory.makeVar(7).andWith(factory.makeVar(9).orWith(factory.makeVar(12)));
+		assertEquals(12, f.satCount(4));
+		assertEquals(BigInteger.valueOf(12), f.exactSatCount(4));
+		assertEquals(3, f.satCount(2));
+		assertEquals(BigInteger.valueOf(3), f.exactSatCount(2));
+
+		// the exact count rejects a bdd that tests more variables than those considered
+		try {
+			f.exactSatCount(1);
+			fail();
+		}
+		catch (IllegalArgumentException e) {}
+
+		// even if no path tests all of them
+		BDD g = factory.makeVar(0).ite(factory.makeVar(2), factory.makeVar(1));
+		assertEquals(BigInteger.valueOf(4), g.exactSatCount(2));
+		try {
+			g.exactSatCount(1);
+			fail();
+		}
+		catch (IllegalArgumentException e) {}
+	}
+
+	@Test
+	public void testSatCountOfDeepBdd() {
+		// a bdd as deep as its 100000 variables, that is counted without recursion
+		factory.setIterative(true);
+		BDD deep = factory.makeOne();
+		for (int var = 99999; var >= 0; var--)
+			deep = factory.makeVar(var).andWith(deep);
+
+		assertEquals(1, deep.satCount(99999));
+		assertEquals(BigInteger.ONE.shiftLeft(100000).subtract(BigInteger.ONE), deep.not().exactSatCount(99999));
+	}
+
+	@Test
+	public void testNoDuplicatesWhenInsertionResizes() {
+		factory.done();
+		factory = new Factory(10, 10, 7);
+
+		// the table is full when the last node of imp is created
+		BDD imp = factory.makeVar(5).imp(factory.makeVar(2));
+		BDD nand = imp.not().nand(factory.makeVar(5));
+
+		assertTrue(nand.isEquivalentTo(imp));
+	}
+
+	@Test
+	public void testLockFreeConcurrency() throws InterruptedException, ExecutionException {
+		int threads = 8;
+		long expected = pairwiseEquivalence(6).satCount(11);
+
+		// a small table forces resizes while the threads are inserting nodes
+		final Factory lockFree = Factory.mkLockFree(10, 10, 0);
+		ExecutorCompletionService<BDD> ecs = new ExecutorCompletionService<BDD>(
+				Executors.newFixedThreadPool(threads));
+
+		final CountDownLatch cdl = new CountDownLatch(threads);
+
+		for (int t = 0; t < threads; t++) {
+			ecs.submit(new Callable<BDD>() {
+
+				@Override
+				public BDD call() throws InterruptedException {
+					// wait others to maximize concurrency
+					cdl.countDown();
+					cdl.await();
+
+					BDD res = lockFree.makeOne();
+					for (int i = 0; i < 6; i++)
+						res.andWith(lockFree.makeVar(i).biimpWith(lockFree.makeVar(6 + i)));
+
+					return res;
+				}
+			});
+		}
+
+		BDD first = ecs.take().get();
+		assertEquals(expected, first.satCount(11));
+		for (int t = 1; t < threads; t++)
+			assertTrue(ecs.take().get().isEquivalentTo(first));
+
+		lockFree.done();
+	}
+
+	@Test
+	public void testLockFreeForgetsTerminatedThreads() throws InterruptedException {
+		final Factory lockFree = Factory.mkLockFree(10, 10, 0);
+
+		for (int t = 0; t < 20; t++) {
+			final int var = t;
+			Thread thread = new Thread(() -> lockFree.makeVar(var).andWith(lockFree.makeVar(var + 1)).free());
+			thread.start();
+			thread.join();
+		}
+
+		lockFree.gc();
+		// only the current thread is still alive
+		assertTrue(((LockFreeUniqueTable) lockFree.ut).getNumOfInserters() <= 1);
+
+		lockFree.done();
+	}
+
 	@Test
 	public void testMarkAliveNodes1() {
 		factory = new Factory(10, 10, 0);
@@ -516,4 +1543,67 @@ public class FactoryTest {
 		assertTrue(exist.isEquivalentTo(expected));
 	}
 
+	@Test
+	public void testExistOverTheSameVars() {
+		BDD bdd = pairwiseEquivalence(3).orWith(factory.makeVar(1).andWith(factory.makeVar(4)));
+		BDD cube = factory.makeVar(0).andWith(factory.makeVar(1));
+		BitSet vars = cube.vars();
+
+		// (x2 <-> x5) | x4
+		BDD expected = factory.makeVar(2).biimp(factory.makeVar(5)).orWith(factory.makeVar(4));
+		assertTrue(bdd.exist(cube).isEquivalentTo(expected));
+		assertTrue(bdd.exist(vars).isEquivalentTo(expected));
+
+		// the set must not be kept by the caches, since it can be modified later
+		vars.set(2);
+		vars.clear(1);
+		assertTrue(bdd.exist(cube).isEquivalentTo(expected));
+
+		// the levels of the variables change with the order
+		factory.swapVars(0, 5);
+		assertTrue(bdd.exist(cube).isEquivalentTo(expected));
+		assertTrue(bdd.relProd(factory.makeOne(), cube).isEquivalentTo(expected));
+		assertTrue(bdd.forAll(cube).isEquivalentTo(bdd.forAll(0).forAll(1)));
+	}
+
+	@Test
+	public void testRestrictByCube() {
+		// (x1 & x3) | (!x2 & x4) | x5
+		BDD bdd = x1.and(x3).orWith(x2.not().andWith(x4.copy())).orWith(x5.copy());
+		// the negative literal is not the last one
+		BDD cube = x1.and(x2.not()).andWith(x4.copy());
+		BDD expected = bdd.restrict(1, true).restrict(2, false).restrict(4, true);
+
+		assertTrue(bdd.restrict(cube).isEquivalentTo(expected));
+		assertTrue(bdd.copy().restrictWith(cube).isEquivalentTo(expected));
+		assertTrue(bdd.restrict(factory.makeOne()).isEquivalentTo(bdd));
+
+		long hits = factory.getStatistics().getCache("cubeRestrict").getHits();
+		assertTrue(bdd.restrict(cube).isEquivalentTo(expected));
+		assertTrue(factory.getStatistics().getCache("cubeRestrict").getHits() > hits);
+
+		// the levels of the variables change with the order
+		factory.swapVars(1, 4);
+		assertTrue(bdd.restrict(cube).isEquivalentTo(expected));
+		factory.reorder();
+		assertTrue(bdd.restrict(cube).isEquivalentTo(expected));
+	}
+
+	@Test
+	public void testRelProd() {
+		// (x1 <-> x2) | (x3 & x4)
+		BDD bdd1 = x1.biimp(x2).orWith(x3.and(x4));
+		// (x2 ^ x5) | !x3
+		BDD bdd2 = x2.xor(x5).orWith(x3.not());
+
+		BDD cube = x2.and(x3);
+		BDD relProd = bdd1.relProd(bdd2, cube);
+		BDD expected = bdd1.and(bdd2).exist(cube);
+		assertTrue(relProd.isEquivalentTo(expected));
+
+		// quantifying over no variable is just the conjunction
+		assertTrue(bdd1.relProd(bdd2, factory.makeOne()).isEquivalentTo(bdd1.and(bdd2)));
+		assertTrue(bdd1.relProd(factory.makeZero(), cube).isZero());
+	}
+
 }
@@ -175,4 +175,80 @@ public class JavaBDDAdapterFactoryTest {
 		BDD mrp = mx0.relprod(mx1, mx0);
 		assertEquals(mrp, mx0.and(mx1).exist(mx0));
 	}
+
+	@Test
+	public void testApplyEx() {
+		BDD mx0 = factory.ithVar(0);
+		BDD mx1 = factory.ithVar(1);
+		BDD mx2 = factory.ithVar(2);
+		BDD left = mx0.or(mx1);
+		BDD right = mx1.xor(mx2);
+		BDD vars = mx1.and(mx2);
+
+		assertEquals(left.and(right).exist(vars), left.applyEx(right, BDDFactory.and, vars));
+		assertEquals(left.or(right).exist(vars), left.applyEx(right, BDDFactory.or, vars));
+	}
+
+	@Test
+	public void testVeccompose() {
+		BDD x0 = jfactory.ithVar(0);
+		BDD x1 = jfactory.ithVar(1);
+		BDD x2 = jfactory.ithVar(2);
+		BDD mx0 = factory.ithVar(0);
+		BDD mx1 = factory.ithVar(1);
+		BDD mx2 = factory.ithVar(2);
+
+		BDDPairing pair = jfactory.makePair();
+		pair.set(0, x1.and(x2));
+		pair.set(2, 0);
+		BDD comp = x0.or(x2).veccompose(pair);
+		assertEquals(comp, x1.and(x2).or(x0));
+
+		BDDPairing myPair = factory.makePair();
+		myPair.set(0, mx1.and(mx2));
+		myPair.set(2, 0);
+		BDD myComp = mx0.or(mx2).veccompose(myPair);
+		assertEquals(myComp, mx1.and(mx2).or(mx0));
+	}
+
+	@Test
+	public void testReplaceWithTheSamePairing() {
+		BDD mx0 = factory.ithVar(0);
+		BDD mx1 = factory.ithVar(1);
+		BDD mx2 = factory.ithVar(2);
+		BDD bdd = mx0.and(mx1.not()).or(mx2);
+
+		BDDPairing pair = factory.makePair();
+		pair.set(0, 5);
+		pair.set(1, 6);
+		BDD expected = factory.ithVar(5).and(factory.nithVar(6)).or(mx2);
+		assertEquals(expected, bdd.replace(pair));
+		assertEquals(expected, bdd.replace(pair));
+
+		// the pairing is compiled again after it changes
+		pair.set(2, 7);
+		expected = factory.ithVar(5).and(factory.nithVar(6)).or(factory.ithVar(7));
+		assertEquals(expected, bdd.replace(pair));
+
+		// and after the order of the variables changes
+		factory.setVarOrder(new int[] { 9, 8, 7, 6, 5, 4, 3, 2, 1, 0 });
+		assertEquals(expected, bdd.replace(pair));
+		assertEquals(expected, bdd.id().replaceWith(pair));
+	}
+
+	@Test
+	public void testSatOneWithPolarity() {
+		// (x0 & x3) | (x1 & !x4)
+		BDD bdd = factory.ithVar(0).and(factory.ithVar(3)).or(factory.ithVar(1).and(factory.nithVar(4)));
+		BDD var = factory.ithVar(1).and(factory.ithVar(2)).and(factory.ithVar(4));
+
+		BDD sat = bdd.satOne(var, true);
+		assertTrue(sat.imp(bdd).isOne());
+		// x2 is free, hence it takes the requested polarity
+		assertTrue(sat.imp(factory.ithVar(2)).isOne());
+		assertTrue(bdd.satOne(var, false).imp(factory.nithVar(2)).isOne());
+		assertTrue(bdd.satOne(var, false).imp(bdd).isOne());
+
+		assertTrue(factory.zero().satOne(var, true).isZero());
+	}
 }